@@ -0,0 +1,224 @@
+/**
+ *
+ */
+package org.theseed.jfx.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.theseed.jfx.AnalysisBatch;
+import org.theseed.jfx.AnalysisCache;
+import org.theseed.jfx.CodedColumn;
+import org.theseed.jfx.ColumnDataset;
+import org.theseed.jfx.DistributionAnalysis;
+import org.theseed.jfx.IAnalysisResult;
+import org.theseed.jfx.NumericColumn;
+import org.theseed.jfx.SpreadColumnAnalysis;
+import org.theseed.jfx.StatisticsAnalysis;
+
+/**
+ * These benchmarks measure the compute side of the column analyses on synthetic data.  The parsing benchmarks build
+ * a fresh dataset each time, so they include the cost of converting the strings; the analysis benchmarks use a
+ * dataset whose columns are already parsed, so they measure only the scan and aggregation.  Nothing here renders a
+ * display, so the JavaFX toolkit is never started.  The result cache is emptied before every invocation; the cost
+ * of doing so is negligible next to a scan.
+ *
+ * Run with "-prof gc" to get the allocation rate along with the throughput.
+ *
+ * @author Bruce Parrello
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx12g", "-Djava.awt.headless=true" })
+public class ColumnAnalysisBenchmark {
+
+    /**
+     * Types of synthetic columns.  The enum ordinal plus one is the column index.
+     */
+    public static enum ColumnType {
+        /** normally-distributed floating-point values */
+        NUMERIC,
+        /** values of 0 and 1 */
+        BINARY,
+        /** 90% empty or "NA", otherwise numeric */
+        SPARSE,
+        /** ID strings, mostly distinct */
+        HIGH_CARDINALITY;
+
+        /**
+         * @return the column index for this column type
+         */
+        public int colIdx() {
+            return this.ordinal() + 1;
+        }
+    }
+
+    // FIELDS
+    /** index of the label column */
+    private static final int LABEL_IDX = 0;
+    /** number of distinct labels */
+    private static final int LABELS = 5;
+    /** number of rows in the synthetic dataset */
+    @Param({ "10000", "1000000", "10000000" })
+    private int rows;
+    /** type of column to analyze */
+    @Param({ "NUMERIC", "BINARY", "SPARSE", "HIGH_CARDINALITY" })
+    private ColumnType column;
+    /** synthetic data lines */
+    private List<String[]> lines;
+    /** dataset with the columns already parsed */
+    private ColumnDataset data;
+    /** index of the column to analyze */
+    private int colIdx;
+    /** exact statistics analysis */
+    private StatisticsAnalysis statistics;
+    /** streaming statistics analysis */
+    private StatisticsAnalysis streamingStatistics;
+    /** exact distribution analysis */
+    private DistributionAnalysis distribution;
+    /** sketch-mode distribution analysis */
+    private DistributionAnalysis sketchDistribution;
+    /** spread analysis */
+    private SpreadColumnAnalysis spread;
+
+    /**
+     * Create the synthetic dataset and the analyses.
+     */
+    @Setup(Level.Trial)
+    public void setup() {
+        this.lines = generate(this.rows, 42L);
+        this.colIdx = this.column.colIdx();
+        this.data = new ColumnDataset(this.lines);
+        // Parse the columns up front so the analysis benchmarks only measure the analysis.
+        this.data.getNumeric(this.colIdx);
+        this.data.getCoded(this.colIdx);
+        this.data.getCoded(LABEL_IDX);
+        this.statistics = new StatisticsAnalysis(this.data, LABEL_IDX);
+        this.streamingStatistics = new StatisticsAnalysis(this.data, LABEL_IDX);
+        this.streamingStatistics.setStreaming(true);
+        this.distribution = new DistributionAnalysis(this.data, LABEL_IDX);
+        this.sketchDistribution = new DistributionAnalysis(this.data, LABEL_IDX);
+        this.sketchDistribution.setSketchMode(true);
+        this.spread = new SpreadColumnAnalysis(this.data, LABEL_IDX, null);
+    }
+
+    /**
+     * Empty the result cache, so that each call to an analysis benchmark computes its result instead of finding the
+     * one saved by the previous call.
+     */
+    @Setup(Level.Invocation)
+    public void clearCache() {
+        AnalysisCache.getDefault().clear();
+    }
+
+    /**
+     * @return a list of synthetic data lines
+     *
+     * @param n		number of lines to generate
+     * @param seed	random number seed
+     */
+    private static List<String[]> generate(int n, long seed) {
+        Random rand = new Random(seed);
+        List<String[]> retVal = new ArrayList<String[]>(n);
+        for (int i = 0; i < n; i++) {
+            String[] line = new String[ColumnType.values().length + 1];
+            int label = rand.nextInt(LABELS);
+            line[LABEL_IDX] = "class" + label;
+            line[ColumnType.NUMERIC.colIdx()] = Double.toString(rand.nextGaussian() * 10.0 + label);
+            line[ColumnType.BINARY.colIdx()] = (rand.nextInt(LABELS) <= label ? "1" : "0");
+            int sparse = rand.nextInt(20);
+            line[ColumnType.SPARSE.colIdx()] = (sparse < 9 ? "" : (sparse < 18 ? "NA" : String.format("%.4f", rand.nextDouble())));
+            line[ColumnType.HIGH_CARDINALITY.colIdx()] = "fig|" + rand.nextInt(n) + ".peg." + rand.nextInt(5000);
+            retVal.add(line);
+        }
+        return retVal;
+    }
+
+    /**
+     * Parse the column the way the original iterator-based analyses did, as a baseline.
+     */
+    @Benchmark
+    public void legacyParse(Blackhole bh) {
+        for (String[] line : this.lines) {
+            try {
+                bh.consume(Double.parseDouble(line[this.colIdx]));
+            } catch (NumberFormatException e) {
+                bh.consume(e);
+            }
+        }
+    }
+
+    /**
+     * Parse the column into a numeric column.
+     */
+    @Benchmark
+    public NumericColumn parseNumeric() {
+        return new ColumnDataset(this.lines).getNumeric(this.colIdx);
+    }
+
+    /**
+     * Parse the column into a coded column.
+     */
+    @Benchmark
+    public CodedColumn parseCoded() {
+        return new ColumnDataset(this.lines).getCoded(this.colIdx);
+    }
+
+    @Benchmark
+    public IAnalysisResult statistics() {
+        return this.statistics.compute(this.colIdx);
+    }
+
+    @Benchmark
+    public IAnalysisResult statisticsStreaming() {
+        return this.streamingStatistics.compute(this.colIdx);
+    }
+
+    @Benchmark
+    public IAnalysisResult distribution() {
+        return this.distribution.compute(this.colIdx);
+    }
+
+    @Benchmark
+    public IAnalysisResult distributionSketch() {
+        return this.sketchDistribution.compute(this.colIdx);
+    }
+
+    @Benchmark
+    public IAnalysisResult spread() {
+        return this.spread.compute(this.colIdx);
+    }
+
+    /**
+     * Run all three standard analyses on the column in a single batch.
+     */
+    @Benchmark
+    public AnalysisBatch batch() {
+        AnalysisBatch retVal = new AnalysisBatch();
+        retVal.add(this.statistics, "stats", this.colIdx);
+        retVal.add(this.distribution, "dist", this.colIdx);
+        retVal.add(this.spread, "spread", this.colIdx);
+        retVal.compute();
+        return retVal;
+    }
+
+}
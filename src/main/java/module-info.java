@@ -5,6 +5,7 @@ module org.theseed.shared.jfx {
     requires commons.math3;
     requires basic;
     requires java.prefs;
+    requires java.management;
     requires org.slf4j;
     opens org.theseed.shared.jfx to javafx.fxml;
     exports org.theseed.shared.jfx;
@@ -0,0 +1,178 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import javafx.scene.Node;
+import javafx.scene.control.TitledPane;
+
+/**
+ * This object runs a batch of column analyses in a single pass through the data.  The client adds (column, analysis)
+ * pairs to the batch and then asks for the results.  The rows are split across a fork-join pool; each thread keeps
+ * its own accumulators, and these are merged at the end.  All the analyses in a batch must use the same dataset.
+ *
+ * Analyses that do not support accumulators are still allowed in a batch, but they are run one at a time in the
+ * old way.  Analyses whose results are already in the AnalysisCache are not scanned again.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class AnalysisBatch {
+
+    // FIELDS
+    /** dataset being analyzed */
+    private ColumnDataset data;
+    /** list of jobs in this batch */
+    private List<Job> jobs;
+    /** fork-join pool for running the scan, or NULL to use the default scheduler's scan pool */
+    private ForkJoinPool pool;
+
+    /**
+     * This object describes a single analysis of a single column.
+     */
+    protected static class Job {
+
+        /** name of the column */
+        private String name;
+        /** index of the column */
+        private int colIdx;
+        /** analysis to perform */
+        private ColumnAnalysis analysis;
+        /** computed result, or NULL if the analysis does not support accumulators */
+        private IAnalysisResult result;
+
+        /**
+         * Create a job for a column analysis.
+         *
+         * @param analysis	analysis to perform
+         * @param name		name of the column
+         * @param colIdx	index of the column
+         */
+        protected Job(ColumnAnalysis analysis, String name, int colIdx) {
+            this.analysis = analysis;
+            this.name = name;
+            this.colIdx = colIdx;
+            this.result = null;
+        }
+
+        /**
+         * @return TRUE if this job's analysis uses accumulators
+         */
+        protected boolean usesAccumulator() {
+            return this.analysis.usesAccumulator();
+        }
+
+        /**
+         * @return a new accumulator for this job
+         */
+        protected IAccumulator createAccumulator() {
+            return this.analysis.createAccumulator(this.colIdx);
+        }
+
+    }
+
+    /**
+     * Create a new, empty analysis batch that scans in the default task scheduler's scan pool for the work running
+     * in the thread that computes it (see TaskScheduler.scanPool()).
+     */
+    public AnalysisBatch() {
+        this(null);
+    }
+
+    /**
+     * Create a new, empty analysis batch that uses a specific fork-join pool.
+     *
+     * @param pool		fork-join pool to use for the scan, or NULL to use the default scheduler's scan pool
+     */
+    public AnalysisBatch(ForkJoinPool pool) {
+        this.data = null;
+        this.jobs = new ArrayList<Job>();
+        this.pool = pool;
+    }
+
+    /**
+     * Add an analysis to this batch.
+     *
+     * @param analysis	analysis to perform
+     * @param name		name of the column
+     * @param colIdx	index of the column
+     */
+    public void add(ColumnAnalysis analysis, String name, int colIdx) {
+        if (this.data == null)
+            this.data = analysis.getData();
+        else if (this.data != analysis.getData())
+            throw new IllegalArgumentException("All analyses in a batch must use the same dataset.");
+        this.jobs.add(new Job(analysis, name, colIdx));
+    }
+
+    /**
+     * @return the number of analyses in this batch
+     */
+    public int size() {
+        return this.jobs.size();
+    }
+
+    /**
+     * Compute the accumulators for all the analyses.  This can be called from a background thread.
+     */
+    public void compute() {
+        // Pull cached results first.
+        List<Job> pending = new ArrayList<Job>(this.jobs.size());
+        for (Job job : this.jobs) {
+            job.result = job.analysis.getCachedResult(job.colIdx);
+            if (job.result == null)
+                pending.add(job);
+        }
+        // Separate out the remaining analyses that support accumulators.
+        List<Job> scanJobs = pending.stream().filter(Job::usesAccumulator).collect(Collectors.toList());
+        if (! scanJobs.isEmpty()) {
+            // The accumulators for the first chunk are created in parallel, which has the side effect of parsing
+            // all the needed columns in parallel.
+            final int n = scanJobs.size();
+            ForkJoinPool scanPool = (this.pool != null ? this.pool : TaskScheduler.getDefault().scanPool());
+            AtomicReference<IAccumulator[]> first = new AtomicReference<IAccumulator[]>(scanPool.submit(
+                    () -> scanJobs.parallelStream().map(Job::createAccumulator).toArray(IAccumulator[]::new)).join());
+            // Now we do a single pass through the rows for all the scannable jobs.
+            IAccumulator[] results = ParallelScan.run(scanPool, this.data.size(), () -> {
+                IAccumulator[] accs = first.getAndSet(null);
+                if (accs == null) {
+                    accs = new IAccumulator[n];
+                    for (int i = 0; i < n; i++)
+                        accs[i] = scanJobs.get(i).createAccumulator();
+                }
+                return accs;
+            });
+            for (int i = 0; i < n; i++) {
+                Job job = scanJobs.get(i);
+                job.result = job.analysis.finish(results[i], () -> false);
+                AnalysisCache.getDefault().put(job.analysis.getResultKey(job.colIdx), job.result);
+            }
+        }
+    }
+
+    /**
+     * @return the displays for all the analyses, in the order they were added.  This must be called from the
+     * 		   JavaFX application thread, and compute() must already have been called.
+     */
+    public List<TitledPane> getDisplays() {
+        List<TitledPane> retVal = new ArrayList<TitledPane>(this.jobs.size());
+        for (Job job : this.jobs) {
+            TitledPane pane;
+            if (job.result == null)
+                pane = job.analysis.getDisplay(job.name, job.colIdx);
+            else {
+                Node analysis = job.analysis.render(job.result);
+                pane = ColumnAnalysis.makePane(job.name, analysis);
+            }
+            retVal.add(pane);
+        }
+        return retVal;
+    }
+
+}
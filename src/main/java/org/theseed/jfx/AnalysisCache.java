@@ -0,0 +1,154 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * This object is a size-bounded LRU cache of analysis results.  A result is keyed by the dataset ID and version,
+ * the column index, and a string identifying the analysis type and its options.  Because the version is part of
+ * the key, a result computed before the dataset changed is never returned after; old entries simply age out.
+ *
+ * There is a single default cache shared by all analyses, so a column displayed in two windows, or closed and
+ * reopened, is only computed once.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class AnalysisCache {
+
+    // FIELDS
+    /** default number of results to keep */
+    public static final int DEFAULT_CAPACITY = 200;
+    /** default cache */
+    private static final AnalysisCache DEFAULT_CACHE = new AnalysisCache(DEFAULT_CAPACITY);
+    /** map of keys to results, in access order */
+    private final LinkedHashMap<Key, IAnalysisResult> map;
+    /** maximum number of results to keep */
+    private int capacity;
+
+    /**
+     * This is the key for a cached result.
+     */
+    public static class Key {
+
+        /** ID of the dataset */
+        private final long dataId;
+        /** version of the dataset */
+        private final long version;
+        /** index of the column */
+        private final int colIdx;
+        /** analysis type and options */
+        private final String analysis;
+
+        /**
+         * Create a cache key.
+         *
+         * @param data			dataset analyzed
+         * @param colIdx		index of the column analyzed
+         * @param analysis		string identifying the analysis type and options
+         */
+        public Key(ColumnDataset data, int colIdx, String analysis) {
+            this.dataId = data.getId();
+            this.version = data.getVersion();
+            this.colIdx = colIdx;
+            this.analysis = analysis;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.dataId, this.version, this.colIdx, this.analysis);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            boolean retVal;
+            if (this == obj)
+                retVal = true;
+            else if (! (obj instanceof Key))
+                retVal = false;
+            else {
+                Key other = (Key) obj;
+                retVal = (this.dataId == other.dataId && this.version == other.version
+                        && this.colIdx == other.colIdx && this.analysis.equals(other.analysis));
+            }
+            return retVal;
+        }
+
+    }
+
+    /**
+     * Create an empty analysis cache.
+     *
+     * @param capacity		maximum number of results to keep
+     */
+    public AnalysisCache(int capacity) {
+        this.capacity = capacity;
+        this.map = new LinkedHashMap<Key, IAnalysisResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = -3025719034183464331L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, IAnalysisResult> eldest) {
+                return this.size() > AnalysisCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the default cache shared by all analyses
+     */
+    public static AnalysisCache getDefault() {
+        return DEFAULT_CACHE;
+    }
+
+    /**
+     * @return the cached result for a key, or NULL if there is none
+     *
+     * @param key	key of the desired result
+     */
+    public synchronized IAnalysisResult get(Key key) {
+        return this.map.get(key);
+    }
+
+    /**
+     * Store a result in the cache.
+     *
+     * @param key		key of the result
+     * @param result	result to store
+     */
+    public synchronized void put(Key key, IAnalysisResult result) {
+        this.map.put(key, result);
+    }
+
+    /**
+     * Change the capacity of the cache.  If the cache is too big, the least recently used results are removed.
+     *
+     * @param capacity	new maximum number of results to keep
+     */
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = capacity;
+        var iter = this.map.entrySet().iterator();
+        while (this.map.size() > capacity && iter.hasNext()) {
+            iter.next();
+            iter.remove();
+        }
+    }
+
+    /**
+     * @return the number of results in the cache
+     */
+    public synchronized int size() {
+        return this.map.size();
+    }
+
+    /**
+     * Remove all the results from the cache.
+     */
+    public synchronized void clear() {
+        this.map.clear();
+    }
+
+}
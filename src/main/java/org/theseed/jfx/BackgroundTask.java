@@ -12,6 +12,14 @@ import javafx.concurrent.Task;
 /**
  * This object manages a background task for a JavaFX stage.
  *
+ * If the command implements IMonitoredCommand, it is given a progress monitor, and its progress and status messages
+ * are forwarded to the task's progress and message properties at a limited rate.  For every command, the task
+ * records the elapsed time and the peak heap usage, plus the throughput if the command is monitored, and passes them
+ * to the controller on completion.
+ *
+ * The task should be started with start(), which queues it on the application's shared TaskScheduler so that
+ * concurrent commands do not oversubscribe the CPU.
+ *
  * @author Bruce Parrello
  *
  */
@@ -24,6 +32,8 @@ public class BackgroundTask extends Task<Boolean> {
     private IBackgroundController parent;
     /** processor to run */
     private ICommand processor;
+    /** statistics for the completed task */
+    private TaskStats stats;
 
     /**
      * Construct this thread to run the specified processor.
@@ -34,6 +44,23 @@ public class BackgroundTask extends Task<Boolean> {
     public BackgroundTask(IBackgroundController parent, ICommand processor) {
         this.processor = processor;
         this.parent = parent;
+        this.stats = null;
+    }
+
+    /**
+     * Queue this task on the default scheduler as batch work.
+     */
+    public void start() {
+        this.start(TaskScheduler.Priority.BATCH);
+    }
+
+    /**
+     * Queue this task on the default scheduler.
+     *
+     * @param priority	priority of the task
+     */
+    public void start(TaskScheduler.Priority priority) {
+        TaskScheduler.getDefault().submit(this, priority);
     }
 
     /**
@@ -42,15 +69,56 @@ public class BackgroundTask extends Task<Boolean> {
     @Override
     protected Boolean call() throws Exception {
         boolean retVal = false;
+        ProgressMonitor monitor = new ProgressMonitor(this);
+        final boolean monitored = (processor instanceof IMonitoredCommand);
+        if (monitored)
+            ((IMonitoredCommand) processor).setMonitor(monitor);
+        monitor.startHeap();
+        long start = System.nanoTime();
         try {
             // Run the command.
             processor.run();
             retVal = true;
         } catch (Exception e) {
             log.error("Error running command.", e);
+        } finally {
+            monitor.stopHeap();
         }
-        parent.recordCompletion(retVal);
+        // Make sure the final progress is displayed, then compute the statistics.  Only a monitored command
+        // counts its items.
+        monitor.update(true);
+        long elapsedMs = (System.nanoTime() - start) / 1000000L;
+        long items = (monitored ? monitor.getProcessed() : TaskStats.UNKNOWN);
+        this.stats = new TaskStats(elapsedMs, items, monitor.getPeakHeap());
+        log.info("Background task completed: {}.", this.stats);
+        parent.recordCompletion(retVal, this.stats);
         return retVal;
     }
 
+    /**
+     * @return the statistics for this task, or NULL if it has not completed
+     */
+    public TaskStats getStats() {
+        return this.stats;
+    }
+
+    /**
+     * Update the progress property.  This is called by the progress monitor.
+     *
+     * @param done		number of items processed
+     * @param total		total number of items expected
+     */
+    protected void postProgress(long done, long total) {
+        this.updateProgress(done, total);
+    }
+
+    /**
+     * Update the message property.  This is called by the progress monitor.
+     *
+     * @param message	new status message
+     */
+    protected void postMessage(String message) {
+        this.updateMessage(message);
+    }
+
 }
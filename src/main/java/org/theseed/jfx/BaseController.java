@@ -3,8 +3,13 @@
  */
 package org.theseed.jfx;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,6 +26,11 @@ import javafx.stage.Stage;
 /**
  * This is the base class for all types of windows.  It handles preferences, saving the stage, and all of the common utilities.
  *
+ * Windows are loaded from FXML by loadFXML().  The resolved resource URLs, the FXML file contents, and the decoded
+ * icons are cached, so a window opened repeatedly only pays for building the scene.  An application can call
+ * preloadViews(), preloadIcons(), and warmupCharts() at startup to do this work, and the JavaFX class loading for
+ * the charts, on a background thread before the first window needs it.
+ *
  * @author Bruce Parrello
  *
  */
@@ -32,6 +42,17 @@ public abstract class BaseController implements IController {
     private PreferenceSet prefs;
     /** stage containing this window */
     private Stage stage;
+    /** cache of FXML resource URLs, keyed by class and file name */
+    private static final Map<String, URL> FXML_URLS = new ConcurrentHashMap<String, URL>();
+    /** cache of FXML file contents, keyed by URL */
+    private static final Map<String, byte[]> FXML_CONTENTS = new ConcurrentHashMap<String, byte[]>();
+    /** cache of decoded icons, keyed by class and file name */
+    private static final Map<String, Image> ICONS = new ConcurrentHashMap<String, Image>();
+    /** chart and control classes to load during warmup */
+    private static final String[] WARMUP_CLASSES = new String[] { "javafx.scene.chart.PieChart",
+            "javafx.scene.chart.ScatterChart", "javafx.scene.chart.StackedBarChart", "javafx.scene.chart.BarChart",
+            "javafx.scene.chart.CategoryAxis", "javafx.scene.chart.NumberAxis", "javafx.scene.control.TableView",
+            "javafx.scene.control.TitledPane", "javafx.scene.canvas.Canvas" };
 
     /**
      * This internal setup method saves the stage and initializes the preferences.
@@ -141,30 +162,143 @@ public abstract class BaseController implements IController {
      * Load a window from its FXML file and return the controller.  The scene will be attached,
      * but the stage will not have been shown.
      *
-     * @param base		base class for the resource
+     * @param cls		base class for the resource
      * @param fxml		name of the FXML file (without the extension)
      * @param stage		stage onto which the view will be loaded
-     * @param parms		one or more string parameters to pass to the controller
      *
      * @throws IOException
      */
     public static IController loadFXML(Class<?> cls, String fxml, Stage stage) throws IOException {
-        URL location = cls.getResource(fxml + ".fxml");
+        long start = System.nanoTime();
+        URL location = fxmlUrl(cls, fxml);
         FXMLLoader fxmlLoader = new FXMLLoader(location);
-        Parent parent = fxmlLoader.load();
+        Parent parent;
+        try (InputStream fxmlStream = new ByteArrayInputStream(fxmlContents(location))) {
+            parent = fxmlLoader.load(fxmlStream);
+        }
         IController retVal = (IController) fxmlLoader.getController();
         stage.setTitle(retVal.getWindowTitle());
         String iconFile = retVal.getIconName();
-        if (iconFile != null) {
-            Image icon = new Image(cls.getResourceAsStream(iconFile));
-            stage.getIcons().add(icon);
-        }
+        if (iconFile != null)
+            stage.getIcons().add(icon(cls, iconFile));
         Scene scene = new Scene(parent);
         stage.setScene(scene);
         retVal.setup(stage);
+        log.info("Window {} loaded in {} ms.", fxml, (System.nanoTime() - start) / 1000000L);
         return retVal;
     }
 
+    /**
+     * @return the URL of an FXML file
+     *
+     * @param cls		base class for the resource
+     * @param fxml		name of the FXML file (without the extension)
+     *
+     * @throws IOException
+     */
+    private static URL fxmlUrl(Class<?> cls, String fxml) throws IOException {
+        URL retVal = FXML_URLS.get(cls.getName() + "/" + fxml);
+        if (retVal == null) {
+            retVal = cls.getResource(fxml + ".fxml");
+            if (retVal == null)
+                throw new IOException("FXML resource " + fxml + " not found for " + cls.getName() + ".");
+            FXML_URLS.put(cls.getName() + "/" + fxml, retVal);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the contents of an FXML file
+     *
+     * @param location	URL of the FXML file
+     *
+     * @throws IOException
+     */
+    private static byte[] fxmlContents(URL location) throws IOException {
+        String key = location.toExternalForm();
+        byte[] retVal = FXML_CONTENTS.get(key);
+        if (retVal == null) {
+            try (InputStream inStream = location.openStream()) {
+                retVal = inStream.readAllBytes();
+            }
+            FXML_CONTENTS.put(key, retVal);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the decoded image for an icon
+     *
+     * @param cls		base class for the resource
+     * @param iconFile	resource name of the icon file
+     */
+    private static Image icon(Class<?> cls, String iconFile) {
+        return ICONS.computeIfAbsent(cls.getName() + "/" + iconFile, x -> {
+            try (InputStream iconStream = cls.getResourceAsStream(iconFile)) {
+                if (iconStream == null)
+                    throw new IOException("Icon resource " + iconFile + " not found for " + cls.getName() + ".");
+                return new Image(iconStream);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Read FXML files into the cache on a background thread, so that windows using them open faster.
+     *
+     * @param cls		base class for the resources
+     * @param fxmls		names of the FXML files (without the extension)
+     */
+    public static void preloadViews(Class<?> cls, String... fxmls) {
+        TaskScheduler.getDefault().submit(() -> {
+            for (String fxml : fxmls) {
+                try {
+                    fxmlContents(fxmlUrl(cls, fxml));
+                } catch (IOException e) {
+                    log.warn("Could not preload view {}: {}", fxml, e.toString());
+                }
+            }
+        }, TaskScheduler.Priority.BATCH);
+    }
+
+    /**
+     * Decode icons into the cache on a background thread, so that windows using them open faster.
+     *
+     * @param cls		base class for the resources
+     * @param icons		resource names of the icon files
+     */
+    public static void preloadIcons(Class<?> cls, String... icons) {
+        TaskScheduler.getDefault().submit(() -> {
+            for (String iconFile : icons) {
+                try {
+                    icon(cls, iconFile);
+                } catch (UncheckedIOException e) {
+                    log.warn("Could not preload icon {}: {}", iconFile, e.getCause().toString());
+                }
+            }
+        }, TaskScheduler.Priority.BATCH);
+    }
+
+    /**
+     * Load and initialize the JavaFX chart and control classes used by the analysis displays on a background
+     * thread, so that the first window showing a chart does not wait for class loading.
+     */
+    public static void warmupCharts() {
+        TaskScheduler.getDefault().submit(() -> {
+            long start = System.nanoTime();
+            ClassLoader loader = BaseController.class.getClassLoader();
+            for (String className : WARMUP_CLASSES) {
+                try {
+                    Class.forName(className, true, loader);
+                } catch (ClassNotFoundException | LinkageError e) {
+                    log.warn("Could not load {}: {}", className, e.toString());
+                }
+            }
+            log.info("Chart classes loaded in {} ms.", (System.nanoTime() - start) / 1000000L);
+        }, TaskScheduler.Priority.BATCH);
+    }
+
     /**
      * Display an alert message.
      *
@@ -0,0 +1,220 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * This control draws a box plot with one box per category on a single canvas.  Each box is described by five
+ * numbers:  the low whisker, the first quartile, the median, the third quartile, and the high whisker.  The number of
+ * outliers beyond each whisker is written beside it.  Since the outliers are counted rather than plotted, the cost of
+ * drawing depends only on the number of categories.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class BoxPlot extends Region {
+
+    // FIELDS
+    /** canvas on which the plot is drawn */
+    private Canvas canvas;
+    /** category names */
+    private List<String> labels;
+    /** five-number summary for each category */
+    private double[][] boxes;
+    /** number of outliers below the low whisker for each category */
+    private int[] lowOutliers;
+    /** number of outliers above the high whisker for each category */
+    private int[] highOutliers;
+    /** index of the low whisker in a box summary */
+    public static final int LOW_WHISKER = 0;
+    /** index of the first quartile in a box summary */
+    public static final int Q1 = 1;
+    /** index of the median in a box summary */
+    public static final int MEDIAN = 2;
+    /** index of the third quartile in a box summary */
+    public static final int Q3 = 3;
+    /** index of the high whisker in a box summary */
+    public static final int HIGH_WHISKER = 4;
+    /** width of the axis margin on the left */
+    private static final double AXIS_MARGIN = 60.0;
+    /** height of the label margin at the bottom */
+    private static final double LABEL_MARGIN = 30.0;
+    /** height of the margin at the top */
+    private static final double TOP_MARGIN = 20.0;
+    /** approximate number of ticks on the axis */
+    private static final int TICKS = 5;
+    /** fill color for the boxes */
+    private static final Color BOX_COLOR = Color.web("#6A9FD8");
+    /** default size of the control */
+    private static final double DEFAULT_SIZE = 300.0;
+
+    /**
+     * Create an empty box plot.
+     */
+    public BoxPlot() {
+        this.canvas = new Canvas();
+        this.getChildren().add(this.canvas);
+        this.labels = Collections.emptyList();
+        this.boxes = new double[0][];
+        this.lowOutliers = new int[0];
+        this.highOutliers = new int[0];
+        this.setPrefSize(DEFAULT_SIZE, DEFAULT_SIZE);
+    }
+
+    /**
+     * Specify the boxes to draw.
+     *
+     * @param labels		category names
+     * @param boxes			five-number summary for each category (see the index constants), or NaN values if the
+     * 					category has no box
+     * @param lowOutliers	number of values below the low whisker for each category
+     * @param highOutliers	number of values above the high whisker for each category
+     */
+    public void setData(List<String> labels, double[][] boxes, int[] lowOutliers, int[] highOutliers) {
+        this.labels = labels;
+        this.boxes = boxes;
+        this.lowOutliers = lowOutliers;
+        this.highOutliers = highOutliers;
+        this.draw();
+    }
+
+    @Override
+    protected void layoutChildren() {
+        double w = this.snapSizeX(this.getWidth());
+        double h = this.snapSizeY(this.getHeight());
+        if (w != this.canvas.getWidth() || h != this.canvas.getHeight()) {
+            this.canvas.setWidth(w);
+            this.canvas.setHeight(h);
+            this.draw();
+        }
+    }
+
+    /**
+     * Redraw the plot on the canvas.
+     */
+    private void draw() {
+        GraphicsContext gc = this.canvas.getGraphicsContext2D();
+        double w = this.canvas.getWidth();
+        double h = this.canvas.getHeight();
+        gc.clearRect(0, 0, w, h);
+        final int n = this.boxes.length;
+        double plotW = w - AXIS_MARGIN;
+        double plotH = h - LABEL_MARGIN - TOP_MARGIN;
+        if (n > 0 && plotW > 0.0 && plotH > 0.0) {
+            // Compute the range of the axis.
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (double[] box : this.boxes) {
+                if (! Double.isNaN(box[LOW_WHISKER])) {
+                    min = Math.min(min, box[LOW_WHISKER]);
+                    max = Math.max(max, box[HIGH_WHISKER]);
+                }
+            }
+            if (min > max) {
+                // No category has a box.
+                min = 0.0;
+                max = 0.0;
+            }
+            if (max <= min) {
+                min -= 0.5;
+                max += 0.5;
+            }
+            double step = tickStep((max - min) / TICKS);
+            min = Math.floor(min / step) * step;
+            max = Math.ceil(max / step) * step;
+            final double lo = min;
+            final double scale = plotH / (max - min);
+            DoubleUnaryOperator y = v -> TOP_MARGIN + plotH - (v - lo) * scale;
+            // Draw the axis.
+            gc.setStroke(Color.GRAY);
+            gc.setLineWidth(1.0);
+            gc.strokeLine(AXIS_MARGIN, TOP_MARGIN, AXIS_MARGIN, TOP_MARGIN + plotH);
+            gc.setFill(Color.BLACK);
+            gc.setFont(Font.font(11.0));
+            gc.setTextAlign(TextAlignment.RIGHT);
+            gc.setTextBaseline(VPos.CENTER);
+            for (double tick = min; tick <= max + step / 2; tick += step) {
+                double ty = y.applyAsDouble(tick);
+                gc.strokeLine(AXIS_MARGIN - 4.0, ty, AXIS_MARGIN, ty);
+                gc.fillText(String.format("%.4g", tick), AXIS_MARGIN - 6.0, ty, AXIS_MARGIN - 8.0);
+            }
+            // Draw the boxes.
+            double slot = plotW / n;
+            double boxW = Math.max(2.0, Math.min(slot * 0.6, 80.0));
+            gc.setTextAlign(TextAlignment.CENTER);
+            for (int i = 0; i < n; i++) {
+                double[] box = this.boxes[i];
+                double cx = AXIS_MARGIN + (i + 0.5) * slot;
+                double left = cx - boxW / 2;
+                // A category with no finite values has no box, only outlier counts at the ends of the axis.
+                double wLow = TOP_MARGIN + plotH;
+                double wHigh = TOP_MARGIN;
+                if (! Double.isNaN(box[LOW_WHISKER])) {
+                    double q1 = y.applyAsDouble(box[Q1]);
+                    double q3 = y.applyAsDouble(box[Q3]);
+                    wLow = y.applyAsDouble(box[LOW_WHISKER]);
+                    wHigh = y.applyAsDouble(box[HIGH_WHISKER]);
+                    gc.setStroke(Color.BLACK);
+                    gc.strokeLine(cx, wHigh, cx, q3);
+                    gc.strokeLine(cx, q1, cx, wLow);
+                    gc.strokeLine(cx - boxW / 4, wHigh, cx + boxW / 4, wHigh);
+                    gc.strokeLine(cx - boxW / 4, wLow, cx + boxW / 4, wLow);
+                    gc.setFill(BOX_COLOR);
+                    gc.fillRect(left, q3, boxW, q1 - q3);
+                    gc.strokeRect(left, q3, boxW, q1 - q3);
+                    gc.setLineWidth(2.0);
+                    double med = y.applyAsDouble(box[MEDIAN]);
+                    gc.strokeLine(left, med, left + boxW, med);
+                    gc.setLineWidth(1.0);
+                }
+                // Write the outlier counts beside the whisker caps, and the label below the plot.
+                gc.setFill(Color.BLACK);
+                gc.setTextAlign(TextAlignment.LEFT);
+                gc.setTextBaseline(VPos.CENTER);
+                double countX = cx + boxW / 4 + 2.0;
+                double countW = slot / 2 - boxW / 4 - 2.0;
+                if (this.highOutliers[i] > 0 && countW > 0.0)
+                    gc.fillText("+" + this.highOutliers[i], countX, wHigh, countW);
+                if (this.lowOutliers[i] > 0 && countW > 0.0)
+                    gc.fillText("+" + this.lowOutliers[i], countX, wLow, countW);
+                gc.setTextAlign(TextAlignment.CENTER);
+                gc.setTextBaseline(VPos.TOP);
+                if (i < this.labels.size())
+                    gc.fillText(this.labels.get(i), cx, TOP_MARGIN + plotH + 6.0, slot - 2.0);
+            }
+        }
+    }
+
+    /**
+     * @return a round tick spacing (1, 2, or 5 times a power of ten) close to the specified spacing
+     *
+     * @param rough		approximate spacing desired
+     */
+    private static double tickStep(double rough) {
+        double power = Math.pow(10.0, Math.floor(Math.log10(rough)));
+        double fraction = rough / power;
+        double retVal;
+        if (fraction < 1.5)
+            retVal = power;
+        else if (fraction < 3.5)
+            retVal = 2.0 * power;
+        else if (fraction < 7.5)
+            retVal = 5.0 * power;
+        else
+            retVal = 10.0 * power;
+        return retVal;
+    }
+
+}
@@ -0,0 +1,176 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * This object contains a single column of a dataset stored as dictionary codes.  Each distinct string is stored once
+ * in a sorted dictionary, and each row contains the index of its string in the dictionary.  Because the dictionary is
+ * sorted, code order is the same as string order.
+ *
+ * Rows can be appended to a column.  This always produces a new column object, and the old column is left unchanged
+ * for anyone still using it.  If the new rows contain no new values, the new column shares the old one's code array
+ * and dictionary; otherwise, it gets a merged dictionary and renumbered codes.  Use sameDictionary() to find out
+ * whether codes from the two columns can be compared.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class CodedColumn {
+
+    // FIELDS
+    /** array of dictionary codes, one per row */
+    private final int[] codes;
+    /** sorted dictionary of distinct values */
+    private final String[] dictionary;
+    /** number of rows in the column */
+    private final int size;
+
+    /**
+     * Construct a coded column from the component parts.
+     *
+     * @param codes			array of codes, one per row
+     * @param size			number of rows in the column
+     * @param dictionary	sorted array of distinct values
+     */
+    protected CodedColumn(int[] codes, int size, String[] dictionary) {
+        this.codes = codes;
+        this.size = size;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Create a coded column from a code array whose codes are in order of first appearance.  The dictionary is sorted
+     * and the codes are renumbered to match.
+     *
+     * @param codes		array of codes, one per row
+     * @param size		number of rows in the column
+     * @param values	array of distinct values, in code order
+     *
+     * @return the sorted coded column
+     */
+    protected static CodedColumn sorted(int[] codes, int size, String[] values) {
+        // Sort the code numbers by the associated string.
+        Integer[] order = new Integer[values.length];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> values[a].compareTo(values[b]));
+        // Build the new dictionary and the map from old codes to new codes.
+        String[] dictionary = new String[values.length];
+        int[] remap = new int[values.length];
+        for (int i = 0; i < order.length; i++) {
+            dictionary[i] = values[order[i]];
+            remap[order[i]] = i;
+        }
+        // Renumber the codes.
+        for (int i = 0; i < size; i++)
+            codes[i] = remap[codes[i]];
+        return new CodedColumn(codes, size, dictionary);
+    }
+
+    /**
+     * Append rows to this column.
+     *
+     * @param values	string values of the new rows
+     *
+     * @return a new column containing all the rows; it has the same dictionary as this one if the new values
+     * 		   were all in the dictionary, else a merged dictionary
+     */
+    protected CodedColumn append(String[] values) {
+        // Look up each new value in the dictionary.
+        int[] newCodes = new int[values.length];
+        TreeSet<String> newValues = new TreeSet<String>();
+        for (int i = 0; i < values.length; i++) {
+            newCodes[i] = Arrays.binarySearch(this.dictionary, values[i]);
+            if (newCodes[i] < 0)
+                newValues.add(values[i]);
+        }
+        final int newSize = this.size + values.length;
+        CodedColumn retVal;
+        if (newValues.isEmpty()) {
+            // All the values are known, so we can keep the dictionary and fill the unused part of the code array.
+            // This column never looks past its own size, so it does not see the new rows.
+            int[] codes = this.codes;
+            if (newSize > codes.length)
+                codes = Arrays.copyOf(codes, Math.max(newSize, codes.length + (codes.length >> 1)));
+            System.arraycopy(newCodes, 0, codes, this.size, newCodes.length);
+            retVal = new CodedColumn(codes, newSize, this.dictionary);
+        } else {
+            // Merge the dictionaries and renumber the existing codes.
+            TreeSet<String> allValues = new TreeSet<String>(Arrays.asList(this.dictionary));
+            allValues.addAll(newValues);
+            String[] merged = allValues.toArray(new String[allValues.size()]);
+            int[] remap = new int[this.dictionary.length];
+            for (int i = 0; i < remap.length; i++)
+                remap[i] = Arrays.binarySearch(merged, this.dictionary[i]);
+            int[] codes = new int[newSize];
+            for (int i = 0; i < this.size; i++)
+                codes[i] = remap[this.codes[i]];
+            for (int i = 0; i < values.length; i++)
+                codes[this.size + i] = Arrays.binarySearch(merged, values[i]);
+            retVal = new CodedColumn(codes, newSize, merged);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the number of rows in this column
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of distinct values in this column
+     */
+    public int dictionarySize() {
+        return this.dictionary.length;
+    }
+
+    /**
+     * @return TRUE if another column uses the same dictionary as this one, so that their codes are interchangeable
+     *
+     * @param other		other column to check
+     */
+    public boolean sameDictionary(CodedColumn other) {
+        return this.dictionary == other.dictionary;
+    }
+
+    /**
+     * @return the code for the specified row
+     *
+     * @param row	index of the row whose code is desired
+     */
+    public int getCode(int row) {
+        return this.codes[row];
+    }
+
+    /**
+     * @return the string value for the specified code
+     *
+     * @param code	code whose string is desired
+     */
+    public String getValue(int code) {
+        return this.dictionary[code];
+    }
+
+    /**
+     * @return the code for the specified string value, or a negative number if the value is not in the dictionary
+     *
+     * @param value		string value whose code is desired
+     */
+    public int findCode(String value) {
+        return Arrays.binarySearch(this.dictionary, value);
+    }
+
+    /**
+     * @return the underlying code array (which may be longer than the column)
+     */
+    protected int[] codes() {
+        return this.codes;
+    }
+
+}
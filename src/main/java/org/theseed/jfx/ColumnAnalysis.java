@@ -5,34 +5,80 @@ package org.theseed.jfx;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.event.EventHandler;
 import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TitledPane;
 
 /**
  * This is the base class for column analysis.  It runs through a specific column from a list of string arrays
  * and produces a visual display of some sort, which is then passed back in a titled pane.
  *
+ * The data is held in a ColumnDataset, so an analysis can request a column already parsed into primitive form instead
+ * of iterating through the strings.  The iterator is still available for analyses that need the raw strings.
+ *
+ * An analysis that splits its work into a partial aggregate (an IAccumulator) and a rendering step can be run
+ * in parallel and batched with other analyses (see AnalysisBatch).  Such an analysis overrides usesAccumulator(),
+ * createAccumulator() and render().
+ *
+ * The computation produces a headless result (an IAnalysisResult) containing only the numbers, and render() turns
+ * that into a display.  Results are kept in the default AnalysisCache, keyed by the dataset version, the column, and
+ * the analysis type and options, so displaying the same column again costs only the rendering.
+ *
+ * A live display (see getLiveDisplay()) keeps its accumulator and listens for rows added to the dataset.  New rows
+ * are scanned into the accumulator, and the existing display is patched with the new result by update(), so only
+ * the new rows are processed and the charts are not rebuilt.
+ *
  * @author Bruce Parrello
  *
  */
 public abstract class ColumnAnalysis {
 
     // FIELDS
-    /** data buffer containin the lines of data */
-    private Collection<String[]> dataBuffer;
+    /** dataset containing the lines of data */
+    private ColumnDataset dataBuffer;
     /** label column index */
     private int labelIdx;
     /** default height and width for output element */
     protected static final double DEFAULT_SIZE = 300.0;
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(ColumnAnalysis.class);
+    /** pane property key for the background task of an asynchronous display */
+    private static final String TASK_KEY = "org.theseed.jfx.ColumnAnalysis.task";
+    /** pane property key for the dataset listener of a live display */
+    private static final String LIVE_KEY = "org.theseed.jfx.ColumnAnalysis.live";
 
     /**
-     * Construct a column analysis.
+     * Construct a column analysis.  The analysis gets its own dataset; to share parsed columns and cached results
+     * among several analyses, construct them from a single ColumnDataset instead.
      *
      * @param data		collection of data lines
      * @param labelIdx	label column index
      */
     public ColumnAnalysis(Collection<String[]> data, int labelIdx) {
+        this(new ColumnDataset(data), labelIdx);
+    }
+
+    /**
+     * Construct a column analysis for a columnar dataset.
+     *
+     * @param data		dataset to analyze
+     * @param labelIdx	label column index
+     */
+    public ColumnAnalysis(ColumnDataset data, int labelIdx) {
         this.dataBuffer = data;
         this.labelIdx = labelIdx;
     }
@@ -45,6 +91,16 @@ public abstract class ColumnAnalysis {
      */
     public TitledPane getDisplay(String name, int colIdx) {
         Node analysis = this.getAnalysis(this.new Iter(colIdx));
+        return makePane(name, analysis);
+    }
+
+    /**
+     * @return a titled pane containing an analysis display
+     *
+     * @param name		name of the column analyzed
+     * @param analysis	display of the analysis
+     */
+    protected static TitledPane makePane(String name, Node analysis) {
         TitledPane retVal = new TitledPane(name, analysis);
         retVal.setCollapsible(false);
         return retVal;
@@ -57,6 +113,367 @@ public abstract class ColumnAnalysis {
      */
     protected abstract Node getAnalysis(Iter column);
 
+    /**
+     * @return TRUE if this analysis uses accumulators; this must be cheap, since it is used to decide how to run the
+     * 		   analysis, and an analysis that returns TRUE must override createAccumulator()
+     */
+    protected boolean usesAccumulator() {
+        return false;
+    }
+
+    /**
+     * @return a new, empty accumulator for analyzing the specified column, or NULL if this analysis
+     * 		   does not use accumulators
+     *
+     * @param colIdx	index of the column to analyze
+     */
+    protected IAccumulator createAccumulator(int colIdx) {
+        return null;
+    }
+
+    /**
+     * Complete the computation for an accumulator after all the rows have been scanned.  An analysis can
+     * override this method to perform a second pass or to convert the accumulator into a more compact result.
+     * This is called from the computation thread, not the JavaFX application thread.
+     *
+     * The default is to return the accumulator itself, which must then implement IAnalysisResult.
+     *
+     * @param result		merged accumulator from the scan
+     * @param cancelled		function that returns TRUE if the analysis should stop
+     *
+     * @return the final result to render
+     */
+    protected IAnalysisResult finish(IAccumulator result, BooleanSupplier cancelled) {
+        if (! (result instanceof IAnalysisResult))
+            throw new UnsupportedOperationException(this.getClass().getSimpleName() + " does not produce a result from its accumulator.");
+        return (IAnalysisResult) result;
+    }
+
+    /**
+     * @return a display of a computed analysis result
+     *
+     * @param result	result computed from all the rows of the column
+     */
+    protected Node render(IAnalysisResult result) {
+        throw new UnsupportedOperationException(this.getClass().getSimpleName() + " does not support accumulators.");
+    }
+
+    /**
+     * Prepare an accumulator to have new rows merged into it.  This is called when rows are added to the dataset
+     * of a live display, before the accumulator for the new rows (which is created from the extended columns) is
+     * merged into the old one.  Most accumulators do not depend on a column's dictionary, so nothing needs to be
+     * done; but an accumulator that does must override this method to convert itself to the column's new
+     * dictionary (see CodedColumn.sameDictionary()).
+     *
+     * @param acc		accumulator containing the old rows
+     * @param colIdx	index of the column being analyzed
+     *
+     * @return an accumulator that can receive the new rows
+     */
+    protected IAccumulator extend(IAccumulator acc, int colIdx) {
+        return acc;
+    }
+
+    /**
+     * Patch an existing display to show a new result.  This is called on the JavaFX application thread when a
+     * live display changes.  The default is to do nothing, which causes the display to be replaced.
+     *
+     * @param display	display created by render() for an earlier result
+     * @param result	new result to show
+     *
+     * @return TRUE if the display was updated, FALSE if it must be replaced
+     */
+    protected boolean update(Node display, IAnalysisResult result) {
+        return false;
+    }
+
+    /**
+     * @return a string describing the options of this analysis that affect its result
+     *
+     * Subclasses with options must override this method so that results computed with different options are
+     * cached separately.
+     */
+    protected String getOptionKey() {
+        return "";
+    }
+
+    /**
+     * @return the key for caching the result of analyzing a column
+     *
+     * @param colIdx	index of the column analyzed
+     */
+    protected AnalysisCache.Key getResultKey(int colIdx) {
+        String analysis = this.getClass().getName() + "/" + this.labelIdx + "/" + this.getOptionKey();
+        return new AnalysisCache.Key(this.dataBuffer, colIdx, analysis);
+    }
+
+    /**
+     * Compute the result of analyzing a column, using multiple threads.  If the result is already in the cache,
+     * it is returned without scanning the data.  This can be called from a background thread.
+     *
+     * @param colIdx	index of the column to analyze
+     *
+     * @return the analysis result
+     */
+    public IAnalysisResult compute(int colIdx) {
+        return this.compute(colIdx, () -> false);
+    }
+
+    /**
+     * Compute the result of analyzing a column, using multiple threads and checking periodically for
+     * cancellation.  If the result is already in the cache, it is returned without scanning the data.  This
+     * can be called from a background thread.
+     *
+     * @param colIdx		index of the column to analyze
+     * @param cancelled		function that returns TRUE if the analysis should stop
+     *
+     * @return the analysis result
+     *
+     * @throws CancellationException if the analysis was cancelled
+     */
+    public IAnalysisResult compute(int colIdx, BooleanSupplier cancelled) {
+        AnalysisCache.Key key = this.getResultKey(colIdx);
+        IAnalysisResult retVal = AnalysisCache.getDefault().get(key);
+        if (retVal == null) {
+            if (! this.usesAccumulator())
+                throw new UnsupportedOperationException(this.getClass().getSimpleName() + " does not support accumulators.");
+            // If rows are added during the scan, the chunks may have been given columns with different
+            // dictionaries, so we scan again.
+            IAccumulator result;
+            long version;
+            do {
+                version = this.dataBuffer.getVersion();
+                key = this.getResultKey(colIdx);
+                result = ParallelScan.run(this.size(), () -> this.createAccumulator(colIdx), cancelled);
+            } while (version != this.dataBuffer.getVersion());
+            retVal = this.finish(result, cancelled);
+            AnalysisCache.getDefault().put(key, retVal);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the cached result of analyzing a column, or NULL if the result is not in the cache
+     *
+     * @param colIdx	index of the column analyzed
+     */
+    protected IAnalysisResult getCachedResult(int colIdx) {
+        return AnalysisCache.getDefault().get(this.getResultKey(colIdx));
+    }
+
+    /**
+     * Create the pane displaying the analysis of a column without blocking the calling thread.  The
+     * computation is queued as interactive work on the default task scheduler.
+     *
+     * @param name			name of the column being analyzed
+     * @param colIdx		index of the column to analyze
+     *
+     * @return a titled pane that will contain the analysis when it is complete
+     */
+    public TitledPane getDisplayAsync(String name, int colIdx) {
+        return this.getDisplayAsync(name, colIdx, TaskScheduler.getDefault().executor(TaskScheduler.Priority.INTERACTIVE));
+    }
+
+    /**
+     * Create the pane displaying the analysis of a column without blocking the calling thread.  The pane is
+     * returned immediately with a progress indicator as its content.  The scan and aggregation run on the
+     * specified executor, and the display is built on the JavaFX application thread when they finish.
+     * The computation can be stopped by passing the pane to cancelDisplay().
+     *
+     * If this analysis does not use accumulators, there is nothing to do in the background, so the display
+     * is built on the application thread once the executor gets to it.
+     *
+     * This method must be called from the JavaFX application thread.
+     *
+     * @param name			name of the column being analyzed
+     * @param colIdx		index of the column to analyze
+     * @param executor		executor for the background computation
+     *
+     * @return a titled pane that will contain the analysis when it is complete
+     */
+    public TitledPane getDisplayAsync(String name, int colIdx, Executor executor) {
+        return asyncPane(name, cancelled -> {
+            // Note that the scan also parses the column in this thread.
+            IAnalysisResult result = this.getCachedResult(colIdx);
+            if (result == null && this.usesAccumulator())
+                result = this.compute(colIdx, cancelled);
+            return result;
+        }, result -> (result != null ? this.render(result) : this.getAnalysis(this.new Iter(colIdx))), executor);
+    }
+
+    /**
+     * Create a pane whose content is computed without blocking the calling thread.  The pane is returned
+     * immediately with a progress indicator as its content.  The computation runs on the specified executor, and
+     * the content is rendered from its result on the JavaFX application thread.  If the computation fails or is
+     * cancelled, the pane displays a message instead.  The computation can be stopped by passing the pane to
+     * cancelDisplay().
+     *
+     * This method must be called from the JavaFX application thread.
+     *
+     * @param title		title for the pane
+     * @param compute	function that computes the result, given a function that returns TRUE if the computation
+     * 					should stop
+     * @param render	function that builds the pane's content from the result
+     * @param executor	executor for the background computation
+     *
+     * @return a titled pane that will contain the rendered result when it is complete
+     */
+    protected static <T> TitledPane asyncPane(String title, Function<BooleanSupplier, T> compute,
+            Function<T, Node> render, Executor executor) {
+        ProgressIndicator placeholder = new ProgressIndicator();
+        placeholder.setPrefSize(DEFAULT_SIZE, DEFAULT_SIZE);
+        TitledPane retVal = makePane(title, placeholder);
+        Task<T> task = new Task<T>() {
+            @Override
+            protected T call() throws Exception {
+                return compute.apply(this::isCancelled);
+            }
+        };
+        task.setOnSucceeded(e -> retVal.setContent(render.apply(task.getValue())));
+        task.setOnFailed(e -> {
+            Throwable error = task.getException();
+            log.error("Error computing {}.", title, error);
+            retVal.setContent(new Label("Analysis failed: " + error.getMessage()));
+        });
+        task.setOnCancelled(e -> retVal.setContent(new Label("Analysis cancelled.")));
+        registerTask(retVal, task);
+        executor.execute(task);
+        return retVal;
+    }
+
+    /**
+     * Attach the background task computing a pane's content to the pane, so that it can be cancelled by
+     * cancelDisplay().  The task is detached when it finishes.
+     *
+     * @param pane		pane whose content is being computed
+     * @param task		task computing the content
+     */
+    protected static void registerTask(TitledPane pane, Task<?> task) {
+        pane.getProperties().put(TASK_KEY, task);
+        EventHandler<WorkerStateEvent> done = e -> pane.getProperties().remove(TASK_KEY);
+        task.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, done);
+        task.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, done);
+        task.addEventHandler(WorkerStateEvent.WORKER_STATE_CANCELLED, done);
+    }
+
+    /**
+     * Cancel the computation for a pane returned by getDisplayAsync().  If the computation has not started,
+     * it will never run; if it is running, it will stop at the next chunk boundary.
+     *
+     * @param pane		pane whose computation is to be cancelled
+     *
+     * @return TRUE if a computation was cancelled, FALSE if there was nothing to cancel
+     */
+    public static boolean cancelDisplay(TitledPane pane) {
+        boolean retVal = false;
+        Object task = pane.getProperties().get(TASK_KEY);
+        if (task instanceof Task)
+            retVal = ((Task<?>) task).cancel();
+        return retVal;
+    }
+
+    /**
+     * Create a pane displaying the analysis of a column that is updated as rows are added to the dataset.  The
+     * initial analysis is computed in the calling thread.  When rows are added, only the new rows are scanned,
+     * in the thread that added them, into a new accumulator that is merged with the old one; and the display is
+     * patched on the JavaFX application thread.  The updates
+     * continue until the pane is passed to stopLiveDisplay().
+     *
+     * @param name		name of the column being analyzed
+     * @param colIdx	index of the column to analyze
+     *
+     * @return a titled pane containing the analysis
+     */
+    public TitledPane getLiveDisplay(String name, int colIdx) {
+        if (! this.usesAccumulator())
+            throw new UnsupportedOperationException(this.getClass().getSimpleName() + " does not support accumulators.");
+        TitledPane retVal = makePane(name, null);
+        LiveState state = new LiveState(retVal, colIdx);
+        // We register the listener before scanning, but it cannot run until the scan is done.
+        synchronized (state) {
+            this.dataBuffer.addListener(state);
+            final int n = this.size();
+            state.acc = ParallelScan.run(n, () -> this.createAccumulator(colIdx));
+            state.scanned = n;
+            retVal.setContent(this.render(this.finish(state.acc, () -> false)));
+        }
+        retVal.getProperties().put(LIVE_KEY, state);
+        return retVal;
+    }
+
+    /**
+     * Stop updating a pane returned by getLiveDisplay().
+     *
+     * @param pane		pane to stop updating
+     *
+     * @return TRUE if the pane was live, else FALSE
+     */
+    public static boolean stopLiveDisplay(TitledPane pane) {
+        boolean retVal = false;
+        Object state = pane.getProperties().remove(LIVE_KEY);
+        if (state instanceof ColumnAnalysis.LiveState) {
+            ((ColumnAnalysis.LiveState) state).stop();
+            retVal = true;
+        }
+        return retVal;
+    }
+
+    /**
+     * This object tracks the accumulator for a live display and updates it when rows are added.
+     */
+    private class LiveState implements ColumnDataset.Listener {
+
+        /** pane containing the display */
+        private final TitledPane pane;
+        /** index of the column being analyzed */
+        private final int colIdx;
+        /** accumulator containing the rows scanned so far */
+        private IAccumulator acc;
+        /** number of rows scanned so far */
+        private int scanned;
+
+        /**
+         * Create the tracking object for a live display.
+         *
+         * @param pane		pane containing the display
+         * @param colIdx	index of the column being analyzed
+         */
+        private LiveState(TitledPane pane, int colIdx) {
+            this.pane = pane;
+            this.colIdx = colIdx;
+            this.acc = null;
+            this.scanned = 0;
+        }
+
+        @Override
+        public synchronized void rowsAdded(ColumnDataset data, int oldSize, int newSize) {
+            if (this.acc != null && newSize > this.scanned) {
+                // Scan only the new rows.  The columns have been replaced by extended copies, so the new rows are
+                // scanned by an accumulator built from those.
+                this.acc = ColumnAnalysis.this.extend(this.acc, this.colIdx);
+                IAccumulator added = ColumnAnalysis.this.createAccumulator(this.colIdx);
+                added.addRange(this.scanned, newSize);
+                this.acc.merge(added);
+                this.scanned = newSize;
+                IAnalysisResult result = ColumnAnalysis.this.finish(this.acc, () -> false);
+                Platform.runLater(() -> {
+                    Node display = this.pane.getContent();
+                    if (! ColumnAnalysis.this.update(display, result))
+                        this.pane.setContent(ColumnAnalysis.this.render(result));
+                });
+            }
+        }
+
+        /**
+         * Stop listening for new rows.
+         */
+        private synchronized void stop() {
+            ColumnAnalysis.this.dataBuffer.removeListener(this);
+            this.acc = null;
+        }
+
+    }
+
     /**
      * @return the number of data lines
      */
@@ -64,15 +481,35 @@ public abstract class ColumnAnalysis {
         return this.dataBuffer.size();
     }
 
+    /**
+     * @return the dataset being analyzed
+     */
+    protected ColumnDataset getData() {
+        return this.dataBuffer;
+    }
+
+    /**
+     * @return the index of the label column
+     */
+    protected int getLabelIdx() {
+        return this.labelIdx;
+    }
+
+    /**
+     * @return the label column converted to dictionary codes; this is encoded once per dataset and shared by all
+     * 		   the analyses
+     */
+    protected CodedColumn getLabels() {
+        return this.dataBuffer.getCoded(this.labelIdx);
+    }
+
     /**
      * This class creates an iterator for a single column.
      */
     public class Iter implements Iterator<String> {
 
-        /** iterator through the lines of data */
-        private Iterator<String[]> iter;
-        /** current line of data */
-        private String[] curr;
+        /** index of the current line of data */
+        private int curr;
         /** index of the column of interest */
         private int colIdx;
 
@@ -82,23 +519,32 @@ public abstract class ColumnAnalysis {
          * @param colIdx	index of target column
          */
         public Iter(int colIdx) {
-            this.iter = ColumnAnalysis.this.dataBuffer.iterator();
+            this.curr = -1;
             this.colIdx = colIdx;
         }
 
         @Override
         public boolean hasNext() {
-            return this.iter.hasNext();
+            return (this.curr + 1 < ColumnAnalysis.this.dataBuffer.size());
         }
 
         @Override
         public String next() {
-            this.curr = this.iter.next();
-            return this.curr[this.colIdx];
+            if (! this.hasNext())
+                throw new NoSuchElementException("Attempt to read past end of column.");
+            this.curr++;
+            return ColumnAnalysis.this.dataBuffer.getString(this.curr, this.colIdx);
         }
 
         public String getLabel() {
-            return this.curr[ColumnAnalysis.this.labelIdx];
+            return ColumnAnalysis.this.dataBuffer.getString(this.curr, ColumnAnalysis.this.labelIdx);
+        }
+
+        /**
+         * @return the index of the column being iterated
+         */
+        public int getColIdx() {
+            return this.colIdx;
         }
 
     }
@@ -0,0 +1,203 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TitledPane;
+
+/**
+ * This is a scrolling container for the analyses of many columns.  It is a list view whose items are column indices,
+ * so only the cells in the viewport exist, and a column's pane is only computed and rendered when its cell is shown.
+ * The panes are built asynchronously (see ColumnAnalysis.getDisplayAsync()), so scrolling never waits for a scan.
+ *
+ * Panes that scroll out of view are kept through soft references, so scrolling back is instant unless memory is
+ * needed, in which case the garbage collector can release the chart nodes.  A released pane is rebuilt from the
+ * cached analysis result, so only the rendering is repeated.  A pane that scrolls out of view before its computation
+ * finishes is cancelled.
+ *
+ * To make scrolling smoother, the results for a few columns past the last one shown are computed in the background
+ * at batch priority.  Only the results are computed; nothing is rendered until the column is actually shown.  A
+ * column is only prefetched when its result is not in the cache, so a result that has been evicted from the cache
+ * will be prefetched again.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ColumnDashboard extends ListView<Integer> {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(ColumnDashboard.class);
+    /** analysis to display for each column */
+    private ColumnAnalysis analysis;
+    /** column names, indexed by column */
+    private String[] names;
+    /** panes built so far, keyed by column index */
+    private Map<Integer, SoftReference<TitledPane>> panes;
+    /** column indices whose results are queued or running for prefetch */
+    private Set<Integer> prefetched;
+    /** number of columns past the viewport to prefetch */
+    private int prefetch;
+    /** default number of columns to prefetch */
+    public static final int DEFAULT_PREFETCH = 4;
+
+    /**
+     * Create a dashboard for all the columns of a dataset except the label column.
+     *
+     * @param analysis	analysis to display for each column
+     * @param names		array of column names, indexed by column
+     */
+    public ColumnDashboard(ColumnAnalysis analysis, String[] names) {
+        this.analysis = analysis;
+        this.names = names;
+        this.panes = new HashMap<Integer, SoftReference<TitledPane>>();
+        this.prefetched = ConcurrentHashMap.newKeySet();
+        this.prefetch = DEFAULT_PREFETCH;
+        List<Integer> columns = new ArrayList<Integer>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            if (i != analysis.getLabelIdx())
+                columns.add(i);
+        }
+        this.getItems().setAll(columns);
+        this.setCellFactory(x -> new Cell());
+    }
+
+    /**
+     * Specify the number of columns past the viewport whose results should be computed in advance.
+     *
+     * @param prefetch	number of columns to prefetch (0 to turn off prefetching)
+     */
+    public void setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * @return the number of columns past the viewport whose results are computed in advance
+     */
+    public int getPrefetch() {
+        return this.prefetch;
+    }
+
+    /**
+     * @return the pane for a column, building it if necessary
+     *
+     * @param colIdx	index of the column whose pane is desired
+     */
+    private TitledPane getPane(int colIdx) {
+        SoftReference<TitledPane> ref = this.panes.get(colIdx);
+        TitledPane retVal = (ref == null ? null : ref.get());
+        if (retVal == null) {
+            String name = (colIdx < this.names.length ? this.names[colIdx] : "column " + (colIdx + 1));
+            retVal = this.analysis.getDisplayAsync(name, colIdx);
+            this.panes.put(colIdx, new SoftReference<TitledPane>(retVal));
+        }
+        return retVal;
+    }
+
+    /**
+     * Release a pane that is no longer shown.  If its computation has not finished, it is cancelled, and the
+     * pane is forgotten so that it will be rebuilt the next time it is needed.
+     *
+     * @param colIdx	index of the column whose pane is no longer shown
+     * @param pane		pane no longer shown
+     */
+    private void releasePane(int colIdx, TitledPane pane) {
+        if (ColumnAnalysis.cancelDisplay(pane))
+            this.panes.remove(colIdx);
+    }
+
+    /**
+     * Queue the background computation of the results for the columns after a list position.
+     *
+     * @param index		list position of the column being shown
+     */
+    private void prefetchAfter(int index) {
+        // Only an analysis that uses accumulators has results that can be computed in the background.
+        if (this.analysis.usesAccumulator()) {
+            final int end = Math.min(this.getItems().size(), index + 1 + this.prefetch);
+            for (int i = index + 1; i < end; i++) {
+                Integer colIdx = this.getItems().get(i);
+                if (this.analysis.getCachedResult(colIdx) == null && this.prefetched.add(colIdx)) {
+                    TaskScheduler.getDefault().submit(() -> {
+                        try {
+                            this.analysis.compute(colIdx);
+                        } catch (RuntimeException e) {
+                            log.warn("Error prefetching column {}: {}", colIdx, e.toString());
+                        } finally {
+                            // The result is in the cache now, so if it is ever evicted, the column can be prefetched
+                            // again.
+                            this.prefetched.remove(colIdx);
+                        }
+                    }, TaskScheduler.Priority.BATCH);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cancel all pending computations and release all the panes.
+     */
+    public void dispose() {
+        for (SoftReference<TitledPane> ref : this.panes.values()) {
+            TitledPane pane = ref.get();
+            if (pane != null)
+                ColumnAnalysis.cancelDisplay(pane);
+        }
+        this.panes.clear();
+        this.getItems().clear();
+    }
+
+    /**
+     * This is a list cell that displays the pane for a column.
+     */
+    private class Cell extends ListCell<Integer> {
+
+        /** index of the column currently shown, or NULL if none */
+        private Integer shown;
+
+        /**
+         * Create an empty cell.
+         */
+        private Cell() {
+            this.shown = null;
+        }
+
+        @Override
+        protected void updateItem(Integer colIdx, boolean empty) {
+            super.updateItem(colIdx, empty);
+            if (this.shown != null && (empty || ! this.shown.equals(colIdx))) {
+                // The old column has scrolled away.  Cells are reused, so the pane may already have moved to
+                // another cell; in that case it is still visible and must not be released.
+                if (this.getGraphic() instanceof TitledPane) {
+                    TitledPane pane = (TitledPane) this.getGraphic();
+                    if (pane.getParent() == this)
+                        ColumnDashboard.this.releasePane(this.shown, pane);
+                }
+                this.shown = null;
+            }
+            this.setText(null);
+            if (empty || colIdx == null)
+                this.setGraphic(null);
+            else {
+                this.setGraphic(ColumnDashboard.this.getPane(colIdx));
+                this.shown = colIdx;
+                ColumnDashboard.this.prefetchAfter(this.getIndex());
+            }
+        }
+
+    }
+
+}
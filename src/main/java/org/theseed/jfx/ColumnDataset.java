@@ -0,0 +1,305 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This object is a columnar view of a table of string data.  The input lines are kept, but each column is parsed only
+ * once, the first time it is requested.  A column can be parsed into floating-point values (a NumericColumn) or into
+ * dictionary codes (a CodedColumn), and the parsed forms are cached so that all analyses of the same column share them.
+ *
+ * Analyses share parsed columns and cached results only if they are constructed from the same dataset object, so a
+ * client that runs several analyses on one table should build the dataset once and pass it to each of them.
+ *
+ * Each dataset has a unique ID and a version number.  Together these identify the contents of the dataset, so that
+ * analysis results can be cached (see AnalysisCache).  The version must be incremented whenever the data changes.
+ *
+ * Rows can be appended to the dataset with addRows().  Columns that have already been parsed are extended with just
+ * the new rows, and listeners are told which rows were added, so that analyses can update incrementally.  The
+ * extended columns are new objects (see NumericColumn.grow() and CodedColumn.append()), published only after they
+ * are complete, and the row count is updated after that; so a thread that reads size() and then asks for a column
+ * always gets a column with at least that many rows, and an analysis already running still sees consistent data
+ * for the rows that were present when it started.  Parsing a column for the first time and adding rows are guarded
+ * by the same lock, so a new column never misses rows that are being added.  The lines themselves are stored the
+ * same way as the column values:  new lines go past the end of the visible rows, and the array is replaced only
+ * when it runs out of room, so getString() can read a row without locking.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ColumnDataset {
+
+    // FIELDS
+    /** source of unique dataset IDs */
+    private static final AtomicLong ID_COUNTER = new AtomicLong(0);
+    /** unique ID of this dataset */
+    private final long id;
+    /** version number of the data */
+    private volatile long version;
+    /** lines of data, with room for more at the end; slots past the row count are filled before it is updated */
+    private volatile String[][] rows;
+    /** number of lines of data, updated only after the parsed columns have been extended */
+    private volatile int rowCount;
+    /** lock held for reading while a column is parsed and for writing while rows are added */
+    private final ReadWriteLock parseLock;
+    /** cache of numeric columns */
+    private Map<Integer, NumericColumn> numericColumns;
+    /** cache of coded columns */
+    private Map<Integer, CodedColumn> codedColumns;
+    /** listeners for row additions */
+    private List<Listener> listeners;
+
+    /**
+     * This interface is implemented by objects that need to know when rows are added to a dataset.
+     */
+    public static interface Listener {
+
+        /**
+         * Process newly-added rows.  This is called from the thread that added the rows, after the parsed columns
+         * have been extended.
+         *
+         * @param data		dataset to which the rows were added
+         * @param oldSize	index of the first new row
+         * @param newSize	new number of rows in the dataset
+         */
+        public void rowsAdded(ColumnDataset data, int oldSize, int newSize);
+
+    }
+
+    /**
+     * Construct a dataset from a collection of data lines.
+     *
+     * @param data		collection of data lines
+     */
+    public ColumnDataset(Collection<String[]> data) {
+        this();
+        this.rows = data.toArray(new String[data.size()][]);
+        this.rowCount = this.rows.length;
+    }
+
+    /**
+     * Construct an empty dataset.  This is used by subclasses that store the data in a different form; such a
+     * subclass must override size() and getString(), and will usually override parseNumeric() and parseCoded().
+     */
+    protected ColumnDataset() {
+        this.id = ID_COUNTER.incrementAndGet();
+        this.version = 0;
+        this.rows = null;
+        this.rowCount = 0;
+        this.parseLock = new ReentrantReadWriteLock();
+        this.numericColumns = new ConcurrentHashMap<Integer, NumericColumn>();
+        this.codedColumns = new ConcurrentHashMap<Integer, CodedColumn>();
+        this.listeners = new CopyOnWriteArrayList<Listener>();
+    }
+
+    /**
+     * @return the unique ID of this dataset
+     */
+    public long getId() {
+        return this.id;
+    }
+
+    /**
+     * @return the version number of the data; this changes whenever the data changes
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Add a listener to be notified when rows are added.
+     *
+     * @param listener	listener to add
+     */
+    public void addListener(Listener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @param listener	listener to remove
+     */
+    public void removeListener(Listener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Append rows to this dataset.  The parsed columns are extended, the version is incremented, and the
+     * listeners are notified.
+     *
+     * @param newRows	collection of data lines to add
+     */
+    public synchronized void addRows(Collection<String[]> newRows) {
+        if (this.rows == null)
+            throw new UnsupportedOperationException(this.getClass().getSimpleName() + " does not support adding rows.");
+        if (! newRows.isEmpty()) {
+            final int oldSize = this.size();
+            final int newSize = oldSize + newRows.size();
+            this.parseLock.writeLock().lock();
+            try {
+                // Store the new lines.  Readers only look at the rows below the row count, so the lines can go
+                // in the free slots of the current array; if there are not enough, a bigger copy is published.
+                String[][] lines = this.rows;
+                if (lines.length < newSize)
+                    lines = Arrays.copyOf(lines, Math.max(newSize, lines.length + (lines.length >> 1)));
+                int r = oldSize;
+                for (String[] line : newRows)
+                    lines[r++] = line;
+                this.rows = lines;
+                // Extend the numeric columns.  Each extended column is a new object, so readers of the old one
+                // are not disturbed.
+                NumberParser parser = new NumberParser();
+                for (Map.Entry<Integer, NumericColumn> entry : this.numericColumns.entrySet()) {
+                    final int colIdx = entry.getKey();
+                    NumericColumn column = entry.getValue().grow(newSize);
+                    for (int i = oldSize; i < newSize; i++) {
+                        if (parser.parse(this.getString(i, colIdx)))
+                            column.add(parser.getValue());
+                        else
+                            column.addInvalid();
+                    }
+                    this.numericColumns.put(colIdx, column);
+                }
+                // Extend the coded columns.
+                for (Map.Entry<Integer, CodedColumn> entry : this.codedColumns.entrySet()) {
+                    final int colIdx = entry.getKey();
+                    String[] values = new String[newSize - oldSize];
+                    for (int i = oldSize; i < newSize; i++)
+                        values[i - oldSize] = this.getString(i, colIdx);
+                    this.codedColumns.put(colIdx, entry.getValue().append(values));
+                }
+                // Now that the columns are complete, the new rows can be seen.
+                this.rowCount = newSize;
+                this.version++;
+            } finally {
+                this.parseLock.writeLock().unlock();
+            }
+            for (Listener listener : this.listeners)
+                listener.rowsAdded(this, oldSize, newSize);
+        }
+    }
+
+    /**
+     * @return the number of data lines
+     */
+    public int size() {
+        return this.rowCount;
+    }
+
+    /**
+     * @return the string in the specified row and column (an empty string if the cell is missing)
+     *
+     * @param row		index of the row
+     * @param colIdx	index of the column
+     */
+    public String getString(int row, int colIdx) {
+        String[] line = this.rows[row];
+        String retVal = (colIdx < line.length ? line[colIdx] : null);
+        return (retVal == null ? "" : retVal);
+    }
+
+    /**
+     * @return the specified column parsed into floating-point values
+     *
+     * @param colIdx	index of the desired column
+     */
+    public NumericColumn getNumeric(int colIdx) {
+        NumericColumn retVal = this.numericColumns.get(colIdx);
+        if (retVal == null) {
+            this.parseLock.readLock().lock();
+            try {
+                retVal = this.numericColumns.computeIfAbsent(colIdx, x -> this.parseNumeric(x));
+            } finally {
+                this.parseLock.readLock().unlock();
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the specified column converted to dictionary codes
+     *
+     * @param colIdx	index of the desired column
+     */
+    public CodedColumn getCoded(int colIdx) {
+        CodedColumn retVal = this.codedColumns.get(colIdx);
+        if (retVal == null) {
+            this.parseLock.readLock().lock();
+            try {
+                retVal = this.codedColumns.computeIfAbsent(colIdx, x -> this.parseCoded(x));
+            } finally {
+                this.parseLock.readLock().unlock();
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the number of rows in the specified column that are not valid numbers
+     *
+     * @param colIdx	index of the desired column
+     */
+    public int invalidCount(int colIdx) {
+        return this.getNumeric(colIdx).invalidCount();
+    }
+
+    /**
+     * Parse a column into floating-point values.  Values that are not valid numbers are marked invalid.
+     * We use a non-throwing parser, since in a sparse column most of the values may be invalid.
+     *
+     * @param colIdx	index of the column to parse
+     *
+     * @return the numeric column
+     */
+    protected NumericColumn parseNumeric(int colIdx) {
+        final int n = this.size();
+        NumericColumn retVal = new NumericColumn(n);
+        NumberParser parser = new NumberParser();
+        for (int i = 0; i < n; i++) {
+            if (parser.parse(this.getString(i, colIdx)))
+                retVal.add(parser.getValue());
+            else
+                retVal.addInvalid();
+        }
+        return retVal;
+    }
+
+    /**
+     * Convert a column into dictionary codes.
+     *
+     * @param colIdx	index of the column to encode
+     *
+     * @return the coded column
+     */
+    protected CodedColumn parseCoded(int colIdx) {
+        final int n = this.size();
+        int[] codes = new int[n];
+        Map<String, Integer> codeMap = new HashMap<String, Integer>();
+        List<String> values = new ArrayList<String>();
+        for (int i = 0; i < n; i++) {
+            String value = this.getString(i, colIdx);
+            Integer code = codeMap.get(value);
+            if (code == null) {
+                code = values.size();
+                codeMap.put(value, code);
+                values.add(value);
+            }
+            codes[i] = code;
+        }
+        return CodedColumn.sorted(codes, n, values.toArray(new String[values.size()]));
+    }
+
+}
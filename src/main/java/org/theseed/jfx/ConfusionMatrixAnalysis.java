@@ -0,0 +1,405 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.function.BooleanSupplier;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
+import javafx.scene.control.TableView;
+import javafx.scene.layout.VBox;
+
+/**
+ * This analysis compares a column of predicted labels from a classifier with the actual labels in the label column.
+ * It builds a confusion matrix whose rows are the actual labels and whose columns are the predicted labels, and from
+ * the matrix it derives the accuracy and the precision, recall, and F1 score for each class.
+ *
+ * Both columns are dictionary-encoded, and the two dictionaries are merged into a single sorted list of classes, so
+ * a label that is only ever predicted (or never predicted) still gets a row and a column.  The rows are counted in
+ * parallel, each thread's chunk into its own primitive matrix, and the matrices are added together at the end; the
+ * metrics come from the merged matrix, so no second pass is needed.  A row whose actual or predicted label is missing
+ * (empty) is not counted in the matrix; the number of such rows is reported separately.  The matrix is displayed as
+ * a heatmap (see Heatmap), with the counts written in the cells when there is room.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ConfusionMatrixAnalysis extends ColumnAnalysis {
+
+    /**
+     * Construct a confusion-matrix analysis.
+     *
+     * @param data		collection of data lines to analyze
+     * @param labelIdx	index of the column containing the actual labels
+     */
+    public ConfusionMatrixAnalysis(Collection<String[]> data, int labelIdx) {
+        super(data, labelIdx);
+    }
+
+    /**
+     * Construct a confusion-matrix analysis for a columnar dataset.
+     *
+     * @param data		dataset to analyze
+     * @param labelIdx	index of the column containing the actual labels
+     */
+    public ConfusionMatrixAnalysis(ColumnDataset data, int labelIdx) {
+        super(data, labelIdx);
+    }
+
+    @Override
+    protected Node getAnalysis(Iter column) {
+        return this.render(this.compute(column.getColIdx()));
+    }
+
+    @Override
+    protected boolean usesAccumulator() {
+        return true;
+    }
+
+    @Override
+    protected IAccumulator createAccumulator(int colIdx) {
+        return new Accumulator(this.getLabels(), this.getData().getCoded(colIdx));
+    }
+
+    @Override
+    protected IAccumulator extend(IAccumulator acc, int colIdx) {
+        Accumulator retVal = (Accumulator) acc;
+        // If new labels were added to either column, the class list may have changed, so the matrix is rebuilt.
+        CodedColumn actual = this.getLabels();
+        CodedColumn predicted = this.getData().getCoded(colIdx);
+        if (! actual.sameDictionary(retVal.actual) || ! predicted.sameDictionary(retVal.predicted))
+            retVal = retVal.renumber(actual, predicted);
+        return retVal;
+    }
+
+    @Override
+    protected IAnalysisResult finish(IAccumulator result, BooleanSupplier cancelled) {
+        Accumulator acc = (Accumulator) result;
+        // The matrix is copied, since a live display keeps adding rows to the accumulator.
+        int[][] matrix = new int[acc.matrix.length][];
+        for (int i = 0; i < matrix.length; i++)
+            matrix[i] = acc.matrix[i].clone();
+        return new Result(acc.classes, matrix, acc.skipped);
+    }
+
+    @Override
+    protected Node render(IAnalysisResult result) {
+        Result confusion = (Result) result;
+        final int n = confusion.getClassCount();
+        double[][] values = new double[n][n];
+        int max = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                int count = confusion.getCount(i, j);
+                values[i][j] = count;
+                max = Math.max(max, count);
+            }
+        }
+        Heatmap map = new Heatmap();
+        map.setDiverging(false);
+        map.setRange(0.0, Math.max(1, max));
+        map.setValueFormat("%.0f");
+        map.setData(values, confusion.getClasses(), confusion.getClasses());
+        TableView<Stat> table = new TableView<Stat>();
+        table.setPrefSize(DEFAULT_SIZE, DEFAULT_SIZE);
+        Stat.setupTable(table);
+        table.setItems(tableData(confusion));
+        return new VBox(map, table);
+    }
+
+    /**
+     * @return the list of statistics to display in the output table
+     *
+     * @param confusion		result containing the confusion matrix
+     */
+    private static ObservableList<Stat> tableData(Result confusion) {
+        ObservableList<Stat> retVal = FXCollections.observableArrayList(new Stat.Int("Count", confusion.getTotal()),
+                new Stat.Int("Skipped", confusion.getSkipped()));
+        if (confusion.getTotal() > 0) {
+            retVal.add(new Stat("Accuracy", confusion.getAccuracy()));
+            retVal.add(new Stat("Macro F1", confusion.getMacroF1()));
+            for (int i = 0; i < confusion.getClassCount(); i++) {
+                String name = confusion.getClassName(i);
+                retVal.add(new Stat(name + " precision", confusion.getPrecision(i)));
+                retVal.add(new Stat(name + " recall", confusion.getRecall(i)));
+                retVal.add(new Stat(name + " F1", confusion.getF1(i)));
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * This object contains a confusion matrix and the metrics derived from it.  A metric whose denominator is zero
+     * (such as the precision of a class that is never predicted) is NaN.
+     */
+    public static class Result implements IAnalysisResult {
+
+        /** class names, in sorted order */
+        private final String[] classes;
+        /** confusion matrix, indexed by actual class and then predicted class */
+        private final int[][] matrix;
+        /** total number of rows counted */
+        private final int total;
+        /** number of rows skipped because a label was missing */
+        private final int skipped;
+        /** fraction of rows predicted correctly */
+        private final double accuracy;
+        /** precision of each class */
+        private final double[] precision;
+        /** recall of each class */
+        private final double[] recall;
+        /** F1 score of each class */
+        private final double[] f1;
+
+        /**
+         * Create the result from a confusion matrix.
+         *
+         * @param classes	class names, in sorted order
+         * @param matrix	confusion matrix, indexed by actual class and then predicted class
+         * @param skipped	number of rows skipped because a label was missing
+         */
+        protected Result(String[] classes, int[][] matrix, int skipped) {
+            this.classes = classes;
+            this.matrix = matrix;
+            this.skipped = skipped;
+            final int n = classes.length;
+            int[] actualTotals = new int[n];
+            int[] predictedTotals = new int[n];
+            int correct = 0;
+            int count = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < n; j++) {
+                    actualTotals[i] += matrix[i][j];
+                    predictedTotals[j] += matrix[i][j];
+                }
+                correct += matrix[i][i];
+                count += actualTotals[i];
+            }
+            this.total = count;
+            this.accuracy = (count > 0 ? (double) correct / count : Double.NaN);
+            this.precision = new double[n];
+            this.recall = new double[n];
+            this.f1 = new double[n];
+            for (int i = 0; i < n; i++) {
+                double tp = matrix[i][i];
+                this.precision[i] = (predictedTotals[i] > 0 ? tp / predictedTotals[i] : Double.NaN);
+                this.recall[i] = (actualTotals[i] > 0 ? tp / actualTotals[i] : Double.NaN);
+                double denom = actualTotals[i] + predictedTotals[i];
+                this.f1[i] = (denom > 0 ? 2.0 * tp / denom : Double.NaN);
+            }
+        }
+
+        /**
+         * @return the number of classes
+         */
+        public int getClassCount() {
+            return this.classes.length;
+        }
+
+        /**
+         * @return the name of a class
+         *
+         * @param i		index of the class
+         */
+        public String getClassName(int i) {
+            return this.classes[i];
+        }
+
+        /**
+         * @return the class names, in sorted order
+         */
+        public String[] getClasses() {
+            return this.classes.clone();
+        }
+
+        /**
+         * @return the number of rows with a given actual class and predicted class
+         *
+         * @param actual		index of the actual class
+         * @param predicted		index of the predicted class
+         */
+        public int getCount(int actual, int predicted) {
+            return this.matrix[actual][predicted];
+        }
+
+        /**
+         * @return the total number of rows counted
+         */
+        public int getTotal() {
+            return this.total;
+        }
+
+        /**
+         * @return the number of rows skipped because the actual or predicted label was missing
+         */
+        public int getSkipped() {
+            return this.skipped;
+        }
+
+        /**
+         * @return the fraction of rows predicted correctly
+         */
+        public double getAccuracy() {
+            return this.accuracy;
+        }
+
+        /**
+         * @return the precision of a class
+         *
+         * @param i		index of the class
+         */
+        public double getPrecision(int i) {
+            return this.precision[i];
+        }
+
+        /**
+         * @return the recall of a class
+         *
+         * @param i		index of the class
+         */
+        public double getRecall(int i) {
+            return this.recall[i];
+        }
+
+        /**
+         * @return the F1 score of a class
+         *
+         * @param i		index of the class
+         */
+        public double getF1(int i) {
+            return this.f1[i];
+        }
+
+        /**
+         * @return the mean F1 score over the classes that occur in either column
+         */
+        public double getMacroF1() {
+            double sum = 0.0;
+            int n = 0;
+            for (double score : this.f1) {
+                if (! Double.isNaN(score)) {
+                    sum += score;
+                    n++;
+                }
+            }
+            return (n > 0 ? sum / n : Double.NaN);
+        }
+
+    }
+
+    /**
+     * This accumulator counts the pairs of actual and predicted classes in a range of rows.  The codes of each column
+     * are translated to positions in the merged class list through a lookup array.  The empty string is a missing
+     * label rather than a class, so rows with that code in either column are only counted as skipped.
+     */
+    protected static class Accumulator implements IAccumulator {
+
+        /** coded column of actual labels */
+        private CodedColumn actual;
+        /** coded column of predicted labels */
+        private CodedColumn predicted;
+        /** merged class names, in sorted order */
+        private String[] classes;
+        /** class index for each actual-label code */
+        private int[] actualMap;
+        /** class index for each predicted-label code */
+        private int[] predictedMap;
+        /** code of the missing value in the actual-label column, or -1 if there is none */
+        private int actualMissing;
+        /** code of the missing value in the predicted-label column, or -1 if there is none */
+        private int predictedMissing;
+        /** confusion matrix, indexed by actual class and then predicted class */
+        private int[][] matrix;
+        /** number of rows skipped because a label was missing */
+        private int skipped;
+
+        /**
+         * Create an empty accumulator.
+         *
+         * @param actual		coded column of actual labels
+         * @param predicted		coded column of predicted labels
+         */
+        protected Accumulator(CodedColumn actual, CodedColumn predicted) {
+            this.actual = actual;
+            this.predicted = predicted;
+            TreeSet<String> names = new TreeSet<String>();
+            for (int code = 0; code < actual.dictionarySize(); code++)
+                names.add(actual.getValue(code));
+            for (int code = 0; code < predicted.dictionarySize(); code++)
+                names.add(predicted.getValue(code));
+            names.remove("");
+            this.classes = names.toArray(new String[names.size()]);
+            this.actualMap = classMap(actual, this.classes);
+            this.predictedMap = classMap(predicted, this.classes);
+            this.actualMissing = Math.max(-1, actual.findCode(""));
+            this.predictedMissing = Math.max(-1, predicted.findCode(""));
+            this.matrix = new int[this.classes.length][this.classes.length];
+            this.skipped = 0;
+        }
+
+        /**
+         * @return an array mapping each code of a coded column to its position in the class list (negative for the
+         * 		   missing value)
+         *
+         * @param column	coded column to map
+         * @param classes	sorted array of class names
+         */
+        private static int[] classMap(CodedColumn column, String[] classes) {
+            int[] retVal = new int[column.dictionarySize()];
+            for (int code = 0; code < retVal.length; code++)
+                retVal[code] = Arrays.binarySearch(classes, column.getValue(code));
+            return retVal;
+        }
+
+        @Override
+        public void addRange(int start, int end) {
+            for (int i = start; i < end; i++) {
+                int actualCode = this.actual.getCode(i);
+                int predictedCode = this.predicted.getCode(i);
+                if (actualCode == this.actualMissing || predictedCode == this.predictedMissing)
+                    this.skipped++;
+                else
+                    this.matrix[this.actualMap[actualCode]][this.predictedMap[predictedCode]]++;
+            }
+        }
+
+        @Override
+        public void merge(IAccumulator other) {
+            Accumulator o = (Accumulator) other;
+            for (int i = 0; i < this.matrix.length; i++) {
+                int[] mine = this.matrix[i];
+                int[] theirs = o.matrix[i];
+                for (int j = 0; j < mine.length; j++)
+                    mine[j] += theirs[j];
+            }
+            this.skipped += o.skipped;
+        }
+
+        /**
+         * @return a copy of this accumulator that uses new column dictionaries
+         *
+         * @param newActual		coded column of actual labels with the new dictionary
+         * @param newPredicted	coded column of predicted labels with the new dictionary
+         */
+        protected Accumulator renumber(CodedColumn newActual, CodedColumn newPredicted) {
+            Accumulator retVal = new Accumulator(newActual, newPredicted);
+            // The new class list contains all the old classes, so each old position maps to a new one.
+            int[] positions = new int[this.classes.length];
+            for (int i = 0; i < positions.length; i++)
+                positions[i] = Arrays.binarySearch(retVal.classes, this.classes[i]);
+            for (int i = 0; i < this.matrix.length; i++) {
+                for (int j = 0; j < this.matrix.length; j++)
+                    retVal.matrix[positions[i]][positions[j]] = this.matrix[i][j];
+            }
+            retVal.skipped = this.skipped;
+            return retVal;
+        }
+
+    }
+
+}
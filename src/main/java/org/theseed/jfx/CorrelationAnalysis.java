@@ -0,0 +1,469 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.scene.control.TitledPane;
+
+/**
+ * This analysis computes the correlation of every numeric column in a dataset with every other numeric column, so
+ * that redundant features can be spotted.  Unlike the single-column analyses, the result covers many columns at once,
+ * and it is displayed as a heatmap (see Heatmap) rather than a chart.
+ *
+ * The correlation can be Pearson (on the values) or Spearman (on the ranks of the values, with tied values getting
+ * their average rank).  A missing value is treated as the mean of its column, so it contributes nothing to the
+ * covariance; for a sparse column, this pulls its correlations toward zero.  Infinite and NaN values are treated as
+ * missing, since a single one would otherwise make every correlation of the column NaN.
+ *
+ * The computation works on the parsed primitive columns.  Each column is centered and scaled to unit length, so a
+ * correlation is a single dot product.  The matrix is divided into blocks of columns, and each block pair is computed
+ * in parallel a stripe of rows at a time, so the column values being multiplied stay in the processor cache.  A
+ * Spearman analysis must keep a parsed copy of the ranks for every column, doubling the memory used.  The parallel
+ * work runs in the default task scheduler's scan pool for the calling thread (see TaskScheduler.scanPool()).
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class CorrelationAnalysis {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(CorrelationAnalysis.class);
+    /** dataset being analyzed */
+    private ColumnDataset data;
+    /** indices of the columns to correlate */
+    private int[] columns;
+    /** names of the columns to correlate */
+    private String[] names;
+    /** correlation method */
+    private Method method;
+    /** number of columns in a block */
+    private static final int BLOCK_COLS = 32;
+    /** number of rows in a stripe */
+    private static final int STRIPE_ROWS = 1024;
+    /** default minimum fraction of valid values for a column to be considered numeric */
+    public static final double DEFAULT_MIN_VALID = 0.5;
+
+    /**
+     * Types of correlation.
+     */
+    public static enum Method {
+        /** linear correlation of the values */
+        PEARSON,
+        /** linear correlation of the ranks */
+        SPEARMAN;
+    }
+
+    /**
+     * This object contains the correlation matrix.  The matrix is symmetric, and the correlation of a column with
+     * itself is 1, unless the column is constant, in which case all its correlations are NaN.
+     */
+    public static class Result implements IAnalysisResult {
+
+        /** indices of the columns correlated */
+        private final int[] columns;
+        /** correlation matrix, indexed by position in the column list */
+        private final double[][] matrix;
+
+        /**
+         * Construct a correlation result.
+         *
+         * @param columns	indices of the columns correlated
+         * @param matrix	correlation matrix
+         */
+        protected Result(int[] columns, double[][] matrix) {
+            this.columns = columns;
+            this.matrix = matrix;
+        }
+
+        /**
+         * @return the number of columns correlated
+         */
+        public int size() {
+            return this.columns.length;
+        }
+
+        /**
+         * @return the dataset index of a correlated column
+         *
+         * @param i		position of the column in the matrix
+         */
+        public int getColumn(int i) {
+            return this.columns[i];
+        }
+
+        /**
+         * @return the correlation between two columns
+         *
+         * @param i		position of the first column in the matrix
+         * @param j		position of the second column in the matrix
+         */
+        public double get(int i, int j) {
+            return this.matrix[i][j];
+        }
+
+        /**
+         * @return the list of column position pairs whose correlation has at least the specified magnitude,
+         * 		   with the first position in each pair less than the second
+         *
+         * @param threshold		minimum absolute correlation
+         */
+        public List<int[]> getRedundantPairs(double threshold) {
+            List<int[]> retVal = new ArrayList<int[]>();
+            for (int i = 0; i < this.matrix.length; i++) {
+                for (int j = i + 1; j < this.matrix.length; j++) {
+                    if (Math.abs(this.matrix[i][j]) >= threshold)
+                        retVal.add(new int[] { i, j });
+                }
+            }
+            return retVal;
+        }
+
+        /**
+         * @return the correlation matrix (which must not be modified)
+         */
+        protected double[][] getMatrix() {
+            return this.matrix;
+        }
+
+    }
+
+    /**
+     * Construct a correlation analysis for specific columns of a dataset.
+     *
+     * @param data		dataset to analyze
+     * @param columns	indices of the columns to correlate
+     * @param names		names of the columns to correlate, in the same order
+     * @param method	type of correlation
+     */
+    public CorrelationAnalysis(ColumnDataset data, int[] columns, String[] names, Method method) {
+        this.data = data;
+        this.columns = columns;
+        this.names = names;
+        this.method = method;
+    }
+
+    /**
+     * Construct a correlation analysis for all the numeric columns of a dataset.  A column is considered numeric
+     * if at least half of its values are valid numbers.
+     *
+     * @param data		dataset to analyze
+     * @param names		array of column names, indexed by column
+     * @param labelIdx	index of the label column, which is skipped
+     * @param method	type of correlation
+     */
+    public CorrelationAnalysis(ColumnDataset data, String[] names, int labelIdx, Method method) {
+        this.data = data;
+        this.method = method;
+        this.columns = numericColumns(data, names.length, labelIdx, DEFAULT_MIN_VALID);
+        this.names = Arrays.stream(this.columns).mapToObj(i -> names[i]).toArray(String[]::new);
+    }
+
+    /**
+     * @return the indices of the columns in a dataset that are mostly numeric; the columns are parsed in parallel
+     *
+     * @param data		dataset to examine
+     * @param width		number of columns in the dataset
+     * @param labelIdx	index of the label column, which is skipped
+     * @param minValid	minimum fraction of values in a column that must be valid numbers
+     */
+    public static int[] numericColumns(ColumnDataset data, int width, int labelIdx, double minValid) {
+        final double needed = data.size() * minValid;
+        return TaskScheduler.getDefault().scanPool().submit(() -> IntStream.range(0, width).parallel()
+                .filter(i -> i != labelIdx && data.getNumeric(i).validCount() > 0
+                        && data.getNumeric(i).validCount() >= needed)
+                .toArray()).join();
+    }
+
+    /**
+     * @return the names of the columns being correlated
+     */
+    public String[] getNames() {
+        return this.names;
+    }
+
+    /**
+     * @return the key for caching the result
+     */
+    protected AnalysisCache.Key getResultKey() {
+        String analysis = this.getClass().getName() + "/" + this.method + "/" + Arrays.toString(this.columns);
+        return new AnalysisCache.Key(this.data, -1, analysis);
+    }
+
+    /**
+     * @return the correlation matrix, using multiple threads; if the result is already in the cache, it is
+     * 		   returned without scanning the data
+     */
+    public Result compute() {
+        return this.compute(() -> false);
+    }
+
+    /**
+     * Compute the correlation matrix using multiple threads and checking periodically for cancellation.  If the
+     * result is already in the cache, it is returned without scanning the data.  This can be called from a
+     * background thread.
+     *
+     * @param cancelled		function that returns TRUE if the analysis should stop
+     *
+     * @return the correlation matrix
+     *
+     * @throws CancellationException if the analysis was cancelled
+     */
+    public Result compute(BooleanSupplier cancelled) {
+        AnalysisCache.Key key = this.getResultKey();
+        Result retVal = (Result) AnalysisCache.getDefault().get(key);
+        if (retVal == null) {
+            long start = System.currentTimeMillis();
+            final int p = this.columns.length;
+            final int n = this.data.size();
+            NumericColumn[] sources = new NumericColumn[p];
+            double[] means = new double[p];
+            double[] scales = new double[p];
+            ForkJoinPool pool = TaskScheduler.getDefault().scanPool();
+            // Parse (or rank) each column and compute its mean and scale.
+            pool.submit(() -> IntStream.range(0, p).parallel().forEach(i -> {
+                NumericColumn col = this.data.getNumeric(this.columns[i]);
+                if (this.method == Method.SPEARMAN)
+                    col = ranks(col);
+                sources[i] = col;
+                double sum = 0.0;
+                int count = 0;
+                for (int r = 0; r < n; r++) {
+                    if (isPresent(col, r)) {
+                        sum += col.get(r);
+                        count++;
+                    }
+                }
+                double mean = (count == 0 ? 0.0 : sum / count);
+                double ss = 0.0;
+                for (int r = 0; r < n; r++) {
+                    if (isPresent(col, r)) {
+                        double d = col.get(r) - mean;
+                        ss += d * d;
+                    }
+                }
+                means[i] = mean;
+                scales[i] = (ss > 0.0 ? 1.0 / Math.sqrt(ss) : Double.NaN);
+            })).join();
+            if (cancelled.getAsBoolean())
+                throw new CancellationException("Correlation analysis cancelled.");
+            // Compute the block pairs in the upper triangle.
+            double[][] matrix = new double[p][p];
+            final int blocks = (p + BLOCK_COLS - 1) / BLOCK_COLS;
+            pool.submit(() -> IntStream.range(0, blocks * blocks).parallel()
+                    .filter(k -> k / blocks <= k % blocks)
+                    .forEach(k -> {
+                        if (cancelled.getAsBoolean())
+                            throw new CancellationException("Correlation analysis cancelled.");
+                        computeBlock(sources, means, scales, n, (k / blocks) * BLOCK_COLS, (k % blocks) * BLOCK_COLS,
+                                matrix);
+                    })).join();
+            retVal = new Result(this.columns, matrix);
+            log.info("{} correlation of {} columns over {} rows computed in {} ms.", this.method, p, n,
+                    System.currentTimeMillis() - start);
+            AnalysisCache.getDefault().put(key, retVal);
+        }
+        return retVal;
+    }
+
+    /**
+     * Compute the correlations for one pair of column blocks, and store them in both halves of the matrix.  The
+     * rows are processed in stripes; the standardized values of both blocks are built for a stripe, and then all the
+     * dot products for the stripe are accumulated.
+     *
+     * @param sources	parsed columns
+     * @param means		column means
+     * @param scales	reciprocals of the column lengths after centering (NaN for constant columns)
+     * @param n			number of rows
+     * @param iStart	position of the first column in the first block
+     * @param jStart	position of the first column in the second block
+     * @param matrix	correlation matrix to fill
+     */
+    private static void computeBlock(NumericColumn[] sources, double[] means, double[] scales, int n, int iStart,
+            int jStart, double[][] matrix) {
+        final int iEnd = Math.min(iStart + BLOCK_COLS, sources.length);
+        final int jEnd = Math.min(jStart + BLOCK_COLS, sources.length);
+        final boolean diagonal = (iStart == jStart);
+        double[][] iStripe = new double[iEnd - iStart][STRIPE_ROWS];
+        double[][] jStripe = (diagonal ? iStripe : new double[jEnd - jStart][STRIPE_ROWS]);
+        double[][] sums = new double[iEnd - iStart][jEnd - jStart];
+        for (int r0 = 0; r0 < n; r0 += STRIPE_ROWS) {
+            final int len = Math.min(STRIPE_ROWS, n - r0);
+            fillStripe(sources, means, scales, iStart, iEnd, r0, len, iStripe);
+            if (! diagonal)
+                fillStripe(sources, means, scales, jStart, jEnd, r0, len, jStripe);
+            for (int i = 0; i < iEnd - iStart; i++) {
+                double[] a = iStripe[i];
+                double[] iSums = sums[i];
+                for (int j = (diagonal ? i : 0); j < jEnd - jStart; j++) {
+                    double[] b = jStripe[j];
+                    double dot = 0.0;
+                    for (int r = 0; r < len; r++)
+                        dot += a[r] * b[r];
+                    iSums[j] += dot;
+                }
+            }
+        }
+        for (int i = iStart; i < iEnd; i++) {
+            for (int j = (diagonal ? i : jStart); j < jEnd; j++) {
+                double corr;
+                if (Double.isNaN(scales[i]) || Double.isNaN(scales[j]))
+                    corr = Double.NaN;
+                else if (i == j)
+                    corr = 1.0;
+                else
+                    corr = Math.max(-1.0, Math.min(1.0, sums[i - iStart][j - jStart]));
+                matrix[i][j] = corr;
+                matrix[j][i] = corr;
+            }
+        }
+    }
+
+    /**
+     * Store the standardized values for a stripe of rows in a block of columns.  Missing and non-finite values are
+     * stored as 0, which is the standardized mean.
+     *
+     * @param sources	parsed columns
+     * @param means		column means
+     * @param scales	reciprocals of the column lengths after centering
+     * @param start		position of the first column in the block
+     * @param end		position past the last column in the block
+     * @param r0		index of the first row in the stripe
+     * @param len		number of rows in the stripe
+     * @param stripe	output array, indexed by column position within the block and row within the stripe
+     */
+    private static void fillStripe(NumericColumn[] sources, double[] means, double[] scales, int start, int end,
+            int r0, int len, double[][] stripe) {
+        for (int i = start; i < end; i++) {
+            NumericColumn col = sources[i];
+            double[] out = stripe[i - start];
+            final double mean = means[i];
+            final double scale = (Double.isNaN(scales[i]) ? 0.0 : scales[i]);
+            for (int r = 0; r < len; r++)
+                out[r] = (isPresent(col, r0 + r) ? (col.get(r0 + r) - mean) * scale : 0.0);
+        }
+    }
+
+    /**
+     * @return TRUE if the specified row of a column contains a finite value
+     *
+     * @param col	column to check
+     * @param row	index of the row to check
+     */
+    private static boolean isPresent(NumericColumn col, int row) {
+        return col.isValid(row) && Double.isFinite(col.get(row));
+    }
+
+    /**
+     * @return a column containing the ranks of the finite values in a column, with ties given the average rank;
+     * 		   infinite and NaN values are marked invalid
+     *
+     * @param col	column to rank
+     */
+    protected static NumericColumn ranks(NumericColumn col) {
+        final int n = col.size();
+        double[] sorted = new double[col.validCount()];
+        int k = 0;
+        for (int r = 0; r < n; r++) {
+            if (isPresent(col, r))
+                sorted[k++] = col.get(r);
+        }
+        sorted = Arrays.copyOf(sorted, k);
+        Arrays.sort(sorted);
+        double[] ranks = new double[n];
+        long[] validBits = new long[(n + 63) >> 6];
+        for (int r = 0; r < n; r++) {
+            if (isPresent(col, r)) {
+                // Find the run of values equal to this one.  The average of the one-based positions is the rank.
+                double v = col.get(r);
+                int lo = firstIndex(sorted, v);
+                int hi = firstIndex(sorted, Math.nextUp(v)) - 1;
+                ranks[r] = (lo + hi) / 2.0 + 1.0;
+                validBits[r >> 6] |= 1L << r;
+            }
+        }
+        return new NumericColumn(ranks, validBits, n, k);
+    }
+
+    /**
+     * @return the index of the first value in a sorted array that is not less than a given value
+     *
+     * @param sorted	sorted array to search
+     * @param v			value to find
+     */
+    private static int firstIndex(double[] sorted, double v) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] < v)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return a heatmap displaying a correlation result
+     *
+     * @param result	correlation result to display
+     */
+    public Heatmap render(Result result) {
+        Heatmap retVal = new Heatmap();
+        retVal.setRange(-1.0, 1.0);
+        retVal.setDiverging(true);
+        retVal.setValueFormat("%.2f");
+        retVal.setData(result.getMatrix(), this.names, this.names);
+        return retVal;
+    }
+
+    /**
+     * @return a pane displaying the correlation matrix, computed in the calling thread
+     *
+     * @param title		title for the pane
+     */
+    public TitledPane getDisplay(String title) {
+        return ColumnAnalysis.makePane(title, this.render(this.compute()));
+    }
+
+    /**
+     * Create the pane displaying the correlation matrix without blocking the calling thread.  The computation
+     * is queued as interactive work on the default task scheduler, and the pane shows a progress indicator until
+     * it finishes.  The computation can be stopped by passing the pane to ColumnAnalysis.cancelDisplay().
+     *
+     * This method must be called from the JavaFX application thread.
+     *
+     * @param title		title for the pane
+     *
+     * @return a titled pane that will contain the heatmap when it is complete
+     */
+    public TitledPane getDisplayAsync(String title) {
+        return this.getDisplayAsync(title, TaskScheduler.getDefault().executor(TaskScheduler.Priority.INTERACTIVE));
+    }
+
+    /**
+     * Create the pane displaying the correlation matrix without blocking the calling thread.
+     *
+     * @param title		title for the pane
+     * @param executor	executor for the background computation
+     *
+     * @return a titled pane that will contain the heatmap when it is complete
+     */
+    public TitledPane getDisplayAsync(String title, Executor executor) {
+        return ColumnAnalysis.asyncPane(title, this::compute, this::render, executor);
+    }
+
+}
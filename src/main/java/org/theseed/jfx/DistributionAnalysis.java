@@ -3,22 +3,47 @@
  */
 package org.theseed.jfx;
 
+import java.util.ArrayList;
 import java.util.Collection;
-import org.theseed.counters.CountMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.Node;
 import javafx.scene.chart.PieChart;
+import javafx.scene.control.Label;
+import javafx.scene.layout.VBox;
 
 /**
  * This class produces a pie chart displaying how often different values appear in a column.
  *
+ * Normally, every distinct value is counted.  For columns with very many distinct values (such as IDs), this
+ * can use a great deal of memory, so there is also a sketch mode.  In sketch mode, the first pass uses a
+ * Space-Saving heavy-hitters sketch to find candidate values and a HyperLogLog sketch to estimate the number of
+ * distinct values.  Because the sketch capacity is at least 100, every value above the 1% threshold is guaranteed
+ * to be a candidate.  A second pass then counts only the candidates, exactly, so the values shown and the size of
+ * the "others" slice are exact.  Only the distinct-value count is approximate, and it is displayed with its error.
+ *
  * @author Bruce Parrello
  *
  */
 public class DistributionAnalysis extends ColumnAnalysis {
 
+    // FIELDS
+    /** heavy-hitters sketch capacity, or 0 to count every value */
+    private int sketchCapacity;
+    /** default sketch capacity */
+    public static final int DEFAULT_SKETCH_CAPACITY = 1000;
+    /** label for the residual slice */
+    private static final String OTHERS_LABEL = "others (<1%)";
+
     /**
      * Construct an object for creating the pie charts.
      *
@@ -27,28 +52,214 @@ public class DistributionAnalysis extends ColumnAnalysis {
      */
     public DistributionAnalysis(Collection<String[]> data, int labelIdx) {
         super(data, labelIdx);
+        this.sketchCapacity = 0;
+    }
+
+    /**
+     * Construct an object for creating the pie charts from a columnar dataset.
+     *
+     * @param data		dataset to analyze
+     * @param labelIdx	label column index
+     */
+    public DistributionAnalysis(ColumnDataset data, int labelIdx) {
+        super(data, labelIdx);
+        this.sketchCapacity = 0;
+    }
+
+    /**
+     * Specify whether or not to use sketch mode.
+     *
+     * @param sketch	TRUE to use bounded memory, FALSE to count every value
+     */
+    public void setSketchMode(boolean sketch) {
+        this.sketchCapacity = (sketch ? DEFAULT_SKETCH_CAPACITY : 0);
+    }
+
+    /**
+     * Use sketch mode with a specific capacity.  A higher capacity uses more memory but produces fewer
+     * candidates to recount.
+     *
+     * @param capacity	number of values tracked by the heavy-hitters sketch (at least 100)
+     */
+    public void setSketchMode(int capacity) {
+        if (capacity < 100)
+            throw new IllegalArgumentException("Sketch capacity must be at least 100 to find all values over 1%.");
+        this.sketchCapacity = capacity;
+    }
+
+    /**
+     * @return TRUE if this analysis is in sketch mode
+     */
+    public boolean isSketchMode() {
+        return (this.sketchCapacity > 0);
     }
 
     @Override
     protected Node getAnalysis(Iter column) {
-        CountMap<String> counts = new CountMap<String>();
-        while (column.hasNext())
-            counts.count(column.next());
-        // We only display values that occur more than 1% of the time, so compute the 1% here
-        // and set up an accumulator for it.
-        int limit = this.size() / 100;
-        int smalls = 0;
-        // Build the pie chart data list.
-        ObservableList<PieChart.Data> pieData = FXCollections.observableArrayList();
-        for (CountMap<String>.Count count : counts.counts()) {
-            if (count.getCount() <= limit)
-                smalls += count.getCount();
-            else
-                pieData.add(new PieChart.Data(count.getKey(), count.getCount()));
+        return this.render(this.compute(column.getColIdx()));
+    }
+
+    @Override
+    protected boolean usesAccumulator() {
+        return true;
+    }
+
+    @Override
+    protected IAccumulator createAccumulator(int colIdx) {
+        IAccumulator retVal;
+        if (this.sketchCapacity > 0)
+            retVal = new SketchAccumulator(this.getData(), colIdx, this.sketchCapacity);
+        else
+            retVal = new Accumulator(this.getData().getCoded(colIdx));
+        return retVal;
+    }
+
+    @Override
+    protected String getOptionKey() {
+        return Integer.toString(this.sketchCapacity);
+    }
+
+    @Override
+    protected IAnalysisResult finish(IAccumulator result, BooleanSupplier cancelled) {
+        // We only display values that occur more than 1% of the time, so compute the 1% here.  Rows may have been
+        // added since the scan, so we use the number of rows scanned rather than the size of the dataset.
+        final int rows = (result instanceof SketchAccumulator ? ((SketchAccumulator) result).rows
+                : ((Accumulator) result).rows);
+        final int limit = rows / 100;
+        Map<String, Integer> bigs = new HashMap<String, Integer>();
+        Result retVal;
+        if (result instanceof SketchAccumulator) {
+            // Count the candidates exactly.  A value can only be over the limit if its estimated count is.
+            SketchAccumulator acc = (SketchAccumulator) result;
+            Set<String> candidates = acc.sketch.keys().stream().filter(x -> acc.sketch.getCount(x) > limit)
+                    .collect(Collectors.toSet());
+            acc.recount(candidates, rows, cancelled);
+            for (String candidate : candidates) {
+                int count = acc.exact.get(candidate)[0];
+                if (count > limit)
+                    bigs.put(candidate, count);
+            }
+            retVal = new Result(bigs, rows, acc.distinct.estimate(), acc.distinct.relativeError());
+        } else {
+            Accumulator acc = (Accumulator) result;
+            CodedColumn values = acc.column;
+            int[] counts = acc.counts;
+            for (int code = 0; code < counts.length; code++) {
+                if (counts[code] > limit)
+                    bigs.put(values.getValue(code), counts[code]);
+            }
+            retVal = new Result(bigs, rows, values.dictionarySize(), 0.0);
+        }
+        return retVal;
+    }
+
+    @Override
+    protected Node render(IAnalysisResult result) {
+        Result counts = (Result) result;
+        Node retVal;
+        PieChart chart = this.pieChart(counts);
+        if (counts.getDistinctError() > 0.0) {
+            // Describe the approximations.
+            Label caption = new Label(caption(counts));
+            caption.setWrapText(true);
+            caption.setMaxWidth(DEFAULT_SIZE);
+            retVal = new VBox(chart, caption);
+        } else
+            retVal = chart;
+        return retVal;
+    }
+
+    @Override
+    protected IAccumulator extend(IAccumulator acc, int colIdx) {
+        IAccumulator retVal = acc;
+        if (acc instanceof Accumulator) {
+            // If new values were added, the column has a new dictionary, so the counts must be renumbered.
+            Accumulator old = (Accumulator) acc;
+            CodedColumn column = this.getData().getCoded(colIdx);
+            if (! column.sameDictionary(old.column)) {
+                Accumulator extended = new Accumulator(column);
+                extended.rows = old.rows;
+                for (int code = 0; code < old.counts.length; code++) {
+                    if (old.counts[code] > 0) {
+                        int newCode = column.findCode(old.column.getValue(code));
+                        extended.counts[newCode] = old.counts[code];
+                    }
+                }
+                retVal = extended;
+            }
+        }
+        return retVal;
+    }
+
+    @Override
+    protected boolean update(Node display, IAnalysisResult result) {
+        Result counts = (Result) result;
+        boolean retVal = false;
+        // Find the pie chart and the caption.
+        PieChart chart = null;
+        Label caption = null;
+        if (display instanceof PieChart)
+            chart = (PieChart) display;
+        else if (display instanceof VBox) {
+            List<Node> children = ((VBox) display).getChildren();
+            if (children.size() == 2 && children.get(0) instanceof PieChart && children.get(1) instanceof Label) {
+                chart = (PieChart) children.get(0);
+                caption = (Label) children.get(1);
+            }
         }
+        // The display can only be patched if it has a caption exactly when the result needs one.
+        if (chart != null && (caption != null) == (counts.getDistinctError() > 0.0)) {
+            Map<String, Integer> newValues = new HashMap<String, Integer>(counts.size() * 2 + 1);
+            for (int i = 0; i < counts.size(); i++)
+                newValues.put(counts.getValue(i), counts.getCount(i));
+            if (counts.getOthers() > 0)
+                newValues.put(OTHERS_LABEL, counts.getOthers());
+            // Update the existing slices, and remove the ones no longer needed.
+            ObservableList<PieChart.Data> pieData = chart.getData();
+            pieData.removeIf(x -> ! newValues.containsKey(x.getName()));
+            for (PieChart.Data slice : pieData)
+                slice.setPieValue(newValues.remove(slice.getName()));
+            // Add the new slices, keeping the residual last.
+            Integer others = newValues.remove(OTHERS_LABEL);
+            for (int i = 0; i < counts.size(); i++) {
+                String value = counts.getValue(i);
+                if (newValues.containsKey(value))
+                    pieData.add(new PieChart.Data(value, counts.getCount(i)));
+            }
+            if (others != null)
+                pieData.add(new PieChart.Data(OTHERS_LABEL, others));
+            if (caption != null)
+                caption.setText(caption(counts));
+            retVal = true;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the caption describing the distinct-value estimate in sketch mode
+     *
+     * @param counts	result containing the estimate
+     */
+    private static String caption(Result counts) {
+        return String.format("About %,d distinct values (\u00b1%.1f%%).  Value counts are exact.",
+                counts.getDistinct(), counts.getDistinctError() * 100.0);
+    }
+
+    /**
+     * Create a pie chart from the values over the 1% limit.  Everything else is put in the residual.
+     *
+     * @param counts	result containing the values over the limit
+     *
+     * @return the pie chart
+     */
+    private PieChart pieChart(Result counts) {
+        ObservableList<PieChart.Data> pieData = FXCollections.observableArrayList();
+        final int n = counts.size();
+        for (int i = 0; i < n; i++)
+            pieData.add(new PieChart.Data(counts.getValue(i), counts.getCount(i)));
         // Add the residual if there is any.
-        if (smalls > 0)
-            pieData.add(new PieChart.Data("others (<1%)", smalls));
+        if (counts.getOthers() > 0)
+            pieData.add(new PieChart.Data(OTHERS_LABEL, counts.getOthers()));
         // Create the pie chart.
         PieChart chart = new PieChart(pieData);
         chart.setPrefHeight(DEFAULT_SIZE);
@@ -56,4 +267,279 @@ public class DistributionAnalysis extends ColumnAnalysis {
         return chart;
     }
 
+    /**
+     * This object contains the value counts computed for a column.  Only the values that occur more than 1% of
+     * the time are kept, sorted from most frequent to least; everything else is counted as "others".
+     */
+    public static class Result implements IAnalysisResult {
+
+        /** values over the limit, from most frequent to least */
+        private final String[] values;
+        /** counts for the values over the limit */
+        private final int[] counts;
+        /** number of rows not in the values over the limit */
+        private final int others;
+        /** number of distinct values (possibly estimated) */
+        private final long distinct;
+        /** relative error of the distinct-value count, or 0 if it is exact */
+        private final double distinctError;
+
+        /**
+         * Create the result from the counts of the values over the limit.
+         *
+         * @param bigs				map of values over the limit to their counts
+         * @param total				total number of rows
+         * @param distinct			number of distinct values
+         * @param distinctError		relative error of the distinct-value count, or 0 if it is exact
+         */
+        protected Result(Map<String, Integer> bigs, int total, long distinct, double distinctError) {
+            // The values are presented from most frequent to least.
+            List<Map.Entry<String, Integer>> sorted = new ArrayList<Map.Entry<String, Integer>>(bigs.entrySet());
+            sorted.sort((a, b) -> (a.getValue().equals(b.getValue()) ? a.getKey().compareTo(b.getKey())
+                    : Integer.compare(b.getValue(), a.getValue())));
+            final int n = sorted.size();
+            this.values = new String[n];
+            this.counts = new int[n];
+            int smalls = total;
+            for (int i = 0; i < n; i++) {
+                Map.Entry<String, Integer> entry = sorted.get(i);
+                this.values[i] = entry.getKey();
+                this.counts[i] = entry.getValue();
+                smalls -= this.counts[i];
+            }
+            this.others = smalls;
+            this.distinct = distinct;
+            this.distinctError = distinctError;
+        }
+
+        /**
+         * @return the number of values over the limit
+         */
+        public int size() {
+            return this.values.length;
+        }
+
+        /**
+         * @return the value at the specified position
+         *
+         * @param i		position of the value, from most frequent to least
+         */
+        public String getValue(int i) {
+            return this.values[i];
+        }
+
+        /**
+         * @return the count of the value at the specified position
+         *
+         * @param i		position of the value, from most frequent to least
+         */
+        public int getCount(int i) {
+            return this.counts[i];
+        }
+
+        /**
+         * @return the number of rows whose values are not over the limit
+         */
+        public int getOthers() {
+            return this.others;
+        }
+
+        /**
+         * @return the number of distinct values (estimated in sketch mode)
+         */
+        public long getDistinct() {
+            return this.distinct;
+        }
+
+        /**
+         * @return the relative error of the distinct-value count, or 0 if it is exact
+         */
+        public double getDistinctError() {
+            return this.distinctError;
+        }
+
+    }
+
+    /**
+     * This accumulator counts the occurrences of each value in a range of rows.
+     */
+    protected static class Accumulator implements IAccumulator {
+
+        /** column being analyzed */
+        private CodedColumn column;
+        /** number of occurrences of each value, indexed by code */
+        private int[] counts;
+        /** number of rows scanned */
+        private int rows;
+
+        /**
+         * Create an empty accumulator for a column.
+         *
+         * @param column	column to analyze
+         */
+        protected Accumulator(CodedColumn column) {
+            this.column = column;
+            this.counts = new int[column.dictionarySize()];
+            this.rows = 0;
+        }
+
+        @Override
+        public void addRange(int start, int end) {
+            // The coded column lets us count using the dictionary codes as array indices.
+            for (int i = start; i < end; i++)
+                this.counts[this.column.getCode(i)]++;
+            this.rows += end - start;
+        }
+
+        @Override
+        public void merge(IAccumulator other) {
+            Accumulator o = (Accumulator) other;
+            for (int i = 0; i < this.counts.length; i++)
+                this.counts[i] += o.counts[i];
+            this.rows += o.rows;
+        }
+
+    }
+
+    /**
+     * This accumulator feeds the strings in a range of rows to the heavy-hitters and distinct-count sketches.
+     * It reads the strings directly, so no dictionary is built for the column.
+     */
+    protected static class SketchAccumulator implements IAccumulator {
+
+        /** dataset being analyzed */
+        private ColumnDataset data;
+        /** index of the column being analyzed */
+        private int colIdx;
+        /** heavy-hitters sketch */
+        private SpaceSaving sketch;
+        /** distinct-value sketch */
+        private HyperLogLog distinct;
+        /** exact counts of the values that have been candidates so far */
+        private Map<String, int[]> exact;
+        /** number of rows included in the exact counts */
+        private int exactRows;
+        /** number of rows scanned */
+        private int rows;
+
+        /**
+         * Create an empty sketch accumulator for a column.
+         *
+         * @param data		dataset being analyzed
+         * @param colIdx	index of the column to analyze
+         * @param capacity	capacity of the heavy-hitters sketch
+         */
+        protected SketchAccumulator(ColumnDataset data, int colIdx, int capacity) {
+            this.data = data;
+            this.colIdx = colIdx;
+            this.sketch = new SpaceSaving(capacity);
+            this.distinct = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+            this.exact = new HashMap<String, int[]>();
+            this.exactRows = 0;
+            this.rows = 0;
+        }
+
+        /**
+         * Bring the exact counts up to date for a set of candidate values.  The exact counts are kept with the
+         * accumulator, so for a live display, the values already counted are only counted in the new rows, and
+         * only values that are new candidates need a scan of the whole column.
+         *
+         * @param candidates	values whose exact counts are needed
+         * @param size			number of rows scanned
+         * @param cancelled		function that returns TRUE if the analysis should stop
+         *
+         * @throws CancellationException if the analysis was cancelled
+         */
+        protected void recount(Set<String> candidates, int size, BooleanSupplier cancelled) {
+            Set<String> known = new HashSet<String>(this.exact.keySet());
+            Set<String> fresh = new HashSet<String>(candidates);
+            fresh.removeAll(known);
+            RecountAccumulator fullCount = null;
+            if (! fresh.isEmpty())
+                fullCount = (RecountAccumulator) ParallelScan.run(size,
+                        () -> new RecountAccumulator(this.data, this.colIdx, fresh), cancelled);
+            if (! known.isEmpty() && this.exactRows < size) {
+                RecountAccumulator newRows = new RecountAccumulator(this.data, this.colIdx, known);
+                newRows.addRange(this.exactRows, size);
+                this.addCounts(newRows);
+            }
+            if (fullCount != null)
+                this.exact.putAll(fullCount.counts);
+            this.exactRows = size;
+        }
+
+        /**
+         * Add the counts from a recount accumulator to the exact counts.
+         *
+         * @param recount	recount accumulator for values already in the exact counts
+         */
+        private void addCounts(RecountAccumulator recount) {
+            for (Map.Entry<String, int[]> entry : recount.counts.entrySet())
+                this.exact.get(entry.getKey())[0] += entry.getValue()[0];
+        }
+
+        @Override
+        public void addRange(int start, int end) {
+            for (int i = start; i < end; i++) {
+                String value = this.data.getString(i, this.colIdx);
+                this.sketch.add(value);
+                this.distinct.add(value);
+            }
+            this.rows += end - start;
+        }
+
+        @Override
+        public void merge(IAccumulator other) {
+            SketchAccumulator o = (SketchAccumulator) other;
+            this.sketch.merge(o.sketch);
+            this.distinct.merge(o.distinct);
+            this.rows += o.rows;
+        }
+
+    }
+
+    /**
+     * This accumulator counts the occurrences of a fixed set of candidate values in a range of rows.
+     */
+    protected static class RecountAccumulator implements IAccumulator {
+
+        /** dataset being analyzed */
+        private ColumnDataset data;
+        /** index of the column being analyzed */
+        private int colIdx;
+        /** map of candidate values to counts */
+        private Map<String, int[]> counts;
+
+        /**
+         * Create an empty recount accumulator.
+         *
+         * @param data			dataset being analyzed
+         * @param colIdx		index of the column to analyze
+         * @param candidates	set of values to count
+         */
+        protected RecountAccumulator(ColumnDataset data, int colIdx, Set<String> candidates) {
+            this.data = data;
+            this.colIdx = colIdx;
+            this.counts = new HashMap<String, int[]>(candidates.size() * 2);
+            for (String candidate : candidates)
+                this.counts.put(candidate, new int[1]);
+        }
+
+        @Override
+        public void addRange(int start, int end) {
+            for (int i = start; i < end; i++) {
+                int[] count = this.counts.get(this.data.getString(i, this.colIdx));
+                if (count != null)
+                    count[0]++;
+            }
+        }
+
+        @Override
+        public void merge(IAccumulator other) {
+            for (Map.Entry<String, int[]> entry : ((RecountAccumulator) other).counts.entrySet())
+                this.counts.get(entry.getKey())[0] += entry.getValue()[0];
+        }
+
+    }
+
 }
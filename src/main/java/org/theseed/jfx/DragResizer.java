@@ -1,8 +1,19 @@
 package org.theseed.jfx;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.animation.AnimationTimer;
 import javafx.event.EventHandler;
 import javafx.scene.Cursor;
+import javafx.scene.Node;
+import javafx.scene.image.WritableImage;
 import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Background;
+import javafx.scene.layout.BackgroundImage;
+import javafx.scene.layout.BackgroundPosition;
+import javafx.scene.layout.BackgroundRepeat;
+import javafx.scene.layout.BackgroundSize;
 import javafx.scene.layout.Region;
 
 /**
@@ -12,6 +23,12 @@ import javafx.scene.layout.Region;
  *
  * Usage: DragResizer.makeResizable(myAnchorPane);
  *
+ * In coalesced mode, intended for regions containing large charts, the drag events only record the desired size,
+ * and the size is changed at most once per JavaFX pulse.  During the drag, the region's children are hidden and
+ * removed from layout, and a snapshot of the region taken when the drag started is stretched to fill it instead.
+ * When the mouse is released, the children are restored and laid out once at the final size before the controller
+ * is called.
+ *
  * @author atill, modified by Bruce Parrello
  *
  */
@@ -32,6 +49,20 @@ public class DragResizer {
     private boolean dragging;
     /** controller to call after resizing */
     private CallBack controller;
+    /** TRUE if size changes are coalesced to one per pulse */
+    private boolean coalesced;
+    /** desired preferred width (coalesced mode) */
+    private double pendingWidth;
+    /** desired preferred height (coalesced mode) */
+    private double pendingHeight;
+    /** timer for applying size changes (coalesced mode) */
+    private AnimationTimer pulseTimer;
+    /** background of the region before the drag (coalesced mode) */
+    private Background savedBackground;
+    /** children hidden during the drag (coalesced mode) */
+    private List<Node> hiddenChildren;
+    /** original managed flags of the hidden children (coalesced mode) */
+    private List<Boolean> savedManaged;
 
     public interface CallBack {
 
@@ -53,6 +84,15 @@ public class DragResizer {
     private DragResizer(Region aRegion, CallBack controller) {
         this.region = aRegion;
         this.controller = controller;
+        this.coalesced = false;
+        this.hiddenChildren = new ArrayList<Node>();
+        this.savedManaged = new ArrayList<Boolean>();
+        this.pulseTimer = new AnimationTimer() {
+            @Override
+            public void handle(long now) {
+                DragResizer.this.applyPendingSize();
+            }
+        };
     }
 
     /**
@@ -83,12 +123,93 @@ public class DragResizer {
         return retVal;
     }
 
+    /**
+     * Make a region resizable, optionally coalescing the size changes.
+     *
+     * @param region		region to be made resizable
+     * @param controller	controller to be called after the resize
+     * @param coalesced		TRUE to change the size at most once per pulse and show a snapshot during the drag
+     */
+    public static DragResizer makeResizable(Region region, CallBack controller, boolean coalesced) {
+        DragResizer retVal = makeResizable(region, controller);
+        retVal.setCoalesced(coalesced);
+        return retVal;
+    }
+
+    /**
+     * Specify whether or not size changes should be coalesced.  This should not be changed during a drag.
+     *
+     * @param coalesced		TRUE to change the size at most once per pulse and show a snapshot during the drag
+     */
+    public void setCoalesced(boolean coalesced) {
+        this.coalesced = coalesced;
+    }
+
+    /**
+     * @return TRUE if size changes are coalesced
+     */
+    public boolean isCoalesced() {
+        return this.coalesced;
+    }
+
+    /**
+     * Apply the pending size, if it has changed.  This is called once per pulse in coalesced mode.
+     */
+    private void applyPendingSize() {
+        if (this.region.getPrefWidth() != this.pendingWidth)
+            this.region.setPrefWidth(this.pendingWidth);
+        if (this.region.getPrefHeight() != this.pendingHeight)
+            this.region.setPrefHeight(this.pendingHeight);
+    }
+
+    /**
+     * Replace the region's content with a snapshot for the duration of a drag.
+     */
+    private void showSnapshot() {
+        WritableImage image = this.region.snapshot(null, null);
+        this.savedBackground = this.region.getBackground();
+        BackgroundSize stretch = new BackgroundSize(1.0, 1.0, true, true, false, false);
+        this.region.setBackground(new Background(new BackgroundImage(image, BackgroundRepeat.NO_REPEAT,
+                BackgroundRepeat.NO_REPEAT, BackgroundPosition.DEFAULT, stretch)));
+        // Hide the children and take them out of layout, so that size changes are cheap.
+        for (Node child : this.region.getChildrenUnmodifiable()) {
+            if (child.isVisible()) {
+                this.hiddenChildren.add(child);
+                this.savedManaged.add(child.isManaged());
+                child.setManaged(false);
+                child.setVisible(false);
+            }
+        }
+    }
+
+    /**
+     * Restore the region's content after a drag, and lay it out at its final size.
+     */
+    private void restoreContent() {
+        for (int i = 0; i < this.hiddenChildren.size(); i++) {
+            Node child = this.hiddenChildren.get(i);
+            child.setManaged(this.savedManaged.get(i));
+            child.setVisible(true);
+        }
+        this.hiddenChildren.clear();
+        this.savedManaged.clear();
+        this.region.setBackground(this.savedBackground);
+        this.savedBackground = null;
+        this.region.applyCss();
+        this.region.layout();
+    }
+
     /**
      * When this is fired, the drag is complete.
      *
      * @param event		event descriptor
      */
     protected void mouseReleased(MouseEvent event) {
+        if (this.dragging && this.coalesced) {
+            this.pulseTimer.stop();
+            this.applyPendingSize();
+            this.restoreContent();
+        }
         this.dragging = false;
         this.region.setCursor(Cursor.DEFAULT);
         if (this.controller != null)
@@ -116,12 +237,18 @@ public class DragResizer {
             // Get the mouse location.
             double mouseX = event.getX();
             double mouseY = event.getY();
-            // Compute the new dimensions.
-            double newHeight = region.getPrefHeight() + (mouseY - y);
-            double newWidth = region.getPrefWidth() + (mouseX - x);
-            // Store the new values.
-            region.setPrefHeight(newHeight);
-            region.setPrefWidth(newWidth);
+            if (this.coalesced) {
+                // Record the new dimensions.  The timer will apply them on the next pulse.
+                this.pendingHeight += mouseY - y;
+                this.pendingWidth += mouseX - x;
+            } else {
+                // Compute the new dimensions.
+                double newHeight = region.getPrefHeight() + (mouseY - y);
+                double newWidth = region.getPrefWidth() + (mouseX - x);
+                // Store the new values.
+                region.setPrefHeight(newHeight);
+                region.setPrefWidth(newWidth);
+            }
             // Save the current position.
             this.y = mouseY;
             this.x = mouseX;
@@ -147,6 +274,12 @@ public class DragResizer {
             // Initialize the saved mouse location.
             this.y = event.getY();
             this.x = event.getX();
+            if (this.coalesced) {
+                this.pendingHeight = region.getPrefHeight();
+                this.pendingWidth = region.getPrefWidth();
+                this.showSnapshot();
+                this.pulseTimer.start();
+            }
         }
     }
 
@@ -0,0 +1,334 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Tooltip;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Region;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+import javafx.scene.text.TextAlignment;
+
+/**
+ * This control displays a matrix of values as a grid of colored cells.  The whole grid is drawn on a single canvas,
+ * so a large matrix does not create a scene-graph node per cell.  The cells are rendered into a bitmap one pixel at a
+ * time, which means the cost of a redraw depends on the size of the control rather than on the size of the matrix.
+ *
+ * The color scale can be diverging (blue through white to red, for values such as correlations centered on zero) or
+ * sequential (white to dark blue, for values such as counts).  The row and column labels are drawn only when the
+ * cells are large enough to hold them, and the cell values are drawn only when requested and there is room.  In all
+ * cases, hovering over a cell shows its labels and value in a tooltip.
+ *
+ * The matrix is not copied, so it must not be modified after it is passed in.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class Heatmap extends Region {
+
+    // FIELDS
+    /** canvas on which the grid is drawn */
+    private Canvas canvas;
+    /** matrix of values, indexed by row and then column */
+    private double[][] values;
+    /** row labels */
+    private String[] rowLabels;
+    /** column labels */
+    private String[] colLabels;
+    /** value mapped to the first color of the scale */
+    private double low;
+    /** value mapped to the last color of the scale */
+    private double high;
+    /** color palette, in ARGB form */
+    private int[] palette;
+    /** format for cell values, or NULL if values are not shown */
+    private String valueFormat;
+    /** tooltip describing the cell under the mouse */
+    private Tooltip tip;
+    /** width of the row-label margin in the last drawing */
+    private double leftMargin;
+    /** height of the column-label margin in the last drawing */
+    private double topMargin;
+    /** number of colors in a palette */
+    private static final int PALETTE_SIZE = 256;
+    /** color for missing values */
+    private static final int MISSING_COLOR = 0xFFD0D0D0;
+    /** minimum cell height or width for drawing labels */
+    private static final double MIN_LABEL_CELL = 10.0;
+    /** minimum cell height or width for drawing values */
+    private static final double MIN_VALUE_CELL = 28.0;
+    /** space reserved for labels */
+    private static final double LABEL_MARGIN = 80.0;
+    /** default size of the control */
+    private static final double DEFAULT_SIZE = 400.0;
+
+    /**
+     * Create an empty heatmap with a diverging color scale from -1 to 1.
+     */
+    public Heatmap() {
+        this.canvas = new Canvas();
+        this.getChildren().add(this.canvas);
+        this.values = new double[0][];
+        this.rowLabels = new String[0];
+        this.colLabels = new String[0];
+        this.low = -1.0;
+        this.high = 1.0;
+        this.palette = diverging();
+        this.valueFormat = null;
+        this.tip = new Tooltip();
+        Tooltip.install(this, this.tip);
+        this.setPrefSize(DEFAULT_SIZE, DEFAULT_SIZE);
+        this.setOnMouseMoved(e -> this.showTip(e));
+    }
+
+    /**
+     * Specify the matrix to display.
+     *
+     * @param values		matrix of values, indexed by row and then column (NaN for missing values)
+     * @param rowLabels		labels for the rows
+     * @param colLabels		labels for the columns
+     */
+    public void setData(double[][] values, String[] rowLabels, String[] colLabels) {
+        this.values = values;
+        this.rowLabels = rowLabels;
+        this.colLabels = colLabels;
+        this.draw();
+    }
+
+    /**
+     * Specify the range of values covered by the color scale.  Values outside the range get the color at the
+     * nearest end.
+     *
+     * @param low		value for the first color in the scale
+     * @param high		value for the last color in the scale
+     */
+    public void setRange(double low, double high) {
+        this.low = low;
+        this.high = high;
+        this.draw();
+    }
+
+    /**
+     * Specify the type of color scale.
+     *
+     * @param diverging		TRUE for a blue-white-red scale centered in the range, FALSE for a white-to-blue scale
+     */
+    public void setDiverging(boolean diverging) {
+        this.palette = (diverging ? diverging() : sequential());
+        this.draw();
+    }
+
+    /**
+     * Specify whether the cell values should be drawn in cells big enough to hold them.
+     *
+     * @param format	format for the values (e.g. "%.2f"), or NULL to show only colors
+     */
+    public void setValueFormat(String format) {
+        this.valueFormat = format;
+        this.draw();
+    }
+
+    @Override
+    protected void layoutChildren() {
+        double w = this.snapSizeX(this.getWidth());
+        double h = this.snapSizeY(this.getHeight());
+        if (w != this.canvas.getWidth() || h != this.canvas.getHeight()) {
+            this.canvas.setWidth(w);
+            this.canvas.setHeight(h);
+            this.draw();
+        }
+    }
+
+    /**
+     * @return the number of rows in the matrix
+     */
+    private int rows() {
+        return this.values.length;
+    }
+
+    /**
+     * @return the number of columns in the matrix
+     */
+    private int cols() {
+        return (this.values.length == 0 ? 0 : this.values[0].length);
+    }
+
+    /**
+     * Redraw the grid on the canvas.
+     */
+    private void draw() {
+        GraphicsContext gc = this.canvas.getGraphicsContext2D();
+        double w = this.canvas.getWidth();
+        double h = this.canvas.getHeight();
+        gc.clearRect(0, 0, w, h);
+        final int rows = this.rows();
+        final int cols = this.cols();
+        if (rows > 0 && cols > 0 && w >= 1.0 && h >= 1.0) {
+            // Only reserve space for the labels if there is room to draw them legibly.
+            boolean labels = ((h - LABEL_MARGIN) / rows >= MIN_LABEL_CELL && (w - LABEL_MARGIN) / cols >= MIN_LABEL_CELL);
+            this.leftMargin = (labels ? LABEL_MARGIN : 0.0);
+            this.topMargin = (labels ? LABEL_MARGIN : 0.0);
+            int gridW = (int) (w - this.leftMargin);
+            int gridH = (int) (h - this.topMargin);
+            // Build the bitmap for the grid a pixel row at a time.
+            int[] pixels = new int[gridW * gridH];
+            int[] colIdx = new int[gridW];
+            for (int x = 0; x < gridW; x++)
+                colIdx[x] = (int) ((long) x * cols / gridW);
+            for (int y = 0; y < gridH; y++) {
+                double[] row = this.values[(int) ((long) y * rows / gridH)];
+                int offset = y * gridW;
+                for (int x = 0; x < gridW; x++)
+                    pixels[offset + x] = this.color(row[colIdx[x]]);
+            }
+            WritableImage image = new WritableImage(gridW, gridH);
+            image.getPixelWriter().setPixels(0, 0, gridW, gridH, PixelFormat.getIntArgbInstance(), pixels, 0, gridW);
+            gc.drawImage(image, this.leftMargin, this.topMargin);
+            double cellW = (double) gridW / cols;
+            double cellH = (double) gridH / rows;
+            gc.setFill(Color.BLACK);
+            if (labels)
+                this.drawLabels(gc, cellW, cellH);
+            if (this.valueFormat != null && cellW >= MIN_VALUE_CELL && cellH >= MIN_LABEL_CELL)
+                this.drawValues(gc, cellW, cellH);
+        }
+    }
+
+    /**
+     * Draw the row and column labels in the margins.
+     *
+     * @param gc		graphics context for the canvas
+     * @param cellW		width of a cell
+     * @param cellH		height of a cell
+     */
+    private void drawLabels(GraphicsContext gc, double cellW, double cellH) {
+        gc.setFont(Font.font(Math.min(12.0, Math.min(cellW, cellH) - 1.0)));
+        gc.setTextBaseline(VPos.CENTER);
+        gc.setTextAlign(TextAlignment.RIGHT);
+        for (int r = 0; r < this.rows() && r < this.rowLabels.length; r++)
+            gc.fillText(this.rowLabels[r], this.leftMargin - 3.0, this.topMargin + (r + 0.5) * cellH, this.leftMargin - 3.0);
+        // The column labels are drawn rotated, reading upward.
+        gc.setTextAlign(TextAlignment.LEFT);
+        for (int c = 0; c < this.cols() && c < this.colLabels.length; c++) {
+            gc.save();
+            gc.translate(this.leftMargin + (c + 0.5) * cellW, this.topMargin - 3.0);
+            gc.rotate(-90.0);
+            gc.fillText(this.colLabels[c], 0.0, 0.0, this.topMargin - 3.0);
+            gc.restore();
+        }
+    }
+
+    /**
+     * Draw the values in the cells.
+     *
+     * @param gc		graphics context for the canvas
+     * @param cellW		width of a cell
+     * @param cellH		height of a cell
+     */
+    private void drawValues(GraphicsContext gc, double cellW, double cellH) {
+        gc.setFont(Font.font(Math.min(12.0, cellH - 2.0)));
+        gc.setTextBaseline(VPos.CENTER);
+        gc.setTextAlign(TextAlignment.CENTER);
+        for (int r = 0; r < this.rows(); r++) {
+            for (int c = 0; c < this.cols(); c++) {
+                double v = this.values[r][c];
+                if (! Double.isNaN(v)) {
+                    // Use white text on dark cells.
+                    int argb = this.color(v);
+                    int brightness = ((argb >> 16) & 0xFF) * 3 + ((argb >> 8) & 0xFF) * 6 + (argb & 0xFF);
+                    gc.setFill(brightness < 1280 ? Color.WHITE : Color.BLACK);
+                    gc.fillText(String.format(this.valueFormat, v), this.leftMargin + (c + 0.5) * cellW,
+                            this.topMargin + (r + 0.5) * cellH, cellW - 2.0);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the ARGB color for a value
+     *
+     * @param v		value to convert
+     */
+    private int color(double v) {
+        int retVal;
+        if (Double.isNaN(v))
+            retVal = MISSING_COLOR;
+        else {
+            double t = (this.high > this.low ? (v - this.low) / (this.high - this.low) : 0.5);
+            int idx = (int) (t * (PALETTE_SIZE - 1) + 0.5);
+            retVal = this.palette[Math.max(0, Math.min(PALETTE_SIZE - 1, idx))];
+        }
+        return retVal;
+    }
+
+    /**
+     * Update the tooltip to describe the cell under the mouse.
+     *
+     * @param event		mouse event
+     */
+    private void showTip(MouseEvent event) {
+        final int rows = this.rows();
+        final int cols = this.cols();
+        double gridW = this.canvas.getWidth() - this.leftMargin;
+        double gridH = this.canvas.getHeight() - this.topMargin;
+        int c = (int) ((event.getX() - this.leftMargin) * cols / gridW);
+        int r = (int) ((event.getY() - this.topMargin) * rows / gridH);
+        if (event.getX() < this.leftMargin || event.getY() < this.topMargin || r >= rows || c >= cols)
+            this.tip.setText(null);
+        else {
+            String rowName = (r < this.rowLabels.length ? this.rowLabels[r] : Integer.toString(r + 1));
+            String colName = (c < this.colLabels.length ? this.colLabels[c] : Integer.toString(c + 1));
+            String format = (this.valueFormat == null ? "%.4g" : this.valueFormat);
+            this.tip.setText(rowName + " / " + colName + ": " + String.format(format, this.values[r][c]));
+        }
+    }
+
+    /**
+     * @return a blue-white-red palette
+     */
+    private static int[] diverging() {
+        int[] retVal = new int[PALETTE_SIZE];
+        final int half = PALETTE_SIZE / 2;
+        for (int i = 0; i < PALETTE_SIZE; i++) {
+            if (i < half)
+                retVal[i] = blend(0x3B4CC0, 0xFFFFFF, (double) i / half);
+            else
+                retVal[i] = blend(0xFFFFFF, 0xB40426, (double) (i - half) / (PALETTE_SIZE - 1 - half));
+        }
+        return retVal;
+    }
+
+    /**
+     * @return a white-to-blue palette
+     */
+    private static int[] sequential() {
+        int[] retVal = new int[PALETTE_SIZE];
+        for (int i = 0; i < PALETTE_SIZE; i++)
+            retVal[i] = blend(0xFFFFFF, 0x08306B, (double) i / (PALETTE_SIZE - 1));
+        return retVal;
+    }
+
+    /**
+     * @return an opaque ARGB color between two RGB colors
+     *
+     * @param from		RGB color at a fraction of 0
+     * @param to		RGB color at a fraction of 1
+     * @param t			fraction of the distance from the first color to the second
+     */
+    private static int blend(int from, int to, double t) {
+        int retVal = 0xFF000000;
+        for (int shift = 0; shift <= 16; shift += 8) {
+            int a = (from >> shift) & 0xFF;
+            int b = (to >> shift) & 0xFF;
+            retVal |= ((int) Math.round(a + (b - a) * t)) << shift;
+        }
+        return retVal;
+    }
+
+}
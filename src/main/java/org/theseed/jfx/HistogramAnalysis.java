@@ -0,0 +1,620 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+import org.apache.commons.math3.util.ResizableDoubleArray;
+
+import javafx.scene.Node;
+import javafx.scene.chart.CategoryAxis;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.StackedBarChart;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.Label;
+import javafx.scene.layout.VBox;
+
+/**
+ * This analysis produces a histogram of the numeric values in a column.  The bin edges are chosen automatically,
+ * either by the Freedman-Diaconis rule (equal-width bins whose width is proportional to the interquartile range) or
+ * at evenly-spaced quantiles (bins holding roughly equal numbers of values).  Since quantile bins have different
+ * widths, they are shown as densities rather than counts, so the bar heights still reflect the shape of the data.
+ *
+ * The computation takes two parallel passes.  The first finds the minimum and maximum and takes an evenly-spaced
+ * sample of about 64K rows, whose exact quantiles (see QuantileSelector) determine the edges.  Sampling keeps the
+ * first pass as cheap as the second; the edges only need to be approximately right.  The second pass counts the
+ * values in each bin, using a separate array of counts for each thread's chunk of rows, merged at the end.  In
+ * stacked mode, the counts are kept separately for each label, and the bars are divided by label.
+ *
+ * The number parser accepts "Infinity" and "NaN", but such values have no place in a histogram, so both passes skip
+ * them.  They are counted, and the count is shown below the chart.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class HistogramAnalysis extends ColumnAnalysis {
+
+    // FIELDS
+    /** method for choosing the bin edges */
+    private BinMethod method;
+    /** number of bins for quantile binning */
+    private int bins;
+    /** TRUE to divide the bars by label */
+    private boolean stacked;
+    /** default number of quantile bins */
+    public static final int DEFAULT_BINS = 20;
+    /** maximum number of bins */
+    public static final int MAX_BINS = 200;
+    /** target number of values to sample for choosing the edges */
+    private static final int SAMPLE_SIZE = 65536;
+    /** number of lookup slots per bin for unequal bins */
+    private static final int SLOTS_PER_BIN = 16;
+
+    /**
+     * Methods for choosing bin edges.
+     */
+    public static enum BinMethod {
+        /** equal-width bins sized by the Freedman-Diaconis rule */
+        FREEDMAN_DIACONIS,
+        /** bins at evenly-spaced quantiles */
+        QUANTILE;
+    }
+
+    /**
+     * Construct a histogram analysis.
+     *
+     * @param data		collection of data lines to analyze
+     * @param labelIdx	label column index
+     */
+    public HistogramAnalysis(Collection<String[]> data, int labelIdx) {
+        super(data, labelIdx);
+        this.init();
+    }
+
+    /**
+     * Construct a histogram analysis for a columnar dataset.
+     *
+     * @param data		dataset to analyze
+     * @param labelIdx	label column index
+     */
+    public HistogramAnalysis(ColumnDataset data, int labelIdx) {
+        super(data, labelIdx);
+        this.init();
+    }
+
+    /**
+     * Initialize the options to their defaults.
+     */
+    private void init() {
+        this.method = BinMethod.FREEDMAN_DIACONIS;
+        this.bins = DEFAULT_BINS;
+        this.stacked = false;
+    }
+
+    /**
+     * Specify the method for choosing bin edges.
+     *
+     * @param method	new binning method
+     */
+    public void setBinMethod(BinMethod method) {
+        this.method = method;
+    }
+
+    /**
+     * @return the method for choosing bin edges
+     */
+    public BinMethod getBinMethod() {
+        return this.method;
+    }
+
+    /**
+     * Specify the number of bins for quantile binning.
+     *
+     * @param bins	number of bins (between 1 and MAX_BINS)
+     */
+    public void setBins(int bins) {
+        if (bins < 1 || bins > MAX_BINS)
+            throw new IllegalArgumentException("Number of bins must be between 1 and " + MAX_BINS + ".");
+        this.bins = bins;
+    }
+
+    /**
+     * Specify whether the bars should be divided by label.
+     *
+     * @param stacked	TRUE to count each label separately
+     */
+    public void setStacked(boolean stacked) {
+        this.stacked = stacked;
+    }
+
+    /**
+     * @return TRUE if the bars are divided by label
+     */
+    public boolean isStacked() {
+        return this.stacked;
+    }
+
+    @Override
+    protected Node getAnalysis(Iter column) {
+        return this.render(this.compute(column.getColIdx()));
+    }
+
+    @Override
+    protected boolean usesAccumulator() {
+        return true;
+    }
+
+    @Override
+    protected IAccumulator createAccumulator(int colIdx) {
+        return new RangeAccumulator(this.getData().getNumeric(colIdx));
+    }
+
+    @Override
+    protected String getOptionKey() {
+        return this.method + "/" + this.bins + "/" + this.stacked;
+    }
+
+    @Override
+    protected IAnalysisResult finish(IAccumulator result, BooleanSupplier cancelled) {
+        RangeAccumulator range = (RangeAccumulator) result;
+        Result retVal;
+        if (range.count == 0)
+            retVal = new Result(new double[0], new int[0][], Collections.emptyList(), false, 0, range.nonFinite);
+        else {
+            boolean quantile = (this.method == BinMethod.QUANTILE);
+            double[] edges = (quantile ? this.quantileEdges(range) : fdEdges(range));
+            // Count the values in the bins.
+            CodedColumn labels = (this.stacked ? this.getLabels() : null);
+            // Only the rows in the range scan are binned, since rows may have been added since.
+            BinAccumulator binned = (BinAccumulator) ParallelScan.run(range.rows,
+                    () -> new BinAccumulator(range.column, labels, edges, ! quantile), cancelled);
+            // Keep only the labels that have values.  The dictionary is sorted, so these are in label order.
+            List<String> names = new ArrayList<String>();
+            List<int[]> counts = new ArrayList<int[]>();
+            for (int code = 0; code < binned.counts.length; code++) {
+                int[] labelCounts = binned.counts[code];
+                if (Arrays.stream(labelCounts).anyMatch(x -> x > 0)) {
+                    names.add(labels == null ? "count" : labels.getValue(code));
+                    counts.add(labelCounts);
+                }
+            }
+            retVal = new Result(edges, counts.toArray(new int[counts.size()][]), names, quantile, range.count,
+                    range.nonFinite);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the bin edges computed by the Freedman-Diaconis rule
+     *
+     * @param range		accumulator containing the range and distribution of the values
+     */
+    private static double[] fdEdges(RangeAccumulator range) {
+        double min = range.min;
+        double max = range.max;
+        int n;
+        if (max <= min) {
+            // All the values are the same, so we use a single bin around the value.
+            n = 1;
+            min -= 0.5;
+            max += 0.5;
+        } else {
+            double[] quartiles = range.quantiles(25.0, 75.0);
+            double iqr = quartiles[1] - quartiles[0];
+            double width = 2.0 * iqr / Math.cbrt(range.count);
+            if (width > 0.0)
+                n = (int) Math.ceil((max - min) / width);
+            else {
+                // The rule fails when most values are equal, so we fall back to Sturges' rule.
+                n = (int) Math.ceil(Math.log(range.count) / Math.log(2.0)) + 1;
+            }
+            n = Math.max(1, Math.min(MAX_BINS, n));
+        }
+        double[] retVal = new double[n + 1];
+        for (int i = 0; i <= n; i++)
+            retVal[i] = min + (max - min) * i / n;
+        retVal[n] = max;
+        return retVal;
+    }
+
+    /**
+     * @return the bin edges at evenly-spaced quantiles, with duplicate edges removed
+     *
+     * @param range		accumulator containing the range and distribution of the values
+     */
+    private double[] quantileEdges(RangeAccumulator range) {
+        double[] retVal;
+        if (range.max <= range.min)
+            retVal = new double[] { range.min - 0.5, range.max + 0.5 };
+        else {
+            double[] wanted = new double[this.bins - 1];
+            for (int i = 1; i < this.bins; i++)
+                wanted[i - 1] = 100.0 * i / this.bins;
+            double[] quantiles = range.quantiles(wanted);
+            retVal = new double[this.bins + 1];
+            retVal[0] = range.min;
+            int n = 1;
+            for (double edge : quantiles) {
+                if (edge > retVal[n - 1] && edge < range.max)
+                    retVal[n++] = edge;
+            }
+            retVal[n++] = range.max;
+            retVal = Arrays.copyOf(retVal, n);
+        }
+        return retVal;
+    }
+
+    @Override
+    protected Node render(IAnalysisResult result) {
+        Result histogram = (Result) result;
+        Node retVal;
+        if (histogram.getTotal() == 0)
+            retVal = new Label("No finite numeric data points found.");
+        else {
+            final int n = histogram.getBinCount();
+            // Build unique category names for the bins.
+            List<String> categories = new ArrayList<String>(n);
+            Set<String> used = new HashSet<String>();
+            for (int b = 0; b < n; b++) {
+                String name = String.format("%.4g", histogram.getLow(b));
+                if (! used.add(name)) {
+                    name = String.format("%.8g", histogram.getLow(b));
+                    used.add(name);
+                }
+                categories.add(name);
+            }
+            CategoryAxis xAxis = new CategoryAxis();
+            xAxis.setLabel("bin start");
+            xAxis.getCategories().setAll(categories);
+            NumberAxis yAxis = new NumberAxis();
+            yAxis.setLabel(histogram.isDensity() ? "density" : "count");
+            StackedBarChart<String, Number> chart = new StackedBarChart<String, Number>(xAxis, yAxis);
+            chart.setCategoryGap(0.0);
+            chart.setAnimated(false);
+            chart.setLegendVisible(this.stacked);
+            // Build a series for each label.
+            List<XYChart.Series<String, Number>> seriesList = new ArrayList<XYChart.Series<String, Number>>();
+            for (int l = 0; l < histogram.getLabelCount(); l++) {
+                List<XYChart.Data<String, Number>> bars = new ArrayList<XYChart.Data<String, Number>>(n);
+                for (int b = 0; b < n; b++)
+                    bars.add(new XYChart.Data<String, Number>(categories.get(b), histogram.getHeight(l, b)));
+                XYChart.Series<String, Number> series = new XYChart.Series<String, Number>();
+                series.setName(histogram.getLabel(l));
+                series.getData().setAll(bars);
+                seriesList.add(series);
+            }
+            chart.getData().setAll(seriesList);
+            if (histogram.getNonFinite() == 0)
+                retVal = chart;
+            else {
+                Label caption = new Label(String.format("%d infinite or NaN values omitted.", histogram.getNonFinite()));
+                retVal = new VBox(chart, caption);
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * This object contains a computed histogram:  the bin edges, and the counts in each bin for each label (or
+     * for the whole column if the histogram is not stacked).
+     */
+    public static class Result implements IAnalysisResult {
+
+        /** bin edges; bin i runs from edge i to edge i+1 */
+        private final double[] edges;
+        /** counts for each bin, for each label */
+        private final int[][] counts;
+        /** label names */
+        private final List<String> labels;
+        /** TRUE if the heights should be densities */
+        private final boolean density;
+        /** total number of values */
+        private final int total;
+        /** number of infinite or NaN values omitted */
+        private final int nonFinite;
+
+        /**
+         * Create a histogram result.
+         *
+         * @param edges		bin edges
+         * @param counts	counts for each bin, for each label
+         * @param labels	label names
+         * @param density	TRUE if the heights should be densities
+         * @param total		total number of values
+         * @param nonFinite	number of infinite or NaN values omitted
+         */
+        protected Result(double[] edges, int[][] counts, List<String> labels, boolean density, int total,
+                int nonFinite) {
+            this.edges = edges;
+            this.counts = counts;
+            this.labels = labels;
+            this.density = density;
+            this.total = total;
+            this.nonFinite = nonFinite;
+        }
+
+        /**
+         * @return the number of bins
+         */
+        public int getBinCount() {
+            return Math.max(0, this.edges.length - 1);
+        }
+
+        /**
+         * @return the lower edge of a bin
+         *
+         * @param b		index of the bin
+         */
+        public double getLow(int b) {
+            return this.edges[b];
+        }
+
+        /**
+         * @return the upper edge of a bin
+         *
+         * @param b		index of the bin
+         */
+        public double getHigh(int b) {
+            return this.edges[b + 1];
+        }
+
+        /**
+         * @return the number of labels (1 if the histogram is not stacked)
+         */
+        public int getLabelCount() {
+            return this.labels.size();
+        }
+
+        /**
+         * @return the name of a label
+         *
+         * @param l		index of the label
+         */
+        public String getLabel(int l) {
+            return this.labels.get(l);
+        }
+
+        /**
+         * @return the number of values for a label in a bin
+         *
+         * @param l		index of the label
+         * @param b		index of the bin
+         */
+        public int getCount(int l, int b) {
+            return this.counts[l][b];
+        }
+
+        /**
+         * @return the height of the bar for a label in a bin:  the count, or the density if the bins are of
+         * 		   unequal width
+         *
+         * @param l		index of the label
+         * @param b		index of the bin
+         */
+        public double getHeight(int l, int b) {
+            double retVal = this.counts[l][b];
+            if (this.density)
+                retVal /= this.total * (this.edges[b + 1] - this.edges[b]);
+            return retVal;
+        }
+
+        /**
+         * @return TRUE if the heights are densities
+         */
+        public boolean isDensity() {
+            return this.density;
+        }
+
+        /**
+         * @return the total number of values
+         */
+        public int getTotal() {
+            return this.total;
+        }
+
+        /**
+         * @return the number of infinite or NaN values omitted from the histogram
+         */
+        public int getNonFinite() {
+            return this.nonFinite;
+        }
+
+    }
+
+    /**
+     * This accumulator finds the range of the valid values in a range of rows, and samples the values at every
+     * row whose index is a multiple of a fixed stride.
+     */
+    protected static class RangeAccumulator implements IAccumulator {
+
+        /** column being analyzed */
+        private NumericColumn column;
+        /** smallest value found */
+        private double min;
+        /** largest value found */
+        private double max;
+        /** number of finite values found */
+        private int count;
+        /** number of infinite or NaN values found */
+        private int nonFinite;
+        /** number of rows scanned */
+        private int rows;
+        /** distance between sampled rows */
+        private int stride;
+        /** sampled values */
+        private ResizableDoubleArray sample;
+
+        /**
+         * Create an empty accumulator for a column.
+         *
+         * @param column	column to analyze
+         */
+        protected RangeAccumulator(NumericColumn column) {
+            this.column = column;
+            this.min = Double.POSITIVE_INFINITY;
+            this.max = Double.NEGATIVE_INFINITY;
+            this.count = 0;
+            this.nonFinite = 0;
+            this.rows = 0;
+            // The stride is chosen so that the expected number of valid values sampled is the sample size.
+            this.stride = Math.max(1, column.validCount() / SAMPLE_SIZE);
+            this.sample = new ResizableDoubleArray();
+        }
+
+        @Override
+        public void addRange(int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (this.column.isValid(i)) {
+                    double value = this.column.get(i);
+                    if (! Double.isFinite(value))
+                        this.nonFinite++;
+                    else {
+                        if (value < this.min) this.min = value;
+                        if (value > this.max) this.max = value;
+                        this.count++;
+                    }
+                }
+            }
+            this.rows += end - start;
+            // Sample the rows whose index is a multiple of the stride.
+            int first = (start + this.stride - 1) / this.stride * this.stride;
+            for (int i = first; i < end; i += this.stride) {
+                if (this.column.isValid(i)) {
+                    double value = this.column.get(i);
+                    if (Double.isFinite(value))
+                        this.sample.addElement(value);
+                }
+            }
+        }
+
+        @Override
+        public void merge(IAccumulator other) {
+            RangeAccumulator o = (RangeAccumulator) other;
+            this.min = Math.min(this.min, o.min);
+            this.max = Math.max(this.max, o.max);
+            this.count += o.count;
+            this.nonFinite += o.nonFinite;
+            this.rows += o.rows;
+            // For a live display, the new rows were scanned in a newer copy of the column, which also contains the
+            // old rows.
+            if (o.column.size() > this.column.size())
+                this.column = o.column;
+            this.sample.addElements(o.sample.getElements());
+        }
+
+        /**
+         * @return the estimated values at the specified percentiles, computed from the sample
+         *
+         * @param percentiles	desired percentiles
+         */
+        protected double[] quantiles(double... percentiles) {
+            double[] values = this.sample.getElements();
+            double[] retVal;
+            if (values.length > 0)
+                retVal = QuantileSelector.percentiles(values, values.length, percentiles);
+            else {
+                // This can only happen in a sparse column if no valid value fell on a sampled row.
+                retVal = new double[percentiles.length];
+                for (int i = 0; i < retVal.length; i++)
+                    retVal[i] = this.min + (this.max - this.min) * percentiles[i] / 100.0;
+            }
+            return retVal;
+        }
+
+    }
+
+    /**
+     * This accumulator counts the valid values in each bin for a range of rows.
+     */
+    protected static class BinAccumulator implements IAccumulator {
+
+        /** column being analyzed */
+        private NumericColumn column;
+        /** coded label column, or NULL if the labels are not counted separately */
+        private CodedColumn labels;
+        /** bin edges */
+        private double[] edges;
+        /** reciprocal of the slot width */
+        private double scale;
+        /** bin containing the start of each slot, or NULL if the slots are the bins */
+        private int[] slotBins;
+        /** counts for each bin, for each label code */
+        private int[][] counts;
+
+        /**
+         * Create an empty accumulator for a column.
+         *
+         * @param column		column to analyze
+         * @param labels		coded label column, or NULL to count all labels together
+         * @param edges			bin edges
+         * @param equalWidth	TRUE if the bins are of equal width
+         */
+        protected BinAccumulator(NumericColumn column, CodedColumn labels, double[] edges, boolean equalWidth) {
+            this.column = column;
+            this.labels = labels;
+            this.edges = edges;
+            final int n = edges.length - 1;
+            if (equalWidth) {
+                this.scale = n / (edges[n] - edges[0]);
+                this.slotBins = null;
+            } else {
+                // For unequal bins, we divide the range into many equal slots and record the bin at the start of
+                // each one.  A value's bin is then found from its slot with at most a few comparisons.
+                final int slots = n * SLOTS_PER_BIN;
+                this.scale = slots / (edges[n] - edges[0]);
+                this.slotBins = new int[slots];
+                int b = 0;
+                for (int k = 0; k < slots; k++) {
+                    double slotStart = edges[0] + k / this.scale;
+                    while (b < n - 1 && slotStart >= edges[b + 1]) b++;
+                    this.slotBins[k] = b;
+                }
+            }
+            this.counts = new int[labels == null ? 1 : labels.dictionarySize()][n];
+        }
+
+        @Override
+        public void addRange(int start, int end) {
+            final int last = this.edges.length - 2;
+            final double low = this.edges[0];
+            for (int i = start; i < end; i++) {
+                double value = this.column.get(i);
+                if (this.column.isValid(i) && Double.isFinite(value)) {
+                    int b = (int) ((value - low) * this.scale);
+                    if (this.slotBins == null)
+                        b = Math.max(0, Math.min(last, b));
+                    else {
+                        // Start from the bin at the beginning of the slot and move past any edges in the slot.  We
+                        // also check downward, in case rounding put the value just before the slot.
+                        b = this.slotBins[Math.max(0, Math.min(this.slotBins.length - 1, b))];
+                        while (b < last && value >= this.edges[b + 1]) b++;
+                        while (b > 0 && value < this.edges[b]) b--;
+                    }
+                    int code = (this.labels == null ? 0 : this.labels.getCode(i));
+                    this.counts[code][b]++;
+                }
+            }
+        }
+
+        @Override
+        public void merge(IAccumulator other) {
+            BinAccumulator o = (BinAccumulator) other;
+            for (int code = 0; code < this.counts.length; code++) {
+                int[] mine = this.counts[code];
+                int[] theirs = o.counts[code];
+                for (int b = 0; b < mine.length; b++)
+                    mine[b] += theirs[b];
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+/**
+ * This is a HyperLogLog sketch for estimating the number of distinct strings in a stream.  It uses 2^precision
+ * one-byte registers, and the relative standard error of the estimate is about 1.04 / sqrt(2^precision).  Two
+ * sketches with the same precision can be merged by taking the maximum of each register.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class HyperLogLog {
+
+    // FIELDS
+    /** number of index bits */
+    private final int precision;
+    /** registers, each holding the maximum leading-zero rank seen */
+    private final byte[] registers;
+    /** default precision */
+    public static final int DEFAULT_PRECISION = 12;
+
+    /**
+     * Create an empty sketch.
+     *
+     * @param precision		number of index bits (4 to 18)
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 18)
+            throw new IllegalArgumentException("HyperLogLog precision must be between 4 and 18.");
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Add a string to the sketch.
+     *
+     * @param key	string to add
+     */
+    public void add(String key) {
+        long hash = hash(key);
+        int idx = (int) (hash >>> (64 - this.precision));
+        int rank = Long.numberOfLeadingZeros((hash << this.precision) | (1L << (this.precision - 1))) + 1;
+        if (rank > this.registers[idx])
+            this.registers[idx] = (byte) rank;
+    }
+
+    /**
+     * Merge another sketch into this one.
+     *
+     * @param other		sketch to merge
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != this.precision)
+            throw new IllegalArgumentException("Cannot merge HyperLogLog sketches of different precision.");
+        for (int i = 0; i < this.registers.length; i++) {
+            if (other.registers[i] > this.registers[i])
+                this.registers[i] = other.registers[i];
+        }
+    }
+
+    /**
+     * @return the estimated number of distinct strings
+     */
+    public long estimate() {
+        final int m = this.registers.length;
+        double sum = 0.0;
+        int zeros = 0;
+        for (byte r : this.registers) {
+            sum += Math.scalb(1.0, -r);
+            if (r == 0) zeros++;
+        }
+        double alpha = 0.7213 / (1.0 + 1.079 / m);
+        double retVal = alpha * m * m / sum;
+        // Use linear counting for small cardinalities.
+        if (retVal <= 2.5 * m && zeros > 0)
+            retVal = m * Math.log((double) m / zeros);
+        return Math.round(retVal);
+    }
+
+    /**
+     * @return the relative standard error of the estimate
+     */
+    public double relativeError() {
+        return 1.04 / Math.sqrt(this.registers.length);
+    }
+
+    /**
+     * @return a well-mixed 64-bit hash of a string
+     *
+     * @param key	string to hash
+     */
+    private static long hash(String key) {
+        // FNV-1a over the characters, followed by the MurmurHash3 finalizer.
+        long h = 0xcbf29ce484222325L;
+        final int n = key.length();
+        for (int i = 0; i < n; i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
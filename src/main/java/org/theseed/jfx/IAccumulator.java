@@ -0,0 +1,31 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+/**
+ * This interface describes a partial aggregate for a column analysis.  An accumulator processes a range of rows,
+ * and accumulators for different row ranges can be merged.  This allows an analysis to be split across threads.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public interface IAccumulator {
+
+    /**
+     * Add the rows in the specified range to this accumulator.
+     *
+     * @param start		index of the first row to process
+     * @param end		index past the last row to process
+     */
+    public void addRange(int start, int end);
+
+    /**
+     * Merge another accumulator into this one.  The other accumulator is always of the same type and
+     * covers rows after the rows in this one.
+     *
+     * @param other		accumulator to merge
+     */
+    public void merge(IAccumulator other);
+
+}
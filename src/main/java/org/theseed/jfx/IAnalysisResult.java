@@ -0,0 +1,17 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+/**
+ * This interface marks the headless result of a column analysis.  A result contains the computed numbers (such as
+ * the statistics, the value counts, or the per-label series) but no JavaFX nodes, so it can be computed in the
+ * background, cached, and rendered as many times as needed.  Results must not be modified after they are created,
+ * since they may be shared between displays.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public interface IAnalysisResult {
+
+}
@@ -18,4 +18,16 @@ public interface IBackgroundController extends IController {
      * @param success	TRUE if it was successful, else FALSE
      */
     public void recordCompletion(boolean success);
+
+    /**
+     * Record the termination of the background task along with its performance statistics.  The default
+     * simply records the completion.
+     *
+     * @param success	TRUE if it was successful, else FALSE
+     * @param stats		elapsed time, throughput, and memory usage of the task
+     */
+    public default void recordCompletion(boolean success, TaskStats stats) {
+        this.recordCompletion(success);
+    }
+
 }
@@ -0,0 +1,25 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import org.theseed.basic.ICommand;
+
+/**
+ * This interface is implemented by commands that can report their progress.  When such a command is run by a
+ * BackgroundTask, the task passes in a progress monitor before calling run().  The command reports items processed
+ * and status messages to the monitor, and the monitor forwards them to the user interface at a limited rate.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public interface IMonitoredCommand extends ICommand {
+
+    /**
+     * Specify the progress monitor for this command.
+     *
+     * @param monitor	monitor to receive progress reports
+     */
+    public void setMonitor(ProgressMonitor monitor);
+
+}
@@ -0,0 +1,540 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This is a columnar dataset backed by a memory-mapped tab-delimited file.  Instead of splitting every line into
+ * strings, the dataset keeps an index of where each line starts, and a column is parsed directly from the file bytes
+ * into a NumericColumn or CodedColumn the first time it is requested.  Strings are only created for the distinct
+ * values of a coded column and for individual cells requested through getString().
+ *
+ * The file is mapped in segments, each ending on a line boundary, so files larger than 2GB are supported.  Both
+ * the line indexing and the column parsing are split into chunks that run in parallel in the default task scheduler's
+ * scan pool for the calling thread (see TaskScheduler.scanPool()).
+ *
+ * The file is assumed to be UTF-8 with lines ending in LF or CR-LF.  A missing cell at the end of a short line is
+ * treated as an empty string.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class MappedDataset extends ColumnDataset {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(MappedDataset.class);
+    /** default maximum number of bytes in a mapped segment */
+    protected static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+    /** number of bytes indexed by each parallel chunk */
+    private static final int CHUNK_BYTES = 16 << 20;
+    /** number of rows parsed by each parallel chunk; this is a multiple of 64, so chunks never share a bitmap word */
+    private static final int CHUNK_ROWS = 1 << 16;
+    /** file being analyzed */
+    private final File file;
+    /** mapped segments of the file */
+    private final ByteBuffer[] segments;
+    /** index of the first row in each segment, with an extra entry for the total row count */
+    private final int[] segmentFirstRow;
+    /** offset of each row within its segment */
+    private final int[] lineStarts;
+    /** column headers, or NULL if the file has no header line */
+    private final String[] headers;
+    /** progress monitor to receive the number of rows parsed, or NULL if none */
+    private volatile ProgressMonitor parseMonitor;
+
+    /**
+     * This is a view of a single field in a mapped segment.  It can be used as a character sequence by the number
+     * parser (non-ASCII bytes never form a valid number, so treating each byte as a character is safe), and it can
+     * be used as a hash key for building dictionaries without converting every field to a string.
+     */
+    protected static class Field implements CharSequence {
+
+        /** buffer containing the field */
+        private ByteBuffer buffer;
+        /** position of the first byte */
+        private int start;
+        /** position past the last byte */
+        private int end;
+
+        /**
+         * Create an empty field.
+         */
+        protected Field() {
+            this.buffer = null;
+            this.start = 0;
+            this.end = 0;
+        }
+
+        /**
+         * Point this field at a new location.
+         *
+         * @param buffer	buffer containing the field
+         * @param start		position of the first byte
+         * @param end		position past the last byte
+         */
+        protected void set(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return a copy of this field that does not refer to the mapped file
+         */
+        protected Field copy() {
+            byte[] bytes = new byte[this.length()];
+            for (int i = 0; i < bytes.length; i++)
+                bytes[i] = this.buffer.get(this.start + i);
+            Field retVal = new Field();
+            retVal.set(ByteBuffer.wrap(bytes), 0, bytes.length);
+            return retVal;
+        }
+
+        @Override
+        public int length() {
+            return this.end - this.start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (this.buffer.get(this.start + index) & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return this.toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            String retVal = "";
+            if (this.end > this.start) {
+                ByteBuffer slice = this.buffer.duplicate();
+                slice.limit(this.end).position(this.start);
+                retVal = StandardCharsets.UTF_8.decode(slice).toString();
+            }
+            return retVal;
+        }
+
+        @Override
+        public int hashCode() {
+            int retVal = 1;
+            for (int i = this.start; i < this.end; i++)
+                retVal = 31 * retVal + this.buffer.get(i);
+            return retVal;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            boolean retVal;
+            if (this == obj)
+                retVal = true;
+            else if (! (obj instanceof Field))
+                retVal = false;
+            else {
+                Field other = (Field) obj;
+                final int n = this.length();
+                retVal = (n == other.length());
+                for (int i = 0; retVal && i < n; i++)
+                    retVal = (this.buffer.get(this.start + i) == other.buffer.get(other.start + i));
+            }
+            return retVal;
+        }
+
+    }
+
+    /**
+     * Map a tab-delimited file and index its lines.
+     *
+     * @param file		file to load
+     * @param headers	TRUE if the first line contains column headers
+     *
+     * @return the dataset for the file
+     *
+     * @throws IOException
+     */
+    public static MappedDataset load(File file, boolean headers) throws IOException {
+        return new MappedDataset(file, headers, null, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Map a tab-delimited file and index its lines.
+     *
+     * @param file			file to load
+     * @param headers		TRUE if the first line contains column headers
+     * @param monitor		progress monitor to receive the number of bytes indexed, or NULL if none
+     * @param segmentSize	maximum number of bytes in a mapped segment
+     *
+     * @throws IOException
+     */
+    protected MappedDataset(File file, boolean headers, ProgressMonitor monitor, int segmentSize) throws IOException {
+        super();
+        this.file = file;
+        this.parseMonitor = null;
+        long start = System.currentTimeMillis();
+        // Map the file in segments that end on line boundaries.
+        List<ByteBuffer> segList = new ArrayList<ByteBuffer>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            if (monitor != null)
+                monitor.setTotal(fileSize);
+            long pos = 0;
+            while (pos < fileSize) {
+                long len = Math.min(segmentSize, fileSize - pos);
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                int limit = (int) len;
+                if (pos + len < fileSize) {
+                    // Back up to the end of the last complete line.
+                    while (limit > 0 && buffer.get(limit - 1) != '\n') limit--;
+                    if (limit == 0)
+                        throw new IOException("Line too long in " + file + " at position " + pos + ".");
+                    buffer.limit(limit);
+                }
+                segList.add(buffer);
+                pos += limit;
+            }
+        }
+        this.segments = segList.toArray(new ByteBuffer[segList.size()]);
+        // Build the list of chunks to index.
+        List<int[]> chunks = new ArrayList<int[]>();
+        for (int s = 0; s < this.segments.length; s++) {
+            final int limit = this.segments[s].limit();
+            for (int pos = 0; pos < limit; pos += CHUNK_BYTES)
+                chunks.add(new int[] { s, pos, (int) Math.min(limit, (long) pos + CHUNK_BYTES) });
+        }
+        // Index the chunks in parallel.  The ordered collect keeps the lines in file order.
+        List<int[]> starts = TaskScheduler.getDefault().scanPool().submit(() -> chunks.parallelStream()
+                .map(x -> this.indexChunk(x[0], x[1], x[2], monitor)).collect(Collectors.toList())).join();
+        // Assemble the line index.  If there are headers, we skip the first line.
+        int skip = (headers ? 1 : 0);
+        long total = -skip;
+        for (int[] chunkStarts : starts)
+            total += chunkStarts[0];
+        if (total > Integer.MAX_VALUE)
+            throw new IOException("Too many lines in " + file + ".");
+        this.lineStarts = new int[(int) Math.max(0, total)];
+        this.segmentFirstRow = new int[this.segments.length + 1];
+        int row = 0;
+        int c = 0;
+        for (int s = 0; s < this.segments.length; s++) {
+            this.segmentFirstRow[s] = row;
+            for (; c < chunks.size() && chunks.get(c)[0] == s; c++) {
+                int[] chunkStarts = starts.get(c);
+                final int n = chunkStarts[0];
+                for (int i = 1; i <= n; i++) {
+                    if (skip > 0)
+                        skip--;
+                    else
+                        this.lineStarts[row++] = chunkStarts[i];
+                }
+            }
+        }
+        this.segmentFirstRow[this.segments.length] = row;
+        // Parse the header line.
+        if (! headers)
+            this.headers = null;
+        else if (this.segments.length == 0)
+            this.headers = new String[0];
+        else {
+            ByteBuffer segment = this.segments[0];
+            int end = trimLine(segment, 0, (this.segmentFirstRow[1] > 0 ? this.lineStarts[0] : segment.limit()));
+            List<String> fields = new ArrayList<String>();
+            Field field = new Field();
+            int pos = 0;
+            while (pos <= end) {
+                int fieldEnd = pos;
+                while (fieldEnd < end && segment.get(fieldEnd) != '\t') fieldEnd++;
+                field.set(segment, pos, fieldEnd);
+                fields.add(field.toString());
+                pos = fieldEnd + 1;
+            }
+            this.headers = fields.toArray(new String[fields.size()]);
+        }
+        log.info("{} lines indexed in {} segments from {} in {} ms.", row, this.segments.length, file,
+                System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Find the lines that start in a chunk of a segment.
+     *
+     * @param s			index of the segment
+     * @param start		position of the first byte in the chunk
+     * @param end		position past the last byte in the chunk
+     * @param monitor	progress monitor to receive the number of bytes indexed, or NULL if none
+     *
+     * @return an array containing the number of lines followed by the line start positions
+     */
+    private int[] indexChunk(int s, int start, int end, ProgressMonitor monitor) {
+        ByteBuffer segment = this.segments[s];
+        final int limit = segment.limit();
+        int[] retVal = new int[1024];
+        int n = 0;
+        // Skip to the first line start in the chunk.
+        int pos = start;
+        if (pos > 0 && segment.get(pos - 1) != '\n') {
+            while (pos < end && segment.get(pos) != '\n') pos++;
+            pos++;
+        }
+        while (pos < end) {
+            n++;
+            if (n >= retVal.length)
+                retVal = Arrays.copyOf(retVal, retVal.length * 2);
+            retVal[n] = pos;
+            while (pos < limit && segment.get(pos) != '\n') pos++;
+            pos++;
+        }
+        retVal[0] = n;
+        if (monitor != null)
+            monitor.add(end - start);
+        return retVal;
+    }
+
+    /**
+     * @return the position past the last byte of a line, not counting the line terminator
+     *
+     * @param segment	segment containing the line
+     * @param start		position of the first byte of the line
+     * @param end		position of the next line, or the end of the segment
+     */
+    private static int trimLine(ByteBuffer segment, int start, int end) {
+        if (end > start && segment.get(end - 1) == '\n') end--;
+        if (end > start && segment.get(end - 1) == '\r') end--;
+        return end;
+    }
+
+    /**
+     * @return the position past the last byte of a row, not counting the line terminator
+     *
+     * @param s		index of the segment containing the row
+     * @param row	index of the row
+     */
+    private int lineEnd(int s, int row) {
+        ByteBuffer segment = this.segments[s];
+        int end = (row + 1 < this.segmentFirstRow[s + 1] ? this.lineStarts[row + 1] : segment.limit());
+        return trimLine(segment, this.lineStarts[row], end);
+    }
+
+    /**
+     * @return the index of the segment containing a row
+     *
+     * @param row	index of the row
+     */
+    private int segmentOf(int row) {
+        int retVal = Arrays.binarySearch(this.segmentFirstRow, row);
+        if (retVal < 0)
+            retVal = -retVal - 2;
+        else {
+            // Skip over any empty segments.
+            while (this.segmentFirstRow[retVal + 1] == row) retVal++;
+        }
+        return retVal;
+    }
+
+    /**
+     * Locate a field in a row.  If the row has too few fields, the field is set to an empty string.
+     *
+     * @param s			index of the segment containing the row
+     * @param row		index of the row
+     * @param colIdx	index of the column
+     * @param field		field object to point at the result
+     */
+    private void findField(int s, int row, int colIdx, Field field) {
+        ByteBuffer segment = this.segments[s];
+        final int end = this.lineEnd(s, row);
+        int pos = this.lineStarts[row];
+        for (int col = 0; col < colIdx && pos <= end; col++) {
+            while (pos < end && segment.get(pos) != '\t') pos++;
+            pos++;
+        }
+        if (pos > end)
+            field.set(segment, end, end);
+        else {
+            int fieldEnd = pos;
+            while (fieldEnd < end && segment.get(fieldEnd) != '\t') fieldEnd++;
+            field.set(segment, pos, fieldEnd);
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.lineStarts.length;
+    }
+
+    @Override
+    public String getString(int row, int colIdx) {
+        Field field = new Field();
+        this.findField(this.segmentOf(row), row, colIdx, field);
+        return field.toString();
+    }
+
+    /**
+     * @return the column headers, or NULL if the file has no header line
+     */
+    public String[] getHeaders() {
+        return this.headers;
+    }
+
+    /**
+     * @return the file being analyzed
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Specify a progress monitor to receive the number of rows parsed when a column is parsed or encoded.
+     *
+     * @param monitor	progress monitor for parsing, or NULL to stop reporting
+     */
+    public void setParseMonitor(ProgressMonitor monitor) {
+        this.parseMonitor = monitor;
+    }
+
+    /**
+     * @return the number of row chunks for parallel parsing
+     */
+    private int rowChunks() {
+        return (this.size() + CHUNK_ROWS - 1) / CHUNK_ROWS;
+    }
+
+    @Override
+    protected NumericColumn parseNumeric(int colIdx) {
+        final int n = this.size();
+        double[] values = new double[Math.max(n, 16)];
+        long[] validBits = new long[(values.length + 63) >> 6];
+        final ProgressMonitor monitor = this.parseMonitor;
+        ForkJoinPool pool = TaskScheduler.getDefault().scanPool();
+        int validCount = pool.submit(() -> IntStream.range(0, this.rowChunks()).parallel()
+                .map(k -> this.parseNumericChunk(colIdx, k * CHUNK_ROWS, Math.min(n, (k + 1) * CHUNK_ROWS), values, validBits,
+                        monitor))
+                .sum()).join();
+        return new NumericColumn(values, validBits, n, validCount);
+    }
+
+    /**
+     * Parse a chunk of rows in a column into floating-point values.
+     *
+     * @param colIdx		index of the column to parse
+     * @param start			index of the first row in the chunk (a multiple of 64)
+     * @param end			index past the last row in the chunk
+     * @param values		value array to fill in
+     * @param validBits		validity bitmap to fill in
+     * @param monitor		progress monitor to receive the number of rows parsed, or NULL if none
+     *
+     * @return the number of valid values in the chunk
+     */
+    private int parseNumericChunk(int colIdx, int start, int end, double[] values, long[] validBits,
+            ProgressMonitor monitor) {
+        int retVal = 0;
+        NumberParser parser = new NumberParser();
+        Field field = new Field();
+        int s = this.segmentOf(start);
+        for (int row = start; row < end; row++) {
+            while (row >= this.segmentFirstRow[s + 1]) s++;
+            this.findField(s, row, colIdx, field);
+            if (parser.parse(field)) {
+                values[row] = parser.getValue();
+                validBits[row >> 6] |= 1L << row;
+                retVal++;
+            }
+        }
+        if (monitor != null)
+            monitor.add(end - start);
+        return retVal;
+    }
+
+    @Override
+    protected CodedColumn parseCoded(int colIdx) {
+        final int n = this.size();
+        int[] codes = new int[n];
+        // Each chunk builds its own dictionary in order of first appearance.
+        final ProgressMonitor monitor = this.parseMonitor;
+        ForkJoinPool pool = TaskScheduler.getDefault().scanPool();
+        List<List<String>> chunkValues = pool.submit(() -> IntStream.range(0, this.rowChunks()).parallel()
+                .mapToObj(k -> this.parseCodedChunk(colIdx, k * CHUNK_ROWS, Math.min(n, (k + 1) * CHUNK_ROWS), codes,
+                        monitor))
+                .collect(Collectors.toList())).join();
+        // Merge the chunk dictionaries, in order, to get the global first-appearance order.
+        Map<String, Integer> codeMap = new HashMap<String, Integer>();
+        List<String> values = new ArrayList<String>();
+        int[][] remaps = new int[chunkValues.size()][];
+        for (int k = 0; k < remaps.length; k++) {
+            List<String> localValues = chunkValues.get(k);
+            int[] remap = new int[localValues.size()];
+            for (int i = 0; i < remap.length; i++) {
+                String value = localValues.get(i);
+                Integer code = codeMap.get(value);
+                if (code == null) {
+                    code = values.size();
+                    codeMap.put(value, code);
+                    values.add(value);
+                }
+                remap[i] = code;
+            }
+            remaps[k] = remap;
+        }
+        // Convert the local codes to global codes.
+        pool.submit(() -> IntStream.range(0, remaps.length).parallel().forEach(k -> {
+            int[] remap = remaps[k];
+            final int end = Math.min(n, (k + 1) * CHUNK_ROWS);
+            for (int row = k * CHUNK_ROWS; row < end; row++)
+                codes[row] = remap[codes[row]];
+        })).join();
+        return CodedColumn.sorted(codes, n, values.toArray(new String[values.size()]));
+    }
+
+    /**
+     * Convert a chunk of rows in a column into local dictionary codes.
+     *
+     * @param colIdx		index of the column to encode
+     * @param start			index of the first row in the chunk
+     * @param end			index past the last row in the chunk
+     * @param codes			code array to fill in
+     * @param monitor		progress monitor to receive the number of rows encoded, or NULL if none
+     *
+     * @return the local dictionary, in code order
+     */
+    private List<String> parseCodedChunk(int colIdx, int start, int end, int[] codes, ProgressMonitor monitor) {
+        List<String> retVal = new ArrayList<String>();
+        // The field object is used as the lookup key, so we only create a string for each new value.
+        Map<Field, Integer> codeMap = new HashMap<Field, Integer>();
+        Field field = new Field();
+        int s = (start < end ? this.segmentOf(start) : 0);
+        for (int row = start; row < end; row++) {
+            while (row >= this.segmentFirstRow[s + 1]) s++;
+            this.findField(s, row, colIdx, field);
+            Integer code = codeMap.get(field);
+            if (code == null) {
+                Field key = field.copy();
+                code = retVal.size();
+                codeMap.put(key, code);
+                retVal.add(key.toString());
+            }
+            codes[row] = code;
+        }
+        if (monitor != null)
+            monitor.add(end - start);
+        return retVal;
+    }
+
+}
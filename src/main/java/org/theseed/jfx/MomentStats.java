@@ -0,0 +1,162 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+/**
+ * This object computes count, minimum, maximum, mean, standard deviation, and skewness from running moments.  It uses
+ * constant memory, and two objects covering different sets of values can be merged.  The formulas are the
+ * one-pass updates of Welford and Pebay, and the results are the same sample statistics (bias-corrected
+ * standard deviation and skewness) returned by the commons-math DescriptiveStatistics object.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class MomentStats {
+
+    // FIELDS
+    /** number of values */
+    private long n;
+    /** mean of the values */
+    private double mean;
+    /** sum of squared deviations from the mean */
+    private double m2;
+    /** sum of cubed deviations from the mean */
+    private double m3;
+    /** minimum value */
+    private double min;
+    /** maximum value */
+    private double max;
+
+    /**
+     * Create an empty moment tracker.
+     */
+    public MomentStats() {
+        this.n = 0;
+        this.mean = 0.0;
+        this.m2 = 0.0;
+        this.m3 = 0.0;
+        this.min = Double.POSITIVE_INFINITY;
+        this.max = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Add a value to the statistics.
+     *
+     * @param value		value to add
+     */
+    public void add(double value) {
+        long n1 = this.n;
+        this.n++;
+        double delta = value - this.mean;
+        double deltaN = delta / this.n;
+        double term1 = delta * deltaN * n1;
+        this.mean += deltaN;
+        this.m3 += term1 * deltaN * (this.n - 2) - 3.0 * deltaN * this.m2;
+        this.m2 += term1;
+        if (value < this.min) this.min = value;
+        if (value > this.max) this.max = value;
+    }
+
+    /**
+     * Merge the statistics for another set of values into this one.
+     *
+     * @param other		statistics to merge
+     */
+    public void merge(MomentStats other) {
+        if (other.n == 0) {
+            // Nothing to merge.
+        } else if (this.n == 0) {
+            this.n = other.n;
+            this.mean = other.mean;
+            this.m2 = other.m2;
+            this.m3 = other.m3;
+            this.min = other.min;
+            this.max = other.max;
+        } else {
+            double na = this.n;
+            double nb = other.n;
+            double nt = na + nb;
+            double delta = other.mean - this.mean;
+            double delta2 = delta * delta;
+            // Note that the third moment uses the old second moments, so it is computed first.
+            this.m3 = this.m3 + other.m3 + delta2 * delta * na * nb * (na - nb) / (nt * nt)
+                    + 3.0 * delta * (na * other.m2 - nb * this.m2) / nt;
+            this.m2 = this.m2 + other.m2 + delta2 * na * nb / nt;
+            this.mean += delta * nb / nt;
+            this.n += other.n;
+            this.min = Math.min(this.min, other.min);
+            this.max = Math.max(this.max, other.max);
+        }
+    }
+
+    /**
+     * @return the number of values
+     */
+    public long getN() {
+        return this.n;
+    }
+
+    /**
+     * @return the mean of the values
+     */
+    public double getMean() {
+        return (this.n == 0 ? Double.NaN : this.mean);
+    }
+
+    /**
+     * @return the minimum value
+     */
+    public double getMin() {
+        return (this.n == 0 ? Double.NaN : this.min);
+    }
+
+    /**
+     * @return the maximum value
+     */
+    public double getMax() {
+        return (this.n == 0 ? Double.NaN : this.max);
+    }
+
+    /**
+     * @return the sample variance of the values
+     */
+    public double getVariance() {
+        double retVal;
+        if (this.n == 0)
+            retVal = Double.NaN;
+        else if (this.n == 1)
+            retVal = 0.0;
+        else
+            retVal = this.m2 / (this.n - 1);
+        return retVal;
+    }
+
+    /**
+     * @return the sample standard deviation of the values
+     */
+    public double getStandardDeviation() {
+        return Math.sqrt(this.getVariance());
+    }
+
+    /**
+     * @return the bias-corrected sample skewness of the values
+     */
+    public double getSkewness() {
+        double retVal;
+        if (this.n < 3)
+            retVal = Double.NaN;
+        else {
+            double variance = this.getVariance();
+            if (variance < 1.0e-19)
+                retVal = 0.0;
+            else {
+                double n0 = this.n;
+                double sd3 = variance * Math.sqrt(variance);
+                retVal = (n0 / ((n0 - 1.0) * (n0 - 2.0))) * this.m3 / sd3;
+            }
+        }
+        return retVal;
+    }
+
+}
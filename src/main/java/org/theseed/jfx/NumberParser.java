@@ -0,0 +1,206 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+/**
+ * This object parses floating-point numbers without throwing exceptions.  It accepts the same strings as
+ * Double.parseDouble and returns the same values, but an invalid string simply causes the parse method to
+ * return FALSE.  This is important for sparse columns, where most of the strings are empty or "NA" and an
+ * exception for each one would be very expensive.
+ *
+ * Ordinary decimal numbers with no more than 15 significant digits and a small exponent are converted directly,
+ * which is exact because both the digits and the power of ten are exactly representable.  Anything else is
+ * validated here and then passed to Double.parseDouble.
+ *
+ * A parser holds the value of the last successful parse, so it is not thread-safe, but it is cheap to create.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class NumberParser {
+
+    // FIELDS
+    /** value from the last successful parse */
+    private double value;
+    /** exactly-representable powers of ten */
+    private static final double[] POWERS_OF_TEN = new double[] { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+            1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+    /** maximum number of significant digits for the fast path */
+    private static final int MAX_FAST_DIGITS = 15;
+
+    /**
+     * Create a new number parser.
+     */
+    public NumberParser() {
+        this.value = 0.0;
+    }
+
+    /**
+     * @return the value from the last successful parse
+     */
+    public double getValue() {
+        return this.value;
+    }
+
+    /**
+     * Parse a string as a floating-point number.
+     *
+     * @param s		string to parse (may be NULL)
+     *
+     * @return TRUE if the string is a valid number, else FALSE
+     */
+    public boolean parse(CharSequence s) {
+        boolean retVal = false;
+        if (s != null) {
+            // Trim whitespace the same way Double.parseDouble does.
+            int start = 0;
+            int end = s.length();
+            while (start < end && s.charAt(start) <= ' ') start++;
+            while (end > start && s.charAt(end - 1) <= ' ') end--;
+            if (start < end)
+                retVal = this.parse(s, start, end);
+        }
+        return retVal;
+    }
+
+    /**
+     * Parse a trimmed, non-empty portion of a string.
+     *
+     * @param s			string to parse
+     * @param start		position of the first character
+     * @param end		position past the last character
+     *
+     * @return TRUE if the string is a valid number, else FALSE
+     */
+    private boolean parse(CharSequence s, int start, int end) {
+        int pos = start;
+        boolean negative = false;
+        char c = s.charAt(pos);
+        if (c == '-' || c == '+') {
+            negative = (c == '-');
+            pos++;
+        }
+        if (pos >= end)
+            return false;
+        c = s.charAt(pos);
+        if (c == 'N' || c == 'I')
+            return this.parseSpecial(s, pos, end, negative);
+        // Here we have a regular number.  Accumulate the significant digits.
+        long mantissa = 0;
+        int digits = 0;
+        int significant = 0;
+        int scale = 0;
+        boolean dotFound = false;
+        boolean hex = false;
+        for (; pos < end; pos++) {
+            c = s.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (significant > 0 || c != '0') {
+                    significant++;
+                    if (significant <= 18)
+                        mantissa = mantissa * 10 + (c - '0');
+                    else if (! dotFound)
+                        scale++;
+                }
+                if (dotFound && significant <= 18) scale--;
+            } else if (c == '.' && ! dotFound) {
+                dotFound = true;
+            } else if ((c == 'x' || c == 'X') && digits == 1 && mantissa == 0 && ! dotFound) {
+                hex = true;
+                break;
+            } else
+                break;
+        }
+        if (hex)
+            return this.parseSlow(s, start, end);
+        if (digits == 0)
+            return false;
+        // Check for an exponent.
+        int exponent = 0;
+        if (pos < end && (s.charAt(pos) == 'e' || s.charAt(pos) == 'E')) {
+            pos++;
+            boolean expNegative = false;
+            if (pos < end && (s.charAt(pos) == '-' || s.charAt(pos) == '+')) {
+                expNegative = (s.charAt(pos) == '-');
+                pos++;
+            }
+            int expDigits = 0;
+            while (pos < end && s.charAt(pos) >= '0' && s.charAt(pos) <= '9') {
+                if (exponent < 100000)
+                    exponent = exponent * 10 + (s.charAt(pos) - '0');
+                expDigits++;
+                pos++;
+            }
+            if (expDigits == 0)
+                return false;
+            if (expNegative) exponent = -exponent;
+        }
+        // Allow a type suffix.
+        if (pos < end) {
+            c = s.charAt(pos);
+            if (c == 'd' || c == 'D' || c == 'f' || c == 'F')
+                pos++;
+        }
+        if (pos < end)
+            return false;
+        // The string is syntactically valid.  Try the fast path.
+        int power = scale + exponent;
+        if (significant <= MAX_FAST_DIGITS && power >= -22 && power <= 22) {
+            double result = (double) mantissa;
+            if (power < 0)
+                result /= POWERS_OF_TEN[-power];
+            else
+                result *= POWERS_OF_TEN[power];
+            this.value = (negative ? -result : result);
+            return true;
+        }
+        return this.parseSlow(s, start, end);
+    }
+
+    /**
+     * Parse "NaN" or "Infinity".
+     *
+     * @param s			string to parse
+     * @param pos		position of the first character after the sign
+     * @param end		position past the last character
+     * @param negative	TRUE if there was a minus sign
+     *
+     * @return TRUE if the string is a valid special value, else FALSE
+     */
+    private boolean parseSpecial(CharSequence s, int pos, int end, boolean negative) {
+        boolean retVal = false;
+        String rest = s.subSequence(pos, end).toString();
+        if (rest.equals("NaN")) {
+            this.value = Double.NaN;
+            retVal = true;
+        } else if (rest.equals("Infinity")) {
+            this.value = (negative ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+            retVal = true;
+        }
+        return retVal;
+    }
+
+    /**
+     * Parse a string with the standard library.  This is only used for strings that are known to be valid
+     * or that are unusual (hexadecimal), so the exception is rare.
+     *
+     * @param s			string to parse
+     * @param start		position of the first character
+     * @param end		position past the last character
+     *
+     * @return TRUE if the string is a valid number, else FALSE
+     */
+    private boolean parseSlow(CharSequence s, int start, int end) {
+        boolean retVal;
+        try {
+            this.value = Double.parseDouble(s.subSequence(start, end).toString());
+            retVal = true;
+        } catch (NumberFormatException e) {
+            retVal = false;
+        }
+        return retVal;
+    }
+
+}
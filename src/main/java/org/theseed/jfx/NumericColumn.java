@@ -0,0 +1,153 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.Arrays;
+
+/**
+ * This object contains a single column of a dataset parsed into floating-point values.  The values are stored in a
+ * primitive array, and a bitmap indicates which rows contained a valid number.  Invalid rows have a value of 0.0 in
+ * the array, so code that does not check the bitmap must be careful.
+ *
+ * Once a column has been handed out by a dataset, it never changes.  When rows are added to the dataset, a new column
+ * object is built with grow() and the new rows are added to that.  The two objects may share arrays, but the old one
+ * never looks past its own size, so threads still using it are unaffected.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class NumericColumn {
+
+    // FIELDS
+    /** array of values, one per row */
+    private double[] values;
+    /** validity bitmap, one bit per row */
+    private long[] validBits;
+    /** number of rows in the column */
+    private int size;
+    /** number of valid values in the column */
+    private int validCount;
+
+    /**
+     * Construct an empty numeric column.
+     *
+     * @param capacity	expected number of rows
+     */
+    protected NumericColumn(int capacity) {
+        this.values = new double[Math.max(capacity, 16)];
+        this.validBits = new long[(this.values.length + 63) >> 6];
+        this.size = 0;
+        this.validCount = 0;
+    }
+
+    /**
+     * Construct a numeric column from the component parts.
+     *
+     * @param values		array of values, one per row (0.0 for invalid rows)
+     * @param validBits		validity bitmap, one bit per row
+     * @param size			number of rows in the column
+     * @param validCount	number of valid values in the column
+     */
+    protected NumericColumn(double[] values, long[] validBits, int size, int validCount) {
+        this.values = values;
+        this.validBits = validBits;
+        this.size = size;
+        this.validCount = validCount;
+    }
+
+    /**
+     * @return a new column containing the same rows as this one, with room for at least the specified number of
+     * 		   rows; rows added to the new column are invisible to this one
+     *
+     * @param capacity	number of rows required
+     */
+    protected NumericColumn grow(int capacity) {
+        NumericColumn retVal = new NumericColumn(this.values, this.validBits, this.size, this.validCount);
+        retVal.ensureCapacity(capacity);
+        return retVal;
+    }
+
+    /**
+     * Add a valid value to the end of the column.  This should only be used on a column that has not yet been
+     * published.
+     *
+     * @param value		value to add
+     */
+    protected void add(double value) {
+        this.ensureCapacity(this.size + 1);
+        this.values[this.size] = value;
+        this.validBits[this.size >> 6] |= 1L << this.size;
+        this.size++;
+        this.validCount++;
+    }
+
+    /**
+     * Add an invalid (missing) value to the end of the column.  This should only be used on a column that has not
+     * yet been published.
+     */
+    protected void addInvalid() {
+        this.ensureCapacity(this.size + 1);
+        this.size++;
+    }
+
+    /**
+     * Insure there is room for the specified number of rows.
+     *
+     * @param needed	number of rows required
+     */
+    private void ensureCapacity(int needed) {
+        if (needed > this.values.length) {
+            int newLength = Math.max(needed, this.values.length + (this.values.length >> 1));
+            this.values = Arrays.copyOf(this.values, newLength);
+            this.validBits = Arrays.copyOf(this.validBits, (newLength + 63) >> 6);
+        }
+    }
+
+    /**
+     * @return the number of rows in this column
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of rows containing valid numbers
+     */
+    public int validCount() {
+        return this.validCount;
+    }
+
+    /**
+     * @return the number of rows that did not contain valid numbers
+     */
+    public int invalidCount() {
+        return this.size - this.validCount;
+    }
+
+    /**
+     * @return TRUE if the specified row contains a valid number
+     *
+     * @param row	index of the row to check
+     */
+    public boolean isValid(int row) {
+        return (this.validBits[row >> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * @return the value in the specified row (0.0 if the row is invalid)
+     *
+     * @param row	index of the row whose value is desired
+     */
+    public double get(int row) {
+        return this.values[row];
+    }
+
+    /**
+     * @return the underlying value array (which may be longer than the column)
+     */
+    protected double[] values() {
+        return this.values;
+    }
+
+}
@@ -0,0 +1,160 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * This object keeps the K rows with the highest error in a bounded min-heap.  The root of the heap is the least
+ * serious of the outliers kept, so a new row only has to be compared against the root.  Ties in the error are broken
+ * by ID in the same way as the Prediction sort, so the rows selected are exactly the first K rows of a full sort.
+ *
+ * Two heaps over the same rows can be merged, so the selection can be split across threads.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class OutlierHeap {
+
+    // FIELDS
+    /** maximum number of rows to keep */
+    private final int capacity;
+    /** row indices in the heap */
+    private int[] rows;
+    /** error values in the heap */
+    private double[] errors;
+    /** number of entries in the heap */
+    private int used;
+    /** function for finding the ID of a row */
+    private final IntFunction<String> idLookup;
+
+    /**
+     * Create an empty outlier heap.
+     *
+     * @param capacity	number of outliers to keep
+     * @param idLookup	function that returns the ID for a row index
+     */
+    public OutlierHeap(int capacity, IntFunction<String> idLookup) {
+        this.capacity = capacity;
+        this.rows = new int[capacity];
+        this.errors = new double[capacity];
+        this.used = 0;
+        this.idLookup = idLookup;
+    }
+
+    /**
+     * Offer a row to the heap.
+     *
+     * @param row		index of the row
+     * @param error		error value for the row
+     */
+    public void offer(int row, double error) {
+        if (this.used < this.capacity) {
+            int p = this.used++;
+            this.rows[p] = row;
+            this.errors[p] = error;
+            this.siftUp(p);
+        } else if (this.capacity > 0 && this.isWorse(row, error, this.rows[0], this.errors[0])) {
+            this.rows[0] = row;
+            this.errors[0] = error;
+            this.siftDown(0);
+        }
+    }
+
+    /**
+     * Merge another heap into this one.
+     *
+     * @param other		heap to merge
+     */
+    public void merge(OutlierHeap other) {
+        for (int i = 0; i < other.used; i++)
+            this.offer(other.rows[i], other.errors[i]);
+    }
+
+    /**
+     * @return the number of rows in the heap
+     */
+    public int size() {
+        return this.used;
+    }
+
+    /**
+     * @return the row indices in the heap, from worst to least bad
+     */
+    public int[] sortedRows() {
+        Integer[] order = new Integer[this.used];
+        for (int i = 0; i < this.used; i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> (this.isWorse(this.rows[a], this.errors[a], this.rows[b], this.errors[b]) ? -1 :
+                (this.isWorse(this.rows[b], this.errors[b], this.rows[a], this.errors[a]) ? 1 : 0)));
+        int[] retVal = new int[this.used];
+        for (int i = 0; i < this.used; i++)
+            retVal[i] = this.rows[order[i]];
+        return retVal;
+    }
+
+    /**
+     * @return TRUE if the first row sorts ahead of the second
+     *
+     * @param row1		index of the first row
+     * @param error1	error of the first row
+     * @param row2		index of the second row
+     * @param error2	error of the second row
+     */
+    private boolean isWorse(int row1, double error1, int row2, double error2) {
+        int comp = Double.compare(error2, error1);
+        if (comp == 0)
+            comp = this.idLookup.apply(row1).compareTo(this.idLookup.apply(row2));
+        return (comp < 0);
+    }
+
+    /**
+     * Move an entry toward the root until the heap is valid.  The root is the entry that sorts last.
+     *
+     * @param p		position of the entry to move
+     */
+    private void siftUp(int p) {
+        while (p > 0) {
+            int parent = (p - 1) >> 1;
+            if (! this.isWorse(this.rows[parent], this.errors[parent], this.rows[p], this.errors[p]))
+                break;
+            this.swap(p, parent);
+            p = parent;
+        }
+    }
+
+    /**
+     * Move an entry toward the leaves until the heap is valid.
+     *
+     * @param p		position of the entry to move
+     */
+    private void siftDown(int p) {
+        while (true) {
+            int child = 2 * p + 1;
+            if (child >= this.used)
+                break;
+            if (child + 1 < this.used && this.isWorse(this.rows[child], this.errors[child],
+                    this.rows[child + 1], this.errors[child + 1]))
+                child++;
+            if (! this.isWorse(this.rows[p], this.errors[p], this.rows[child], this.errors[child]))
+                break;
+            this.swap(p, child);
+            p = child;
+        }
+    }
+
+    /**
+     * Swap two heap entries.
+     */
+    private void swap(int i, int j) {
+        int r = this.rows[i];
+        this.rows[i] = this.rows[j];
+        this.rows[j] = r;
+        double e = this.errors[i];
+        this.errors[i] = this.errors[j];
+        this.errors[j] = e;
+    }
+
+}
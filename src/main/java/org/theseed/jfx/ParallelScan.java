@@ -0,0 +1,155 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * This class performs a parallel scan of the rows in a dataset.  The rows are split into chunks across a fork-join
+ * pool.  Each chunk gets its own set of accumulators, and the partial results are merged as the tasks join.  Within a
+ * chunk, every accumulator processes the chunk before moving on, so a single pass through the rows feeds all the
+ * accumulators.
+ *
+ * Unless a pool is specified, the scan runs in the default TaskScheduler's scan pool for the work running in the
+ * calling thread (see TaskScheduler.scanPool()), so that batch scans do not compete equally with interactive ones.
+ *
+ * The accumulators for the first chunk are created in the calling thread before the rows are split.  Creating an
+ * accumulator usually parses the column it needs, so this insures each column is parsed once, before the fork-join
+ * workers start, instead of in one worker while the others wait for it.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ParallelScan extends RecursiveTask<IAccumulator[]> {
+
+    // FIELDS
+    /** serialization ID */
+    private static final long serialVersionUID = 4129548021386587704L;
+    /** minimum number of rows in a chunk */
+    private static final int MIN_CHUNK = 4096;
+    /** factory for creating a set of accumulators */
+    private final Supplier<IAccumulator[]> factory;
+    /** first row to process */
+    private final int start;
+    /** row past the last row to process */
+    private final int end;
+    /** maximum number of rows to process without splitting */
+    private final int chunk;
+    /** function that returns TRUE if the scan has been cancelled */
+    private final BooleanSupplier cancelled;
+    /** accumulators already created for the first chunk of this range, or NULL if none */
+    private final IAccumulator[] seed;
+
+    /**
+     * Construct a scan task for a range of rows.
+     *
+     * @param factory	factory for creating a set of accumulators
+     * @param start		first row to process
+     * @param end		row past the last row to process
+     * @param chunk		maximum number of rows to process without splitting
+     * @param cancelled	function that returns TRUE if the scan has been cancelled
+     * @param seed		accumulators already created for the first chunk, or NULL if none
+     */
+    private ParallelScan(Supplier<IAccumulator[]> factory, int start, int end, int chunk, BooleanSupplier cancelled,
+            IAccumulator[] seed) {
+        this.factory = factory;
+        this.start = start;
+        this.end = end;
+        this.chunk = chunk;
+        this.cancelled = cancelled;
+        this.seed = seed;
+    }
+
+    /**
+     * Scan all the rows in a dataset.
+     *
+     * @param pool		fork-join pool to use
+     * @param size		number of rows to scan
+     * @param factory	factory for creating a set of accumulators; each call must return a new set
+     *
+     * @return the merged accumulators
+     */
+    public static IAccumulator[] run(ForkJoinPool pool, int size, Supplier<IAccumulator[]> factory) {
+        return run(pool, size, factory, () -> false);
+    }
+
+    /**
+     * Scan all the rows in a dataset, checking for cancellation.  The cancellation function is checked before
+     * each chunk is processed.
+     *
+     * @param pool			fork-join pool to use
+     * @param size			number of rows to scan
+     * @param factory		factory for creating a set of accumulators; each call must return a new set
+     * @param cancelled		function that returns TRUE if the scan should stop
+     *
+     * @return the merged accumulators
+     *
+     * @throws CancellationException if the scan was cancelled
+     */
+    public static IAccumulator[] run(ForkJoinPool pool, int size, Supplier<IAccumulator[]> factory,
+            BooleanSupplier cancelled) {
+        // We want about four chunks per thread so that uneven chunks balance out.
+        int chunk = Math.max(MIN_CHUNK, size / (pool.getParallelism() * 4) + 1);
+        ParallelScan task = new ParallelScan(factory, 0, size, chunk, cancelled, factory.get());
+        return pool.invoke(task);
+    }
+
+    /**
+     * Scan all the rows in a dataset using a single accumulator type.
+     *
+     * @param size		number of rows to scan
+     * @param factory	factory for creating a new accumulator
+     *
+     * @return the merged accumulator
+     */
+    public static IAccumulator run(int size, Supplier<IAccumulator> factory) {
+        return run(size, factory, () -> false);
+    }
+
+    /**
+     * Scan all the rows in a dataset using a single accumulator type, checking for cancellation.
+     *
+     * @param size			number of rows to scan
+     * @param factory		factory for creating a new accumulator
+     * @param cancelled		function that returns TRUE if the scan should stop
+     *
+     * @return the merged accumulator
+     *
+     * @throws CancellationException if the scan was cancelled
+     */
+    public static IAccumulator run(int size, Supplier<IAccumulator> factory, BooleanSupplier cancelled) {
+        IAccumulator[] retVal = run(TaskScheduler.getDefault().scanPool(), size,
+                () -> new IAccumulator[] { factory.get() }, cancelled);
+        return retVal[0];
+    }
+
+    @Override
+    protected IAccumulator[] compute() {
+        IAccumulator[] retVal;
+        if (this.cancelled.getAsBoolean())
+            throw new CancellationException("Row scan cancelled.");
+        if (this.end - this.start <= this.chunk) {
+            // Here we have a small range, so we process it directly.
+            retVal = (this.seed != null ? this.seed : this.factory.get());
+            for (IAccumulator acc : retVal)
+                acc.addRange(this.start, this.end);
+        } else {
+            // Split the range in half.  The left half runs in this thread.
+            int mid = (this.start + this.end) >>> 1;
+            ParallelScan right = new ParallelScan(this.factory, mid, this.end, this.chunk, this.cancelled, null);
+            right.fork();
+            ParallelScan left = new ParallelScan(this.factory, this.start, mid, this.chunk, this.cancelled, this.seed);
+            retVal = left.compute();
+            IAccumulator[] rightResult = right.join();
+            for (int i = 0; i < retVal.length; i++)
+                retVal[i].merge(rightResult[i]);
+        }
+        return retVal;
+    }
+
+}
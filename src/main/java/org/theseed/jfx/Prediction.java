@@ -11,6 +11,9 @@ import javafx.scene.control.cell.PropertyValueFactory;
  * This object represents a prediction for a regression model.  It contains the ID, the actual and predicted values, and is
  * sorted by absolute error (highest to lowest) followed by ID.
  *
+ * For large evaluations, use a PredictionCollector to hold the values and select the worst predictions, so that
+ * Prediction objects are only created for the rows actually displayed.
+ *
  * @author Bruce Parrello
  */
 public class Prediction implements Comparable<Prediction> {
@@ -0,0 +1,172 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This object collects the results of a regression evaluation in primitive arrays, so that millions of predictions
+ * can be held without creating a Prediction object for each one.  The worst predictions (by absolute error) are
+ * selected with a bounded heap, split across threads, and only those are converted to Prediction objects for
+ * display in an outlier table.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class PredictionCollector {
+
+    // FIELDS
+    /** IDs of the data points */
+    private String[] ids;
+    /** expected values */
+    private double[] expected;
+    /** predicted values */
+    private double[] predicted;
+    /** number of predictions */
+    private int size;
+
+    /**
+     * Create an empty prediction collector.
+     */
+    public PredictionCollector() {
+        this(1000);
+    }
+
+    /**
+     * Create an empty prediction collector with a specific initial capacity.
+     *
+     * @param capacity	expected number of predictions
+     */
+    public PredictionCollector(int capacity) {
+        capacity = Math.max(capacity, 16);
+        this.ids = new String[capacity];
+        this.expected = new double[capacity];
+        this.predicted = new double[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Add a prediction to this collector.
+     *
+     * @param id			ID of the data point
+     * @param expected		expected value
+     * @param predicted		predicted value
+     */
+    public void add(String id, double expected, double predicted) {
+        if (this.size >= this.ids.length) {
+            int newLength = this.ids.length + (this.ids.length >> 1);
+            this.ids = Arrays.copyOf(this.ids, newLength);
+            this.expected = Arrays.copyOf(this.expected, newLength);
+            this.predicted = Arrays.copyOf(this.predicted, newLength);
+        }
+        this.ids[this.size] = id;
+        this.expected[this.size] = expected;
+        this.predicted[this.size] = predicted;
+        this.size++;
+    }
+
+    /**
+     * @return the number of predictions
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the ID of the specified prediction
+     *
+     * @param idx	index of the prediction
+     */
+    public String getId(int idx) {
+        return this.ids[idx];
+    }
+
+    /**
+     * @return the expected value of the specified prediction
+     *
+     * @param idx	index of the prediction
+     */
+    public double getExpected(int idx) {
+        return this.expected[idx];
+    }
+
+    /**
+     * @return the predicted value of the specified prediction
+     *
+     * @param idx	index of the prediction
+     */
+    public double getPredicted(int idx) {
+        return this.predicted[idx];
+    }
+
+    /**
+     * @return the absolute error of the specified prediction
+     *
+     * @param idx	index of the prediction
+     */
+    public double errorValue(int idx) {
+        return Math.abs(this.expected[idx] - this.predicted[idx]);
+    }
+
+    /**
+     * @return a Prediction object for the specified prediction
+     *
+     * @param idx	index of the prediction
+     */
+    public Prediction getPrediction(int idx) {
+        return new Prediction(this.ids[idx], this.expected[idx], this.predicted[idx]);
+    }
+
+    /**
+     * @return the predictions with the highest absolute error, in Prediction sort order
+     *
+     * @param k		maximum number of predictions to return
+     */
+    public List<Prediction> getOutliers(int k) {
+        OutlierAccumulator worst = (OutlierAccumulator) ParallelScan.run(this.size,
+                () -> new OutlierAccumulator(this, k));
+        int[] rows = worst.heap.sortedRows();
+        List<Prediction> retVal = new ArrayList<Prediction>(rows.length);
+        for (int row : rows)
+            retVal.add(this.getPrediction(row));
+        return retVal;
+    }
+
+    /**
+     * This accumulator keeps the worst predictions in a range.
+     */
+    protected static class OutlierAccumulator implements IAccumulator {
+
+        /** source of the predictions */
+        private PredictionCollector parent;
+        /** heap of the worst predictions */
+        private OutlierHeap heap;
+
+        /**
+         * Create an empty outlier accumulator.
+         *
+         * @param parent	source of the predictions
+         * @param k			number of outliers to keep
+         */
+        protected OutlierAccumulator(PredictionCollector parent, int k) {
+            this.parent = parent;
+            this.heap = new OutlierHeap(k, parent::getId);
+        }
+
+        @Override
+        public void addRange(int start, int end) {
+            for (int i = start; i < end; i++)
+                this.heap.offer(i, this.parent.errorValue(i));
+        }
+
+        @Override
+        public void merge(IAccumulator other) {
+            this.heap.merge(((OutlierAccumulator) other).heap);
+        }
+
+    }
+
+}
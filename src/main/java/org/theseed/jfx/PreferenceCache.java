@@ -0,0 +1,189 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This object is an in-memory copy of a preferences node.  The node is read in bulk the first time it is used.
+ * Changes are made to the memory copy immediately and tracked as dirty; they are copied to the preferences node in a
+ * single batch on a background thread once no further changes have been made for a short delay.  This means a
+ * window that saves its location and size, or many windows closing at once, produce one batch of node updates
+ * instead of many.  The batches are copied under the cache's lock, so a later value is never overwritten by an
+ * earlier one.  The node itself writes to the backing store on its own schedule; we never force a synchronous disk
+ * write for a batch.
+ *
+ * All pending changes are written to the backing store when the JVM shuts down.  An application can also call
+ * flushAll() from its stop() method to make sure the changes are written before exit.
+ *
+ * There is one cache per preferences node, shared by all the preference sets that use the node.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class PreferenceCache {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(PreferenceCache.class);
+    /** map of node paths to caches */
+    private static final Map<String, PreferenceCache> CACHES = new ConcurrentHashMap<String, PreferenceCache>();
+    /** delay after the last change before writing, in milliseconds */
+    public static final long FLUSH_DELAY = 500;
+    /** timer thread for background writes */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(x -> {
+        Thread retVal = new Thread(x, "PreferenceCache-flush");
+        retVal.setDaemon(true);
+        return retVal;
+    });
+    /** preferences node */
+    private final Preferences node;
+    /** current values */
+    private final Map<String, String> values;
+    /** changed values not yet written */
+    private Map<String, String> dirty;
+    /** scheduled write, or NULL if none */
+    private ScheduledFuture<?> pending;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(PreferenceCache::flushAll, "PreferenceCache-shutdown"));
+    }
+
+    /**
+     * Create a cache for a preferences node.
+     *
+     * @param node		preferences node to cache
+     */
+    private PreferenceCache(Preferences node) {
+        this.node = node;
+        this.values = new ConcurrentHashMap<String, String>();
+        this.dirty = new HashMap<String, String>();
+        this.pending = null;
+        // Read the node in bulk.
+        try {
+            for (String key : node.keys()) {
+                String value = node.get(key, null);
+                if (value != null)
+                    this.values.put(key, value);
+            }
+        } catch (BackingStoreException e) {
+            log.warn("Could not read preferences from {}: {}", node.absolutePath(), e.toString());
+        }
+    }
+
+    /**
+     * @return the cache for a preferences node
+     *
+     * @param node		preferences node of interest
+     */
+    public static PreferenceCache get(Preferences node) {
+        return CACHES.computeIfAbsent(node.absolutePath(), x -> new PreferenceCache(node));
+    }
+
+    /**
+     * @return the value of a preference
+     *
+     * @param key		name of the preference
+     * @param defValue	value to return if the preference is not set
+     */
+    public String get(String key, String defValue) {
+        return this.values.getOrDefault(key, defValue);
+    }
+
+    /**
+     * @return the value of a floating-point preference
+     *
+     * @param key		name of the preference
+     * @param defValue	value to return if the preference is not set or is invalid
+     */
+    public double getDouble(String key, double defValue) {
+        double retVal = defValue;
+        String value = this.values.get(key);
+        if (value != null) {
+            try {
+                retVal = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                // Leave the default in place, as Preferences.getDouble does.
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * Store a preference.  The change is written to the backing store after a delay.
+     *
+     * @param key		name of the preference
+     * @param value		new value of the preference
+     */
+    public synchronized void put(String key, String value) {
+        String old = this.values.put(key, value);
+        if (! value.equals(old)) {
+            this.dirty.put(key, value);
+            // Restart the timer, so that a burst of changes is written together.
+            if (this.pending != null)
+                this.pending.cancel(false);
+            this.pending = TIMER.schedule(this::copyChanges, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Store a floating-point preference.  The value is stored in the same form used by Preferences.putDouble.
+     *
+     * @param key		name of the preference
+     * @param value		new value of the preference
+     */
+    public void putDouble(String key, double value) {
+        this.put(key, Double.toString(value));
+    }
+
+    /**
+     * Copy all the pending changes to the preferences node.  This is done under the lock, so that overlapping
+     * calls cannot store an older value after a newer one.
+     */
+    private synchronized void copyChanges() {
+        if (this.pending != null) {
+            this.pending.cancel(false);
+            this.pending = null;
+        }
+        if (! this.dirty.isEmpty()) {
+            for (Map.Entry<String, String> change : this.dirty.entrySet())
+                this.node.put(change.getKey(), change.getValue());
+            log.debug("{} preference changes copied to {}.", this.dirty.size(), this.node.absolutePath());
+            this.dirty.clear();
+        }
+    }
+
+    /**
+     * Write all the pending changes to the backing store.  This forces a synchronous write, so it should only be
+     * used when the application is about to exit.
+     */
+    public void flush() {
+        this.copyChanges();
+        try {
+            this.node.flush();
+        } catch (BackingStoreException e) {
+            log.warn("Could not write preferences to {}: {}", this.node.absolutePath(), e.toString());
+        }
+    }
+
+    /**
+     * Write the pending changes for all the caches to the backing store.
+     */
+    public static void flushAll() {
+        for (PreferenceCache cache : CACHES.values())
+            cache.flush();
+    }
+
+}
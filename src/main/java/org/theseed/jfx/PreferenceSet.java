@@ -10,6 +10,9 @@ import javafx.stage.Stage;
 /**
  * This class contains utilities for managing preferences.
  *
+ * The preferences are read and written through a PreferenceCache, so reads come from memory and writes are batched
+ * and performed in the background.
+ *
  * @author Bruce Parrello
  *
  */
@@ -17,7 +20,7 @@ public class PreferenceSet {
 
     // FIELDS
     /** current preference set */
-    private Preferences prefs;
+    private PreferenceCache prefs;
     /** class name */
     private String name;
 
@@ -27,7 +30,7 @@ public class PreferenceSet {
      * @param object	object whose preferences are desired
      */
     public PreferenceSet(Object target) {
-        this.prefs = Preferences.userNodeForPackage(target.getClass());
+        this.prefs = PreferenceCache.get(Preferences.userNodeForPackage(target.getClass()));
         this.name = target.getClass().getSimpleName();
     }
 
@@ -121,4 +124,11 @@ public class PreferenceSet {
         this.prefs.put(name, newValue);
     }
 
+    /**
+     * Write any pending preference changes to the backing store immediately.
+     */
+    public void flush() {
+        this.prefs.flush();
+    }
+
 }
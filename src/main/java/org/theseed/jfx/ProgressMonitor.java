@@ -0,0 +1,188 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * This object receives progress reports from a running command and passes them on to the background task.  Commands
+ * may report as often as they like, even from several threads; the reports are forwarded to the task no more than
+ * ten times per second, so the JavaFX application thread is not flooded.  The monitor also counts the items
+ * processed and tracks the peak heap usage, which are used to build the task statistics.
+ *
+ * The peak heap usage is taken from the peak usage the JVM records for each heap memory pool, so it does not depend
+ * on how often progress is reported.  The pool peaks are global, so when a monitor starts, the peaks seen so far
+ * are credited to the other running monitors before the pools are reset.  The pools can peak at different times,
+ * so the sum of their peaks may slightly overstate the true peak.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ProgressMonitor {
+
+    // FIELDS
+    /** task to receive the progress */
+    private final BackgroundTask task;
+    /** number of items processed */
+    private final AtomicLong processed;
+    /** total number of items expected, or -1 if unknown */
+    private volatile long total;
+    /** most recent status message */
+    private volatile String message;
+    /** time of the last update forwarded to the task, in nanoseconds */
+    private final AtomicLong lastUpdate;
+    /** highest heap usage seen, in bytes */
+    private final AtomicLong peakHeap;
+    /** monitors whose peak heap usage is being tracked (also used as the lock for resetting the peaks) */
+    private static final Set<ProgressMonitor> ACTIVE = new HashSet<ProgressMonitor>();
+    /** heap memory pools */
+    private static final List<MemoryPoolMXBean> HEAP_POOLS = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(x -> x.getType() == MemoryType.HEAP).collect(Collectors.toList());
+    /** minimum interval between updates, in nanoseconds */
+    private static final long UPDATE_INTERVAL = 100_000_000L;
+
+    /**
+     * Create a progress monitor for a background task.
+     *
+     * @param task	task to receive the progress updates
+     */
+    protected ProgressMonitor(BackgroundTask task) {
+        this.task = task;
+        this.processed = new AtomicLong(0);
+        this.total = -1;
+        this.message = null;
+        this.lastUpdate = new AtomicLong(System.nanoTime() - UPDATE_INTERVAL);
+        this.peakHeap = new AtomicLong(0);
+    }
+
+    /**
+     * Specify the total number of items expected.
+     *
+     * @param total		number of items the command expects to process, or -1 if unknown
+     */
+    public void setTotal(long total) {
+        this.total = total;
+        this.update(false);
+    }
+
+    /**
+     * Record that items have been processed.
+     *
+     * @param count		number of additional items processed
+     */
+    public void add(long count) {
+        this.processed.addAndGet(count);
+        this.update(false);
+    }
+
+    /**
+     * Specify the number of items processed so far.
+     *
+     * @param count		total number of items processed
+     */
+    public void setProcessed(long count) {
+        this.processed.set(count);
+        this.update(false);
+    }
+
+    /**
+     * Specify a status message.
+     *
+     * @param message	message describing what the command is doing
+     */
+    public void setMessage(String message) {
+        this.message = message;
+        this.update(false);
+    }
+
+    /**
+     * @return the number of items processed so far
+     */
+    public long getProcessed() {
+        return this.processed.get();
+    }
+
+    /**
+     * @return the highest heap usage seen so far, in bytes
+     */
+    public long getPeakHeap() {
+        long retVal;
+        synchronized (ACTIVE) {
+            retVal = this.peakHeap.get();
+            if (ACTIVE.contains(this))
+                retVal = Math.max(retVal, poolPeaks());
+        }
+        return retVal;
+    }
+
+    /**
+     * Start tracking the peak heap usage.  This should be called when the command starts.
+     */
+    protected void startHeap() {
+        synchronized (ACTIVE) {
+            // Credit the peaks so far to the monitors already running, then start a new peak for all of us.
+            long peak = poolPeaks();
+            for (ProgressMonitor other : ACTIVE)
+                other.peakHeap.accumulateAndGet(peak, Math::max);
+            long current = 0;
+            for (MemoryPoolMXBean pool : HEAP_POOLS) {
+                if (pool.isValid()) {
+                    pool.resetPeakUsage();
+                    current += pool.getUsage().getUsed();
+                }
+            }
+            this.peakHeap.set(current);
+            ACTIVE.add(this);
+        }
+    }
+
+    /**
+     * Stop tracking the peak heap usage.  This should be called when the command finishes.
+     */
+    protected void stopHeap() {
+        synchronized (ACTIVE) {
+            if (ACTIVE.remove(this))
+                this.peakHeap.accumulateAndGet(poolPeaks(), Math::max);
+        }
+    }
+
+    /**
+     * @return the sum of the peak usages of the heap memory pools since they were last reset, in bytes
+     */
+    private static long poolPeaks() {
+        long retVal = 0;
+        for (MemoryPoolMXBean pool : HEAP_POOLS) {
+            if (pool.isValid())
+                retVal += pool.getPeakUsage().getUsed();
+        }
+        return retVal;
+    }
+
+    /**
+     * Forward the current progress to the task if enough time has passed since the last update.
+     *
+     * @param force		TRUE to forward the progress regardless of the time
+     */
+    protected void update(boolean force) {
+        long now = System.nanoTime();
+        long last = this.lastUpdate.get();
+        if (force || (now - last >= UPDATE_INTERVAL && this.lastUpdate.compareAndSet(last, now))) {
+            long done = this.processed.get();
+            long expected = this.total;
+            if (expected > 0)
+                this.task.postProgress(done, expected);
+            String msg = this.message;
+            if (msg != null)
+                this.task.postMessage(msg);
+        }
+    }
+
+}
@@ -0,0 +1,203 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.Arrays;
+
+/**
+ * This class computes several exact percentiles of an array of values in a single pass of multi-way selection.  The
+ * order statistics needed for all the percentiles are found by one quickselect that only recurses into the partitions
+ * containing requested ranks, so the cost is close to linear rather than the cost of a full sort, and far less than
+ * sorting once per percentile.
+ *
+ * The percentiles are estimated the same way as the default (legacy) estimation in commons-math Percentile:  the
+ * position is p * (n + 1) / 100, values below the first position are the minimum, values past the last position are
+ * the maximum, and anything in between is interpolated between the two neighboring order statistics.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class QuantileSelector {
+
+    // FIELDS
+    /** partitions smaller than this are finished with an insertion sort */
+    private static final int SMALL_PARTITION = 16;
+
+    /**
+     * Compute percentiles of an array of values.  The array is reordered.
+     *
+     * @param values		array of values (will be reordered)
+     * @param n				number of values in the array to use
+     * @param percentiles	array of desired percentiles, each greater than 0 and no more than 100
+     *
+     * @return an array of the requested percentiles, in the order requested; if there are no values, all
+     * 		   of the percentiles are NaN
+     */
+    public static double[] percentiles(double[] values, int n, double... percentiles) {
+        double[] retVal = new double[percentiles.length];
+        if (n == 0)
+            Arrays.fill(retVal, Double.NaN);
+        else {
+            // Compute the zero-based order statistics needed for each percentile.
+            int[] ranks = new int[percentiles.length * 2];
+            for (int i = 0; i < percentiles.length; i++) {
+                double p = percentiles[i];
+                if (p <= 0.0 || p > 100.0)
+                    throw new IllegalArgumentException("Invalid percentile " + p + ".");
+                int lower = lowerRank(p, n);
+                ranks[2 * i] = lower;
+                ranks[2 * i + 1] = Math.min(lower + 1, n - 1);
+            }
+            // Sort the ranks and remove duplicates.
+            Arrays.sort(ranks);
+            int m = 0;
+            for (int i = 0; i < ranks.length; i++) {
+                if (m == 0 || ranks[i] != ranks[m - 1])
+                    ranks[m++] = ranks[i];
+            }
+            // NaN values sort to the end, as they would in Arrays.sort.  Move them there first, so that the
+            // selection only has to deal with ordinary comparisons.
+            int last = n - 1;
+            for (int i = last; i >= 0; i--) {
+                if (Double.isNaN(values[i]))
+                    swap(values, i, last--);
+            }
+            while (m > 0 && ranks[m - 1] > last) m--;
+            // Put all the needed order statistics in their sorted positions.
+            select(values, 0, last, ranks, 0, m - 1);
+            // Interpolate the percentiles.
+            for (int i = 0; i < percentiles.length; i++) {
+                double pos = percentiles[i] * (n + 1) / 100.0;
+                if (pos < 1.0)
+                    retVal[i] = values[0];
+                else if (pos >= n)
+                    retVal[i] = values[n - 1];
+                else {
+                    double fpos = Math.floor(pos);
+                    double lower = values[(int) fpos - 1];
+                    double upper = values[(int) fpos];
+                    retVal[i] = lower + (pos - fpos) * (upper - lower);
+                }
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the zero-based index of the lower order statistic used for a percentile
+     *
+     * @param p		percentile desired
+     * @param n		number of values
+     */
+    private static int lowerRank(double p, int n) {
+        double pos = p * (n + 1) / 100.0;
+        int retVal;
+        if (pos < 1.0)
+            retVal = 0;
+        else if (pos >= n)
+            retVal = n - 1;
+        else
+            retVal = (int) Math.floor(pos) - 1;
+        return retVal;
+    }
+
+    /**
+     * Rearrange a range of values so that the values at each of a sorted list of ranks are in their sorted
+     * positions.
+     *
+     * @param values	array of values
+     * @param lo		index of the first value in the range
+     * @param hi		index of the last value in the range
+     * @param ranks		sorted array of desired ranks
+     * @param rlo		index of the first rank in this range
+     * @param rhi		index of the last rank in this range
+     */
+    private static void select(double[] values, int lo, int hi, int[] ranks, int rlo, int rhi) {
+        while (rlo <= rhi) {
+            if (hi - lo < SMALL_PARTITION) {
+                insertionSort(values, lo, hi);
+                rlo = rhi + 1;
+            } else {
+                // Three-way partition around a median-of-three pivot, so that runs of equal values are handled.
+                double pivot = medianOf3(values[lo], values[(lo + hi) >>> 1], values[hi]);
+                int lt = lo;
+                int gt = hi;
+                int i = lo;
+                while (i <= gt) {
+                    double v = values[i];
+                    if (v < pivot)
+                        swap(values, lt++, i++);
+                    else if (v > pivot)
+                        swap(values, i, gt--);
+                    else
+                        i++;
+                }
+                // Now values[lo..lt-1] < pivot, values[lt..gt] == pivot, values[gt+1..hi] > pivot.
+                int leftEnd = rlo;
+                while (leftEnd <= rhi && ranks[leftEnd] < lt) leftEnd++;
+                int rightStart = leftEnd;
+                while (rightStart <= rhi && ranks[rightStart] <= gt) rightStart++;
+                // Recurse into the smaller side and loop on the larger one.
+                if (leftEnd - rlo < rhi - rightStart + 1) {
+                    select(values, lo, lt - 1, ranks, rlo, leftEnd - 1);
+                    lo = gt + 1;
+                    rlo = rightStart;
+                } else {
+                    select(values, gt + 1, hi, ranks, rightStart, rhi);
+                    hi = lt - 1;
+                    rhi = leftEnd - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the median of three values
+     *
+     * @param a		first value
+     * @param b		second value
+     * @param c		third value
+     */
+    private static double medianOf3(double a, double b, double c) {
+        double retVal;
+        if (a < b)
+            retVal = (b < c ? b : Math.max(a, c));
+        else
+            retVal = (a < c ? a : Math.max(b, c));
+        return retVal;
+    }
+
+    /**
+     * Sort a small range of values.
+     *
+     * @param values	array of values
+     * @param lo		index of the first value in the range
+     * @param hi		index of the last value in the range
+     */
+    private static void insertionSort(double[] values, int lo, int hi) {
+        for (int i = lo + 1; i <= hi; i++) {
+            double v = values[i];
+            int j = i - 1;
+            while (j >= lo && values[j] > v) {
+                values[j + 1] = values[j];
+                j--;
+            }
+            values[j + 1] = v;
+        }
+    }
+
+    /**
+     * Swap two values in an array.
+     *
+     * @param values	array of values
+     * @param i			index of the first value
+     * @param j			index of the second value
+     */
+    private static void swap(double[] values, int i, int j) {
+        double temp = values[i];
+        values[i] = values[j];
+        values[j] = temp;
+    }
+
+}
@@ -0,0 +1,507 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
+import javafx.scene.chart.BarChart;
+import javafx.scene.chart.CategoryAxis;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TitledPane;
+import javafx.scene.layout.VBox;
+
+/**
+ * This analysis summarizes the predictions of a regression model held in a PredictionCollector.  It computes the
+ * root-mean-square error, the mean absolute error, the coefficient of determination (R squared), the bias, and
+ * quantiles of the absolute error, and it finds the worst predictions.  All of this is done in a single parallel pass
+ * over the primitive arrays of the collector:  the sums are merged moment statistics, the error quantiles come from a
+ * t-digest, and the worst predictions are kept in a bounded heap (see OutlierHeap), so a Prediction object is only
+ * created for the predictions actually displayed.
+ *
+ * A second, much cheaper pass counts the residuals (predicted minus expected) into equal-width bins for a histogram.
+ * The bin width is chosen by Scott's rule from the residual standard deviation found in the first pass.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class ResidualAnalysis {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(ResidualAnalysis.class);
+    /** predictions to analyze */
+    private PredictionCollector predictions;
+    /** number of worst predictions to display */
+    private int outliers;
+    /** default number of worst predictions to display */
+    public static final int DEFAULT_OUTLIERS = 20;
+    /** percentiles of the absolute error to display */
+    private static final double[] ERROR_PERCENTILES = new double[] { 50.0, 90.0, 95.0, 99.0 };
+
+    /**
+     * Construct a residual analysis.
+     *
+     * @param predictions	predictions to analyze
+     */
+    public ResidualAnalysis(PredictionCollector predictions) {
+        this.predictions = predictions;
+        this.outliers = DEFAULT_OUTLIERS;
+    }
+
+    /**
+     * Specify the number of worst predictions to display.
+     *
+     * @param outliers	number of predictions to show in the outlier table
+     */
+    public void setOutliers(int outliers) {
+        this.outliers = outliers;
+    }
+
+    /**
+     * @return the residual summary, computed using multiple threads
+     */
+    public Result compute() {
+        return this.compute(() -> false);
+    }
+
+    /**
+     * Compute the residual summary using multiple threads, checking periodically for cancellation.  This can be
+     * called from a background thread.  The predictions must not be changed while the summary is computed.
+     *
+     * @param cancelled		function that returns TRUE if the analysis should stop
+     *
+     * @return the residual summary
+     */
+    public Result compute(BooleanSupplier cancelled) {
+        final int n = this.predictions.size();
+        Accumulator acc = (Accumulator) ParallelScan.run(n, () -> new Accumulator(this.predictions, this.outliers),
+                cancelled);
+        // Choose the histogram bins and count the residuals.
+        double[] edges = acc.binEdges();
+        int[] counts;
+        if (edges.length == 0)
+            counts = new int[0];
+        else
+            counts = ((BinAccumulator) ParallelScan.run(n, () -> new BinAccumulator(this.predictions, edges),
+                    cancelled)).counts;
+        // Convert the worst rows to prediction objects.
+        List<Prediction> worst = new ArrayList<Prediction>(acc.heap.size());
+        for (int row : acc.heap.sortedRows())
+            worst.add(this.predictions.getPrediction(row));
+        return new Result(acc, edges, counts, worst);
+    }
+
+    /**
+     * @return a display of a residual summary:  a statistics table, a residual histogram, and an outlier table
+     *
+     * @param result	residual summary to display
+     */
+    public Node render(Result result) {
+        Node retVal;
+        if (result.getCount() == 0)
+            retVal = new Label("No predictions found.");
+        else {
+            TableView<Stat> stats = new TableView<Stat>();
+            stats.setPrefSize(ColumnAnalysis.DEFAULT_SIZE, ColumnAnalysis.DEFAULT_SIZE);
+            Stat.setupTable(stats);
+            stats.setItems(tableData(result));
+            TableView<Prediction> worst = new TableView<Prediction>();
+            worst.setPrefSize(ColumnAnalysis.DEFAULT_SIZE, ColumnAnalysis.DEFAULT_SIZE);
+            Prediction.setupTable(worst);
+            worst.getItems().setAll(result.getOutliers());
+            retVal = new VBox(stats, histogram(result), worst);
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the list of statistics to display in the statistics table
+     *
+     * @param result	residual summary to display
+     */
+    private static ObservableList<Stat> tableData(Result result) {
+        ObservableList<Stat> retVal = FXCollections.observableArrayList(new Stat.Int("Count", result.getCount()));
+        retVal.add(new Stat("RMSE", result.getRMSE()));
+        retVal.add(new Stat("MAE", result.getMAE()));
+        retVal.add(new Stat("R squared", result.getRSquared()));
+        retVal.add(new Stat("Mean Error", result.getBias()));
+        for (int i = 0; i < ERROR_PERCENTILES.length; i++)
+            retVal.add(new Stat(String.format("|Error| P%d", (int) ERROR_PERCENTILES[i]), result.getErrorPercentile(i)));
+        retVal.add(new Stat("Max |Error|", result.getMaxError()));
+        return retVal;
+    }
+
+    /**
+     * @return a bar chart showing the residual histogram
+     *
+     * @param result	residual summary to display
+     */
+    private static Node histogram(Result result) {
+        CategoryAxis xAxis = new CategoryAxis();
+        xAxis.setLabel("residual");
+        NumberAxis yAxis = new NumberAxis();
+        yAxis.setLabel("count");
+        BarChart<String, Number> retVal = new BarChart<String, Number>(xAxis, yAxis);
+        retVal.setCategoryGap(0.0);
+        retVal.setBarGap(0.0);
+        retVal.setAnimated(false);
+        retVal.setLegendVisible(false);
+        retVal.setPrefSize(ColumnAnalysis.DEFAULT_SIZE, ColumnAnalysis.DEFAULT_SIZE);
+        List<XYChart.Data<String, Number>> bars = new ArrayList<XYChart.Data<String, Number>>();
+        for (int b = 0; b < result.getBinCount(); b++) {
+            // The bin index keeps the category names unique even if the formatted edges are not.
+            String name = String.format("%.4g", result.getBinLow(b));
+            if (b > 0 && name.equals(bars.get(b - 1).getXValue()))
+                name += " (" + (b + 1) + ")";
+            bars.add(new XYChart.Data<String, Number>(name, result.getBinCount(b)));
+        }
+        XYChart.Series<String, Number> series = new XYChart.Series<String, Number>();
+        series.getData().setAll(bars);
+        retVal.getData().add(series);
+        return retVal;
+    }
+
+    /**
+     * @return a pane displaying the residual summary, computed in the calling thread
+     *
+     * @param title		title for the pane
+     */
+    public TitledPane getDisplay(String title) {
+        return ColumnAnalysis.makePane(title, this.render(this.compute()));
+    }
+
+    /**
+     * Create the pane displaying the residual summary without blocking the calling thread.  The computation is
+     * queued as interactive work on the default task scheduler.  The computation can be stopped by passing the
+     * pane to ColumnAnalysis.cancelDisplay().
+     *
+     * This method must be called from the JavaFX application thread.
+     *
+     * @param title		title for the pane
+     *
+     * @return a titled pane that will contain the summary when it is complete
+     */
+    public TitledPane getDisplayAsync(String title) {
+        return this.getDisplayAsync(title, TaskScheduler.getDefault().executor(TaskScheduler.Priority.INTERACTIVE));
+    }
+
+    /**
+     * Create the pane displaying the residual summary without blocking the calling thread.
+     *
+     * @param title		title for the pane
+     * @param executor	executor for the background computation
+     *
+     * @return a titled pane that will contain the summary when it is complete
+     */
+    public TitledPane getDisplayAsync(String title, Executor executor) {
+        return ColumnAnalysis.asyncPane(title, this::compute, this::render, executor);
+    }
+
+    /**
+     * This object contains the summary of a set of predictions.
+     */
+    public static class Result implements IAnalysisResult {
+
+        /** number of predictions */
+        private final int count;
+        /** root-mean-square error */
+        private final double rmse;
+        /** mean absolute error */
+        private final double mae;
+        /** coefficient of determination */
+        private final double rSquared;
+        /** mean residual */
+        private final double bias;
+        /** maximum absolute error */
+        private final double maxError;
+        /** absolute error at each of the display percentiles */
+        private final double[] errorPercentiles;
+        /** residual histogram bin edges */
+        private final double[] edges;
+        /** residual histogram counts */
+        private final int[] counts;
+        /** worst predictions, from worst to least bad */
+        private final List<Prediction> outliers;
+
+        /**
+         * Create the summary from a completed accumulator.
+         *
+         * @param acc			accumulator containing all the predictions
+         * @param edges			residual histogram bin edges
+         * @param counts		residual histogram counts
+         * @param outliers		worst predictions
+         */
+        protected Result(Accumulator acc, double[] edges, int[] counts, List<Prediction> outliers) {
+            this.count = (int) acc.residuals.getN();
+            this.bias = acc.residuals.getMean();
+            if (this.count == 0) {
+                this.rmse = Double.NaN;
+                this.mae = Double.NaN;
+                this.rSquared = Double.NaN;
+                this.maxError = Double.NaN;
+            } else {
+                this.rmse = Math.sqrt(acc.squaredError / this.count);
+                this.mae = acc.absError / this.count;
+                double sst = acc.expected.getVariance() * (this.count - 1);
+                this.rSquared = (sst > 0.0 ? 1.0 - acc.squaredError / sst : Double.NaN);
+                this.maxError = Math.max(-acc.residuals.getMin(), acc.residuals.getMax());
+            }
+            this.errorPercentiles = new double[ERROR_PERCENTILES.length];
+            for (int i = 0; i < ERROR_PERCENTILES.length; i++)
+                this.errorPercentiles[i] = (this.count == 0 ? Double.NaN :
+                        acc.errors.quantile(ERROR_PERCENTILES[i] / 100.0));
+            this.edges = edges;
+            this.counts = counts;
+            this.outliers = outliers;
+        }
+
+        /**
+         * @return the number of predictions
+         */
+        public int getCount() {
+            return this.count;
+        }
+
+        /**
+         * @return the root-mean-square error
+         */
+        public double getRMSE() {
+            return this.rmse;
+        }
+
+        /**
+         * @return the mean absolute error
+         */
+        public double getMAE() {
+            return this.mae;
+        }
+
+        /**
+         * @return the coefficient of determination, or NaN if the expected values are all the same
+         */
+        public double getRSquared() {
+            return this.rSquared;
+        }
+
+        /**
+         * @return the mean residual (predicted minus expected)
+         */
+        public double getBias() {
+            return this.bias;
+        }
+
+        /**
+         * @return the maximum absolute error
+         */
+        public double getMaxError() {
+            return this.maxError;
+        }
+
+        /**
+         * @return the estimated absolute error at one of the display percentiles (50, 90, 95, 99)
+         *
+         * @param i		index of the percentile
+         */
+        public double getErrorPercentile(int i) {
+            return this.errorPercentiles[i];
+        }
+
+        /**
+         * @return the number of residual histogram bins
+         */
+        public int getBinCount() {
+            return this.counts.length;
+        }
+
+        /**
+         * @return the lower edge of a residual histogram bin
+         *
+         * @param b		index of the bin
+         */
+        public double getBinLow(int b) {
+            return this.edges[b];
+        }
+
+        /**
+         * @return the upper edge of a residual histogram bin
+         *
+         * @param b		index of the bin
+         */
+        public double getBinHigh(int b) {
+            return this.edges[b + 1];
+        }
+
+        /**
+         * @return the number of residuals in a histogram bin
+         *
+         * @param b		index of the bin
+         */
+        public int getBinCount(int b) {
+            return this.counts[b];
+        }
+
+        /**
+         * @return the worst predictions, from worst to least bad
+         */
+        public List<Prediction> getOutliers() {
+            return this.outliers;
+        }
+
+    }
+
+    /**
+     * This accumulator computes the error sums, the residual moments, and the error quantile sketch, and keeps the
+     * worst predictions, for a range of predictions.
+     */
+    protected static class Accumulator implements IAccumulator {
+
+        /** source of the predictions */
+        private PredictionCollector source;
+        /** moments of the expected values */
+        private MomentStats expected;
+        /** moments of the residuals */
+        private MomentStats residuals;
+        /** sum of the squared errors */
+        private double squaredError;
+        /** sum of the absolute errors */
+        private double absError;
+        /** quantile sketch of the absolute errors */
+        private TDigest errors;
+        /** worst predictions */
+        private OutlierHeap heap;
+
+        /**
+         * Create an empty accumulator.
+         *
+         * @param source	source of the predictions
+         * @param k			number of worst predictions to keep
+         */
+        protected Accumulator(PredictionCollector source, int k) {
+            this.source = source;
+            this.expected = new MomentStats();
+            this.residuals = new MomentStats();
+            this.squaredError = 0.0;
+            this.absError = 0.0;
+            this.errors = new TDigest(TDigest.DEFAULT_COMPRESSION);
+            this.heap = new OutlierHeap(k, source::getId);
+        }
+
+        @Override
+        public void addRange(int start, int end) {
+            for (int i = start; i < end; i++) {
+                double actual = this.source.getExpected(i);
+                double residual = this.source.getPredicted(i) - actual;
+                double error = Math.abs(residual);
+                this.expected.add(actual);
+                this.residuals.add(residual);
+                this.squaredError += residual * residual;
+                this.absError += error;
+                this.errors.add(error);
+                this.heap.offer(i, error);
+            }
+        }
+
+        @Override
+        public void merge(IAccumulator other) {
+            Accumulator o = (Accumulator) other;
+            this.expected.merge(o.expected);
+            this.residuals.merge(o.residuals);
+            this.squaredError += o.squaredError;
+            this.absError += o.absError;
+            this.errors.merge(o.errors);
+            this.heap.merge(o.heap);
+        }
+
+        /**
+         * @return the edges of equal-width residual histogram bins, chosen by Scott's rule, or an empty array if
+         * 		   there are no residuals
+         */
+        protected double[] binEdges() {
+            double[] retVal;
+            final long n = this.residuals.getN();
+            if (n == 0)
+                retVal = new double[0];
+            else {
+                double min = this.residuals.getMin();
+                double max = this.residuals.getMax();
+                int bins;
+                if (max <= min) {
+                    bins = 1;
+                    min -= 0.5;
+                    max += 0.5;
+                } else {
+                    double width = 3.49 * this.residuals.getStandardDeviation() / Math.cbrt(n);
+                    bins = (width > 0.0 ? (int) Math.ceil((max - min) / width) : 1);
+                    bins = Math.max(1, Math.min(HistogramAnalysis.MAX_BINS, bins));
+                }
+                retVal = new double[bins + 1];
+                for (int b = 0; b < bins; b++)
+                    retVal[b] = min + (max - min) * b / bins;
+                retVal[bins] = max;
+            }
+            return retVal;
+        }
+
+    }
+
+    /**
+     * This accumulator counts the residuals in each histogram bin for a range of predictions.
+     */
+    protected static class BinAccumulator implements IAccumulator {
+
+        /** source of the predictions */
+        private PredictionCollector source;
+        /** lower edge of the first bin */
+        private double low;
+        /** reciprocal of the bin width */
+        private double scale;
+        /** count for each bin */
+        private int[] counts;
+
+        /**
+         * Create an empty accumulator.
+         *
+         * @param source	source of the predictions
+         * @param edges		equal-width bin edges
+         */
+        protected BinAccumulator(PredictionCollector source, double[] edges) {
+            this.source = source;
+            final int bins = edges.length - 1;
+            this.low = edges[0];
+            this.scale = bins / (edges[bins] - edges[0]);
+            this.counts = new int[bins];
+        }
+
+        @Override
+        public void addRange(int start, int end) {
+            final int last = this.counts.length - 1;
+            for (int i = start; i < end; i++) {
+                double residual = this.source.getPredicted(i) - this.source.getExpected(i);
+                int b = (int) ((residual - this.low) * this.scale);
+                this.counts[Math.max(0, Math.min(last, b))]++;
+            }
+        }
+
+        @Override
+        public void merge(IAccumulator other) {
+            int[] theirs = ((BinAccumulator) other).counts;
+            for (int b = 0; b < this.counts.length; b++)
+                this.counts[b] += theirs[b];
+        }
+
+    }
+
+}
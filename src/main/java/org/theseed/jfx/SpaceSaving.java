@@ -0,0 +1,248 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This is a Space-Saving heavy-hitters sketch.  It tracks at most a fixed number of distinct strings.  When a new
+ * string arrives and the sketch is full, the string with the lowest count is replaced, and the new string inherits
+ * that count as its error.  Every string whose true frequency exceeds N / capacity (where N is the number of strings
+ * counted) is guaranteed to be in the sketch, and each count is an overestimate by at most the recorded error.
+ *
+ * The counters are kept in a binary min-heap, so each update takes logarithmic time in the capacity.  Two sketches
+ * can be merged using the method of Agarwal et al., which preserves the same guarantees.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class SpaceSaving {
+
+    // FIELDS
+    /** maximum number of strings to track */
+    private final int capacity;
+    /** strings in the heap */
+    private String[] keys;
+    /** counts in the heap */
+    private long[] counts;
+    /** errors in the heap */
+    private long[] errors;
+    /** number of entries in the heap */
+    private int used;
+    /** map from strings to heap positions */
+    private Map<String, Integer> positions;
+    /** total number of strings counted */
+    private long total;
+
+    /**
+     * Create an empty sketch.
+     *
+     * @param capacity	maximum number of strings to track
+     */
+    public SpaceSaving(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Sketch capacity must be positive.");
+        this.capacity = capacity;
+        this.keys = new String[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.used = 0;
+        this.positions = new HashMap<String, Integer>(capacity * 2);
+        this.total = 0;
+    }
+
+    /**
+     * Count an occurrence of a string.
+     *
+     * @param key	string to count
+     */
+    public void add(String key) {
+        this.add(key, 1, 0);
+    }
+
+    /**
+     * Add a weighted count for a string.
+     *
+     * @param key		string to count
+     * @param count		number of occurrences
+     * @param error		maximum overestimate already in the count
+     */
+    private void add(String key, long count, long error) {
+        this.total += count;
+        Integer pos = this.positions.get(key);
+        if (pos != null) {
+            int p = pos;
+            this.counts[p] += count;
+            this.errors[p] += error;
+            this.siftDown(p);
+        } else if (this.used < this.capacity) {
+            int p = this.used++;
+            this.keys[p] = key;
+            this.counts[p] = count;
+            this.errors[p] = error;
+            this.positions.put(key, p);
+            this.siftUp(p);
+        } else {
+            // Replace the minimum entry, which is at the root.
+            long min = this.counts[0];
+            this.positions.remove(this.keys[0]);
+            this.keys[0] = key;
+            this.counts[0] = min + count;
+            this.errors[0] = min + error;
+            this.positions.put(key, 0);
+            this.siftDown(0);
+        }
+    }
+
+    /**
+     * Merge another sketch into this one.  A string missing from a full sketch could have had a count as high as
+     * that sketch's minimum, so the minimum is added to both its count and its error.
+     *
+     * @param other		sketch to merge
+     */
+    public void merge(SpaceSaving other) {
+        long thisMin = this.minCount();
+        long otherMin = other.minCount();
+        Set<String> allKeys = new HashSet<String>(this.positions.keySet());
+        allKeys.addAll(other.positions.keySet());
+        List<String> newKeys = new ArrayList<String>(allKeys.size());
+        List<long[]> newValues = new ArrayList<long[]>(allKeys.size());
+        for (String key : allKeys) {
+            Integer p1 = this.positions.get(key);
+            Integer p2 = other.positions.get(key);
+            long count = (p1 != null ? this.counts[p1] : thisMin) + (p2 != null ? other.counts[p2] : otherMin);
+            long error = (p1 != null ? this.errors[p1] : thisMin) + (p2 != null ? other.errors[p2] : otherMin);
+            newKeys.add(key);
+            newValues.add(new long[] { count, error });
+        }
+        // Rebuild this sketch from the highest counts.
+        long newTotal = this.total + other.total;
+        this.used = 0;
+        this.positions.clear();
+        for (int i = 0; i < newKeys.size(); i++) {
+            long[] value = newValues.get(i);
+            if (this.used < this.capacity) {
+                int p = this.used++;
+                this.keys[p] = newKeys.get(i);
+                this.counts[p] = value[0];
+                this.errors[p] = value[1];
+                this.positions.put(this.keys[p], p);
+                this.siftUp(p);
+            } else if (value[0] > this.counts[0]) {
+                this.positions.remove(this.keys[0]);
+                this.keys[0] = newKeys.get(i);
+                this.counts[0] = value[0];
+                this.errors[0] = value[1];
+                this.positions.put(this.keys[0], 0);
+                this.siftDown(0);
+            }
+        }
+        this.total = newTotal;
+    }
+
+    /**
+     * @return the lowest count in the sketch if it is full, else 0
+     */
+    public long minCount() {
+        return (this.used < this.capacity ? 0 : this.counts[0]);
+    }
+
+    /**
+     * @return the maximum frequency of a string not in the sketch
+     */
+    public long errorBound() {
+        return this.minCount();
+    }
+
+    /**
+     * @return the total number of strings counted
+     */
+    public long getTotal() {
+        return this.total;
+    }
+
+    /**
+     * @return the set of strings currently tracked
+     */
+    public Set<String> keys() {
+        return this.positions.keySet();
+    }
+
+    /**
+     * @return the estimated count for a string (an upper bound on the true count)
+     *
+     * @param key	string whose count is desired
+     */
+    public long getCount(String key) {
+        Integer pos = this.positions.get(key);
+        return (pos == null ? this.minCount() : this.counts[pos]);
+    }
+
+    /**
+     * @return the maximum overestimate in the count for a string
+     *
+     * @param key	string whose error is desired
+     */
+    public long getError(String key) {
+        Integer pos = this.positions.get(key);
+        return (pos == null ? this.minCount() : this.errors[pos]);
+    }
+
+    /**
+     * Move an entry toward the root until the heap is valid.
+     *
+     * @param p		position of the entry to move
+     */
+    private void siftUp(int p) {
+        while (p > 0) {
+            int parent = (p - 1) >> 1;
+            if (this.counts[parent] <= this.counts[p])
+                break;
+            this.swap(p, parent);
+            p = parent;
+        }
+    }
+
+    /**
+     * Move an entry toward the leaves until the heap is valid.
+     *
+     * @param p		position of the entry to move
+     */
+    private void siftDown(int p) {
+        while (true) {
+            int child = 2 * p + 1;
+            if (child >= this.used)
+                break;
+            if (child + 1 < this.used && this.counts[child + 1] < this.counts[child])
+                child++;
+            if (this.counts[p] <= this.counts[child])
+                break;
+            this.swap(p, child);
+            p = child;
+        }
+    }
+
+    /**
+     * Swap two heap entries.
+     */
+    private void swap(int i, int j) {
+        String k = this.keys[i];
+        this.keys[i] = this.keys[j];
+        this.keys[j] = k;
+        long t = this.counts[i];
+        this.counts[i] = this.counts[j];
+        this.counts[j] = t;
+        t = this.errors[i];
+        this.errors[i] = this.errors[j];
+        this.errors[j] = t;
+        this.positions.put(this.keys[i], i);
+        this.positions.put(this.keys[j], j);
+    }
+
+}
@@ -3,10 +3,12 @@
  */
 package org.theseed.jfx;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -24,11 +26,30 @@ import org.apache.commons.math3.util.ResizableDoubleArray;
  * the relationship between the column values and the classifications.  For a continuous column value, a scatter plot is used
  * with a category axis in the x-dimension.  For a discrete column value, a bar chart is used.
  *
+ * A scatter chart needs a scene graph node for every point, so for large datasets we only plot a limited number of
+ * points per label.  When a label has more values than the point budget, the points plotted are evenly spaced
+ * order statistics of its values, which always include the minimum and maximum and preserve the shape of the spread.
+ *
+ * In box-plot mode, a continuous column is summarized instead:  each label gets its quartiles, its whiskers (the most
+ * extreme values within 1.5 interquartile ranges of the box), and the number of outliers beyond each whisker.
+ * Infinite values are counted as outliers, and NaN values are left out of the box.  The plot is drawn on a canvas
+ * (see BoxPlot), so the cost of rendering depends on the number of labels rather than the number of rows.
+ *
  * @author Bruce Parrello
  *
  */
 public class SpreadColumnAnalysis extends ColumnAnalysis {
 
+    // FIELDS
+    /** maximum number of points to plot for each label */
+    private int pointBudget;
+    /** default point budget */
+    public static final int DEFAULT_POINT_BUDGET = 1000;
+    /** TRUE to summarize continuous columns in a box plot */
+    private boolean boxPlot;
+    /** multiple of the interquartile range beyond which a value is an outlier */
+    private static final double WHISKER_RANGE = 1.5;
+
     /**
      * Initialize the spread analysis.
      *
@@ -38,59 +59,124 @@ public class SpreadColumnAnalysis extends ColumnAnalysis {
      */
     public SpreadColumnAnalysis(Collection<String[]> data, int labelIdx, List<String> labels) {
         super(data, labelIdx);
+        this.pointBudget = DEFAULT_POINT_BUDGET;
+        this.boxPlot = false;
+    }
+
+    /**
+     * Initialize the spread analysis for a columnar dataset.
+     *
+     * @param data		dataset to analyze
+     * @param labelIdx	label column index
+     * @param labels	list of label names
+     */
+    public SpreadColumnAnalysis(ColumnDataset data, int labelIdx, List<String> labels) {
+        super(data, labelIdx);
+        this.pointBudget = DEFAULT_POINT_BUDGET;
+        this.boxPlot = false;
+    }
+
+    /**
+     * Specify the maximum number of points to plot for each label in a scatter chart.
+     *
+     * @param pointBudget	maximum number of points per label (at least 2)
+     */
+    public void setPointBudget(int pointBudget) {
+        if (pointBudget < 2)
+            throw new IllegalArgumentException("Point budget must be at least 2.");
+        this.pointBudget = pointBudget;
+    }
+
+    /**
+     * @return the maximum number of points plotted for each label
+     */
+    public int getPointBudget() {
+        return this.pointBudget;
+    }
+
+    /**
+     * Specify whether continuous columns should be summarized in a box plot.
+     *
+     * @param boxPlot	TRUE to draw one box per label, FALSE to plot the individual values
+     */
+    public void setBoxPlot(boolean boxPlot) {
+        this.boxPlot = boxPlot;
+    }
+
+    /**
+     * @return TRUE if continuous columns are summarized in a box plot
+     */
+    public boolean isBoxPlot() {
+        return this.boxPlot;
     }
 
     @Override
     protected Node getAnalysis(Iter column) {
-        // First, we must determine what sort of graph we need.  We recognize two possibilities:  every value is 1.0 or 0.0, or
-        // we have a spectrum.  We will create a map from label values to input column values.  If we find something other
-        // than 1.0 or 0.0, we flag it.
-        boolean continuous = false;
-        Map<String, ResizableDoubleArray> labelMap = new TreeMap<String, ResizableDoubleArray>();
-        // These are used to compute the mean.
-        double total = 0.0;
-        int count = 0;
-        while (column.hasNext()) {
-            try {
-                // Get the value in this row.
-                double value = Double.parseDouble(column.next());
-                // Add it to the output map.
-                String label = column.getLabel();
-                ResizableDoubleArray labelArray = labelMap.computeIfAbsent(label, x -> new ResizableDoubleArray(100));
-                labelArray.addElement(value);
-                // Update the continuous flag.
-                if (value != 0.0 && value != 1.0) continuous = true;
-                // Count this value.
-                total += value;
-                count++;
-            } catch (NumberFormatException e) {
-                // For an invalid value, we simply skip the row.
-            }
-        }
+        return this.render(this.compute(column.getColIdx()));
+    }
+
+    @Override
+    protected boolean usesAccumulator() {
+        return true;
+    }
+
+    @Override
+    protected IAccumulator createAccumulator(int colIdx) {
+        return new Accumulator(this.getData().getNumeric(colIdx), this.getLabels());
+    }
+
+    @Override
+    protected IAccumulator extend(IAccumulator acc, int colIdx) {
+        Accumulator retVal = (Accumulator) acc;
+        // If new labels were added, the label column has a new dictionary, so the per-label data must be renumbered.
+        CodedColumn labels = this.getLabels();
+        if (! labels.sameDictionary(retVal.labels))
+            retVal = retVal.renumber(labels);
+        return retVal;
+    }
+
+    @Override
+    protected String getOptionKey() {
+        return (this.boxPlot ? "box" : Integer.toString(this.pointBudget));
+    }
+
+    @Override
+    protected IAnalysisResult finish(IAccumulator result, BooleanSupplier cancelled) {
+        // The point reduction and the box summaries reorder the values, so we do them here rather than on the
+        // application thread.
+        return new Result((Accumulator) result, this.pointBudget, this.boxPlot);
+    }
+
+    @Override
+    protected Node render(IAnalysisResult result) {
+        Result spread = (Result) result;
         // We have three cases:  no data, continuous input values, and discrete input values.
         Node retVal;
-        if (count == 0)
+        if (spread.getCount() == 0)
             retVal = new Label("No numeric data points found.");
-        else if (continuous)
-            retVal = this.continuousScatterChart(labelMap, total, count);
+        else if (spread.isBoxPlot()) {
+            BoxPlot plot = new BoxPlot();
+            updateBoxPlot(plot, spread);
+            retVal = plot;
+        } else if (spread.isContinuous())
+            retVal = this.continuousScatterChart(spread);
         else
-            retVal = this.discreteBarChart(labelMap, count);
+            retVal = this.discreteBarChart(spread);
         return retVal;
     }
 
     /**
      * Create a bar chart for the case where we have two input values:  1.0 and 0.0.
      *
-     * @param labelMap	map of label classes to value lists
-     * @param count		number of input values
+     * @param spread	result containing the 0 and 1 counts for each label
      *
      * @return a bar chart showing the correlation
      */
-    private Node discreteBarChart(Map<String, ResizableDoubleArray> labelMap, int count) {
+    private Node discreteBarChart(Result spread) {
         // We have one bar for each label name.  The bar is divided between 1.0 and 0.0 counts.
         CategoryAxis xAxis = new CategoryAxis();
         xAxis.setLabel("class");
-        ObservableList<String> labels = FXCollections.observableArrayList(labelMap.keySet());
+        ObservableList<String> labels = FXCollections.observableArrayList(spread.getLabels());
         xAxis.setCategories(labels);
         NumberAxis yAxis = new NumberAxis();
         yAxis.setLabel("count");
@@ -101,21 +187,10 @@ public class SpreadColumnAnalysis extends ColumnAnalysis {
         presentSeries.setName("present");
         absentSeries.setName("absent");
         // Loop through the label data.
-        for (Map.Entry<String, ResizableDoubleArray> labelEntry : labelMap.entrySet()) {
-            String label = labelEntry.getKey();
-            // Count the 1s and 0s for this label.
-            int nullCount = 0;
-            int oneCount = 0;
-            ResizableDoubleArray values = labelEntry.getValue();
-            for (int i = 0; i < values.getNumElements(); i++) {
-                double value = values.getElement(i);
-                if (value == 0.0)
-                    nullCount++;
-                else
-                    oneCount++;
-            }
-            absentSeries.getData().add(new XYChart.Data<String, Number>(label, nullCount));
-            presentSeries.getData().add(new XYChart.Data<String, Number>(label, oneCount));
+        for (int i = 0; i < spread.getLabelCount(); i++) {
+            String label = spread.getLabel(i);
+            absentSeries.getData().add(new XYChart.Data<String, Number>(label, spread.getZeroCount(i)));
+            presentSeries.getData().add(new XYChart.Data<String, Number>(label, spread.getOneCount(i)));
         }
         // Add the bars to the chart.
         retVal.getData().add(presentSeries);
@@ -123,48 +198,563 @@ public class SpreadColumnAnalysis extends ColumnAnalysis {
         return retVal;
     }
 
+    /**
+     * Store the box summaries from a result in a box plot.
+     *
+     * @param plot		box plot to update
+     * @param spread	result containing the box summaries for each label
+     */
+    private static void updateBoxPlot(BoxPlot plot, Result spread) {
+        final int n = spread.getLabelCount();
+        double[][] boxes = new double[n][];
+        int[] low = new int[n];
+        int[] high = new int[n];
+        for (int i = 0; i < n; i++) {
+            boxes[i] = spread.getBox(i);
+            low[i] = spread.getLowOutliers(i);
+            high[i] = spread.getHighOutliers(i);
+        }
+        plot.setData(spread.getLabels(), boxes, low, high);
+    }
+
     /**
      * Create a scatter chart for the case where we have continuous input values.
      *
-     * @param labelMap	map of label classes to value lists
-     * @param total		sum of all input values
-     * @param count		number of input values
+     * @param spread	result containing the points to plot for each label
      *
      * @return a scatter chart showing the spread
      */
-    private Node continuousScatterChart(Map<String, ResizableDoubleArray> labelMap, double total, int count) {
-        // Compute the mean.
-        double mean = total / count;
+    private Node continuousScatterChart(Result spread) {
         // Create the chart.  The x-axis is the labels, and is string data.
         CategoryAxis xAxis = new CategoryAxis();
         xAxis.setLabel("class");
-        ObservableList<String> labels = FXCollections.observableArrayList(labelMap.keySet());
+        ObservableList<String> labels = FXCollections.observableArrayList(spread.getLabels());
         xAxis.setCategories(labels);
         NumberAxis yAxis = new NumberAxis();
         yAxis.setLabel("count");
         ScatterChart<String, Number> retVal = new ScatterChart<String, Number>(xAxis, yAxis);
         retVal.setLegendVisible(false);
-        // We have two series-- one above the mean and one below.
-        XYChart.Series<String, Number> highSeries = new XYChart.Series<String, Number>();
-        XYChart.Series<String, Number> lowSeries = new XYChart.Series<String, Number>();
-        // Loop through the labels, updating the two series.
-        for (Map.Entry<String, ResizableDoubleArray> labelEntry : labelMap.entrySet()) {
-            String label = labelEntry.getKey();
-            ResizableDoubleArray values = labelEntry.getValue();
+        // We have two series-- one above the mean and one below.  We build the point lists first so that
+        // each series is only updated once.
+        List<XYChart.Data<String, Number>> highPoints = new ArrayList<XYChart.Data<String, Number>>();
+        List<XYChart.Data<String, Number>> lowPoints = new ArrayList<XYChart.Data<String, Number>>();
+        int plotted = scatterPoints(spread, lowPoints, highPoints);
+        // Add the series to the chart.
+        XYChart.Series<String, Number> highSeries = new XYChart.Series<String, Number>(FXCollections.observableArrayList(highPoints));
+        XYChart.Series<String, Number> lowSeries = new XYChart.Series<String, Number>(FXCollections.observableArrayList(lowPoints));
+        retVal.getData().add(lowSeries);
+        retVal.getData().add(highSeries);
+        retVal.setTitle(scatterTitle(plotted, spread.getCount()));
+        return retVal;
+    }
+
+    /**
+     * Build the points for a scatter chart.
+     *
+     * @param spread		result containing the points to plot for each label
+     * @param lowPoints		list to receive the points at or below the mean
+     * @param highPoints	list to receive the points above the mean
+     *
+     * @return the number of points plotted
+     */
+    private static int scatterPoints(Result spread, List<XYChart.Data<String, Number>> lowPoints,
+            List<XYChart.Data<String, Number>> highPoints) {
+        double mean = spread.getMean();
+        int retVal = 0;
+        // Loop through the labels, updating the two lists.
+        for (int i = 0; i < spread.getLabelCount(); i++) {
+            String label = spread.getLabel(i);
+            double[] values = spread.getPoints(i);
             // For each label, we loop through the values.
-            for (int i = 0; i < values.getNumElements(); i++) {
-                double value = values.getElement(i);
+            for (double value : values) {
                 XYChart.Data<String, Number> point = new XYChart.Data<String, Number>(label, value);
                 if (value > mean)
-                    highSeries.getData().add(point);
+                    highPoints.add(point);
                 else
-                    lowSeries.getData().add(point);
+                    lowPoints.add(point);
             }
+            retVal += values.length;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the title for a scatter chart, or NULL if all the points are shown
+     *
+     * @param plotted	number of points plotted
+     * @param count		number of values
+     */
+    private static String scatterTitle(int plotted, int count) {
+        return (plotted < count ? String.format("%d of %d points shown", plotted, count) : null);
+    }
+
+    @Override
+    protected boolean update(Node display, IAnalysisResult result) {
+        Result spread = (Result) result;
+        boolean retVal = false;
+        if (spread.getCount() > 0 && spread.isBoxPlot() && display instanceof BoxPlot) {
+            updateBoxPlot((BoxPlot) display, spread);
+            retVal = true;
+        } else if (spread.getCount() > 0 && spread.isContinuous() && ! spread.isBoxPlot()
+                && display instanceof ScatterChart) {
+            @SuppressWarnings("unchecked")
+            ScatterChart<String, Number> chart = (ScatterChart<String, Number>) display;
+            updateCategories(chart, spread);
+            // Replace the points in the existing series.
+            List<XYChart.Data<String, Number>> highPoints = new ArrayList<XYChart.Data<String, Number>>();
+            List<XYChart.Data<String, Number>> lowPoints = new ArrayList<XYChart.Data<String, Number>>();
+            int plotted = scatterPoints(spread, lowPoints, highPoints);
+            chart.getData().get(0).getData().setAll(lowPoints);
+            chart.getData().get(1).getData().setAll(highPoints);
+            chart.setTitle(scatterTitle(plotted, spread.getCount()));
+            retVal = true;
+        } else if (spread.getCount() > 0 && ! spread.isContinuous() && display instanceof StackedBarChart) {
+            @SuppressWarnings("unchecked")
+            StackedBarChart<String, Number> chart = (StackedBarChart<String, Number>) display;
+            updateCategories(chart, spread);
+            // Update the bar for each label, adding bars for new labels.
+            XYChart.Series<String, Number> presentSeries = chart.getData().get(0);
+            XYChart.Series<String, Number> absentSeries = chart.getData().get(1);
+            for (int i = 0; i < spread.getLabelCount(); i++) {
+                String label = spread.getLabel(i);
+                updateBar(presentSeries, label, spread.getOneCount(i));
+                updateBar(absentSeries, label, spread.getZeroCount(i));
+            }
+            retVal = true;
+        }
+        return retVal;
+    }
+
+    /**
+     * Add any new labels to the category axis of a chart.
+     *
+     * @param chart		chart to update
+     * @param spread	result containing the labels
+     */
+    private static void updateCategories(XYChart<String, Number> chart, Result spread) {
+        CategoryAxis xAxis = (CategoryAxis) chart.getXAxis();
+        if (! xAxis.getCategories().equals(spread.getLabels()))
+            xAxis.getCategories().setAll(spread.getLabels());
+    }
+
+    /**
+     * Update the value of a bar in a bar chart series, or add the bar if it does not exist.
+     *
+     * @param series	series containing the bar
+     * @param label		category of the bar
+     * @param count		new value for the bar
+     */
+    private static void updateBar(XYChart.Series<String, Number> series, String label, int count) {
+        boolean found = false;
+        for (XYChart.Data<String, Number> bar : series.getData()) {
+            if (bar.getXValue().equals(label)) {
+                bar.setYValue(count);
+                found = true;
+            }
+        }
+        if (! found)
+            series.getData().add(new XYChart.Data<String, Number>(label, count));
+    }
+
+    /**
+     * @return the values to plot for a label, reduced to the specified budget
+     *
+     * @param values	array of values for the label
+     * @param budget	maximum number of values to return
+     */
+    protected static double[] decimate(ResizableDoubleArray values, int budget) {
+        double[] retVal = values.getElements();
+        final int n = retVal.length;
+        if (n > budget) {
+            // Pick evenly-spaced order statistics from the sorted values.
+            Arrays.sort(retVal);
+            double[] picked = new double[budget];
+            for (int k = 0; k < budget; k++)
+                picked[k] = retVal[(int) Math.round(k * (n - 1) / (double) (budget - 1))];
+            retVal = picked;
         }
-        // Add the series to the chart.
-        retVal.getData().add(lowSeries);
-        retVal.getData().add(highSeries);
         return retVal;
     }
 
+    /**
+     * @return the five-number box summary for a label's finite values (see the BoxPlot index constants), with the
+     * 		   number of low and high outliers stored in the last two positions; infinite values are counted as
+     * 		   outliers and NaN values are skipped, and if there are no finite values the five numbers are NaN
+     *
+     * @param values	array of values for the label
+     */
+    protected static double[] boxSummary(ResizableDoubleArray values) {
+        double[] data = values.getElements();
+        // Move the finite values to the front of the array.  The selection and the whiskers only use those.
+        int n = 0;
+        int lowOutliers = 0;
+        int highOutliers = 0;
+        for (int i = 0; i < data.length; i++) {
+            double v = data[i];
+            if (Double.isFinite(v)) {
+                data[n] = v;
+                n++;
+            } else if (v == Double.NEGATIVE_INFINITY)
+                lowOutliers++;
+            else if (v == Double.POSITIVE_INFINITY)
+                highOutliers++;
+        }
+        double[] quartiles = QuantileSelector.percentiles(data, n, 25.0, 50.0, 75.0);
+        double iqr = quartiles[2] - quartiles[0];
+        double lowFence = quartiles[0] - WHISKER_RANGE * iqr;
+        double highFence = quartiles[2] + WHISKER_RANGE * iqr;
+        // The whiskers are the most extreme values inside the fences.
+        double lowWhisker = quartiles[0];
+        double highWhisker = quartiles[2];
+        for (int i = 0; i < n; i++) {
+            double v = data[i];
+            if (v < lowFence)
+                lowOutliers++;
+            else if (v > highFence)
+                highOutliers++;
+            else {
+                lowWhisker = Math.min(lowWhisker, v);
+                highWhisker = Math.max(highWhisker, v);
+            }
+        }
+        return new double[] { lowWhisker, quartiles[0], quartiles[1], quartiles[2], highWhisker, lowOutliers,
+                highOutliers };
+    }
+
+    /**
+     * This object contains the spread computed for a column.  For a continuous column, it has the points to plot for
+     * each label, already reduced to the point budget, or in box-plot mode the box summary for each label; for a 0/1
+     * column, it has the counts of each value for each label.
+     */
+    public static class Result implements IAnalysisResult {
+
+        /** TRUE if we found a value other than 1.0 or 0.0 */
+        private final boolean continuous;
+        /** mean of the values */
+        private final double mean;
+        /** number of values */
+        private final int count;
+        /** label names, in sorted order */
+        private final List<String> labels;
+        /** points to plot for each label (continuous case) */
+        private final double[][] points;
+        /** box summary for each label, followed by the outlier counts (continuous box-plot case) */
+        private final double[][] boxes;
+        /** number of 0.0 values for each label (discrete case) */
+        private final int[] zeroCounts;
+        /** number of 1.0 values for each label (discrete case) */
+        private final int[] oneCounts;
+
+        /**
+         * Create the result from a completed accumulator.
+         *
+         * @param acc		accumulator containing all the rows of the column
+         * @param budget	maximum number of points to plot per label
+         * @param boxPlot	TRUE to compute box summaries instead of points for a continuous column
+         */
+        protected Result(Accumulator acc, int budget, boolean boxPlot) {
+            this.continuous = acc.continuous;
+            this.count = acc.count;
+            this.mean = (acc.count > 0 ? acc.total / acc.count : Double.NaN);
+            // Only the labels that have values are included.  The dictionary is sorted, so these are in label order.
+            this.labels = new ArrayList<String>();
+            final int codes = acc.zeroCounts.length;
+            for (int code = 0; code < codes; code++) {
+                if (acc.labelCount(code) > 0)
+                    this.labels.add(acc.labels.getValue(code));
+            }
+            final int n = this.labels.size();
+            this.points = (this.continuous && ! boxPlot ? new double[n][] : null);
+            this.boxes = (this.continuous && boxPlot ? new double[n][] : null);
+            this.zeroCounts = new int[n];
+            this.oneCounts = new int[n];
+            int i = 0;
+            for (int code = 0; code < codes; code++) {
+                if (acc.labelCount(code) > 0) {
+                    if (this.boxes != null)
+                        this.boxes[i] = boxSummary(acc.values[code]);
+                    else if (this.continuous)
+                        this.points[i] = decimate(acc.values[code], budget);
+                    else {
+                        this.zeroCounts[i] = acc.zeroCounts[code];
+                        this.oneCounts[i] = acc.oneCounts[code];
+                    }
+                    i++;
+                }
+            }
+        }
+
+        /**
+         * @return TRUE if the column has values other than 0 and 1
+         */
+        public boolean isContinuous() {
+            return this.continuous;
+        }
+
+        /**
+         * @return TRUE if the column is continuous and summarized by box plots
+         */
+        public boolean isBoxPlot() {
+            return this.boxes != null;
+        }
+
+        /**
+         * @return the mean of the values
+         */
+        public double getMean() {
+            return this.mean;
+        }
+
+        /**
+         * @return the number of valid values
+         */
+        public int getCount() {
+            return this.count;
+        }
+
+        /**
+         * @return the label names, in sorted order
+         */
+        public List<String> getLabels() {
+            return Collections.unmodifiableList(this.labels);
+        }
+
+        /**
+         * @return the number of labels
+         */
+        public int getLabelCount() {
+            return this.labels.size();
+        }
+
+        /**
+         * @return the name of the specified label
+         *
+         * @param i		index of the label
+         */
+        public String getLabel(int i) {
+            return this.labels.get(i);
+        }
+
+        /**
+         * @return the points to plot for the specified label (continuous case only)
+         *
+         * @param i		index of the label
+         */
+        public double[] getPoints(int i) {
+            return this.points[i];
+        }
+
+        /**
+         * @return the five-number summary for the specified label, indexed by the BoxPlot index constants
+         * 		   (box-plot case only)
+         *
+         * @param i		index of the label
+         */
+        public double[] getBox(int i) {
+            return Arrays.copyOf(this.boxes[i], BoxPlot.HIGH_WHISKER + 1);
+        }
+
+        /**
+         * @return the number of values below the low whisker for the specified label (box-plot case only)
+         *
+         * @param i		index of the label
+         */
+        public int getLowOutliers(int i) {
+            return (int) this.boxes[i][BoxPlot.HIGH_WHISKER + 1];
+        }
+
+        /**
+         * @return the number of values above the high whisker for the specified label (box-plot case only)
+         *
+         * @param i		index of the label
+         */
+        public int getHighOutliers(int i) {
+            return (int) this.boxes[i][BoxPlot.HIGH_WHISKER + 2];
+        }
+
+        /**
+         * @return the number of 0.0 values for the specified label (discrete case only)
+         *
+         * @param i		index of the label
+         */
+        public int getZeroCount(int i) {
+            return this.zeroCounts[i];
+        }
+
+        /**
+         * @return the number of 1.0 values for the specified label (discrete case only)
+         *
+         * @param i		index of the label
+         */
+        public int getOneCount(int i) {
+            return this.oneCounts[i];
+        }
+
+    }
+
+    /**
+     * This accumulator collects the column values for each label in a range of rows.  The labels are taken from the
+     * label column's dictionary codes, so the per-label data is kept in arrays indexed by code.  As long as every
+     * value is 0.0 or 1.0, we only count the two values for each label; once another value is found, the counts are
+     * converted to value lists and every value is kept.
+     */
+    protected static class Accumulator implements IAccumulator {
+
+        /** column being analyzed */
+        private NumericColumn column;
+        /** coded label column */
+        private CodedColumn labels;
+        /** values for each label code (continuous case only; NULL until a value other than 1.0 or 0.0 is found) */
+        private ResizableDoubleArray[] values;
+        /** number of 0.0 values for each label code (until a value other than 1.0 or 0.0 is found) */
+        private int[] zeroCounts;
+        /** number of 1.0 values for each label code (until a value other than 1.0 or 0.0 is found) */
+        private int[] oneCounts;
+        /** TRUE if we found a value other than 1.0 or 0.0 */
+        private boolean continuous;
+        /** total of the values, for computing the mean */
+        private double total;
+        /** number of values */
+        private int count;
+
+        /**
+         * Create an empty accumulator for a column.
+         *
+         * @param column	column to analyze
+         * @param labels	coded label column
+         */
+        protected Accumulator(NumericColumn column, CodedColumn labels) {
+            this.column = column;
+            this.labels = labels;
+            this.values = null;
+            this.zeroCounts = new int[labels.dictionarySize()];
+            this.oneCounts = new int[labels.dictionarySize()];
+            this.continuous = false;
+            this.total = 0.0;
+            this.count = 0;
+        }
+
+        @Override
+        public void addRange(int start, int end) {
+            // We must determine what sort of graph we need.  We recognize two possibilities:  every value is 1.0 or 0.0, or
+            // we have a spectrum.  If we find something other than 1.0 or 0.0, we switch to keeping the values.
+            for (int i = start; i < end; i++) {
+                // For an invalid value, we simply skip the row.
+                if (this.column.isValid(i)) {
+                    double value = this.column.get(i);
+                    int code = this.labels.getCode(i);
+                    if (! this.continuous && value != 0.0 && value != 1.0)
+                        this.makeContinuous();
+                    if (this.continuous)
+                        this.valueArray(code).addElement(value);
+                    else if (value == 0.0)
+                        this.zeroCounts[code]++;
+                    else
+                        this.oneCounts[code]++;
+                    // Count this value.
+                    this.total += value;
+                    this.count++;
+                }
+            }
+        }
+
+        /**
+         * Convert the 0.0 and 1.0 counts to value lists.
+         */
+        private void makeContinuous() {
+            this.continuous = true;
+            this.values = new ResizableDoubleArray[this.zeroCounts.length];
+            for (int code = 0; code < this.zeroCounts.length; code++) {
+                if (this.zeroCounts[code] > 0 || this.oneCounts[code] > 0) {
+                    ResizableDoubleArray labelArray = this.valueArray(code);
+                    for (int k = 0; k < this.zeroCounts[code]; k++)
+                        labelArray.addElement(0.0);
+                    for (int k = 0; k < this.oneCounts[code]; k++)
+                        labelArray.addElement(1.0);
+                }
+            }
+            Arrays.fill(this.zeroCounts, 0);
+            Arrays.fill(this.oneCounts, 0);
+        }
+
+        /**
+         * @return the value list for a label code, creating it if necessary
+         *
+         * @param code	label code of interest
+         */
+        private ResizableDoubleArray valueArray(int code) {
+            ResizableDoubleArray retVal = this.values[code];
+            if (retVal == null) {
+                retVal = new ResizableDoubleArray(100);
+                this.values[code] = retVal;
+            }
+            return retVal;
+        }
+
+        /**
+         * @return the number of values for a label code
+         *
+         * @param code	label code of interest
+         */
+        protected int labelCount(int code) {
+            int retVal;
+            if (this.continuous)
+                retVal = (this.values[code] == null ? 0 : this.values[code].getNumElements());
+            else
+                retVal = this.zeroCounts[code] + this.oneCounts[code];
+            return retVal;
+        }
+
+        /**
+         * @return a copy of this accumulator that uses a new label dictionary
+         *
+         * @param newLabels		label column with the new dictionary
+         */
+        protected Accumulator renumber(CodedColumn newLabels) {
+            Accumulator retVal = new Accumulator(this.column, newLabels);
+            retVal.continuous = this.continuous;
+            retVal.total = this.total;
+            retVal.count = this.count;
+            if (this.continuous)
+                retVal.values = new ResizableDoubleArray[newLabels.dictionarySize()];
+            for (int code = 0; code < this.zeroCounts.length; code++) {
+                int newCode = newLabels.findCode(this.labels.getValue(code));
+                if (this.continuous)
+                    retVal.values[newCode] = this.values[code];
+                else {
+                    retVal.zeroCounts[newCode] = this.zeroCounts[code];
+                    retVal.oneCounts[newCode] = this.oneCounts[code];
+                }
+            }
+            return retVal;
+        }
+
+        @Override
+        public void merge(IAccumulator other) {
+            Accumulator o = (Accumulator) other;
+            if (o.continuous && ! this.continuous)
+                this.makeContinuous();
+            if (this.continuous && ! o.continuous)
+                o.makeContinuous();
+            if (this.continuous) {
+                for (int code = 0; code < this.values.length; code++) {
+                    if (o.values[code] != null) {
+                        if (this.values[code] == null)
+                            this.values[code] = o.values[code];
+                        else
+                            this.values[code].addElements(o.values[code].getElements());
+                    }
+                }
+            } else {
+                for (int code = 0; code < this.zeroCounts.length; code++) {
+                    this.zeroCounts[code] += o.zeroCounts[code];
+                    this.oneCounts[code] += o.oneCounts[code];
+                }
+            }
+            this.total += o.total;
+            this.count += o.count;
+        }
+
+    }
+
 }
@@ -3,8 +3,11 @@
  */
 package org.theseed.jfx;
 
+import java.util.Arrays;
 import java.util.Collection;
-import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import java.util.function.BooleanSupplier;
+
+import org.apache.commons.math3.util.ResizableDoubleArray;
 
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -14,10 +17,24 @@ import javafx.scene.control.TableView;
 /**
  * This analyzes a column full of floating-point values and produces useful statistical metrics.
  *
+ * Besides the moments, the table shows the median, a configurable set of percentiles (by default P1, P5, P25, P75,
+ * P95, and P99) and the interquartile range.  By default, the percentiles are computed exactly, which requires
+ * keeping a copy of all the values; they are all found with a single multi-way selection (see QuantileSelector).
+ * In streaming mode, the percentiles are estimated from a t-digest instead, so the memory used per column is
+ * constant regardless of the number of rows.  The other statistics are always computed from running moments.
+ *
  * @author Bruce Parrello
  */
 public class StatisticsAnalysis extends ColumnAnalysis {
 
+    // FIELDS
+    /** t-digest compression for streaming mode, or 0 for exact mode */
+    private double compression;
+    /** percentiles to display */
+    private double[] percentiles;
+    /** default percentiles to display */
+    public static final double[] DEFAULT_PERCENTILES = new double[] { 1.0, 5.0, 25.0, 50.0, 75.0, 95.0, 99.0 };
+
     /**
      * Create the statistical analyzer.
      *
@@ -26,34 +43,393 @@ public class StatisticsAnalysis extends ColumnAnalysis {
      */
     public StatisticsAnalysis(Collection<String[]> data, int labelIdx) {
         super(data, labelIdx);
+        this.compression = 0.0;
+        this.percentiles = DEFAULT_PERCENTILES;
+    }
+
+    /**
+     * Create the statistical analyzer for a columnar dataset.
+     *
+     * @param data		dataset to analyze
+     * @param labelIdx	index of the label column
+     */
+    public StatisticsAnalysis(ColumnDataset data, int labelIdx) {
+        super(data, labelIdx);
+        this.compression = 0.0;
+        this.percentiles = DEFAULT_PERCENTILES;
+    }
+
+    /**
+     * Specify whether or not to use streaming mode.
+     *
+     * @param streaming		TRUE to estimate the percentiles in constant memory, FALSE to compute them exactly
+     */
+    public void setStreaming(boolean streaming) {
+        this.compression = (streaming ? TDigest.DEFAULT_COMPRESSION : 0.0);
+    }
+
+    /**
+     * Use streaming mode with a specific error bound.  The compression is the t-digest compression parameter;
+     * the rank error of the percentile estimates is generally well below 1 / compression.
+     *
+     * @param compression	t-digest compression parameter (at least 10)
+     */
+    public void setStreaming(double compression) {
+        if (compression < 10.0)
+            throw new IllegalArgumentException("Streaming compression must be at least 10.");
+        this.compression = compression;
+    }
+
+    /**
+     * Specify the percentiles to display.  If both the 25th and 75th percentiles are included, the interquartile
+     * range is displayed as well.
+     *
+     * @param percentiles	percentiles to display, each greater than 0 and no more than 100
+     */
+    public void setPercentiles(double... percentiles) {
+        for (double p : percentiles) {
+            if (p <= 0.0 || p > 100.0)
+                throw new IllegalArgumentException("Invalid percentile " + p + ".");
+        }
+        this.percentiles = percentiles.clone();
+        Arrays.sort(this.percentiles);
+    }
+
+    /**
+     * @return the percentiles displayed
+     */
+    public double[] getPercentiles() {
+        return this.percentiles.clone();
+    }
+
+    /**
+     * @return TRUE if this analysis is in streaming mode
+     */
+    public boolean isStreaming() {
+        return (this.compression > 0.0);
     }
 
     @Override
     protected Node getAnalysis(Iter column) {
-        DescriptiveStatistics stats = new DescriptiveStatistics();
-        // Note we have to convert from string to double, and we ignore failures.
-        while (column.hasNext()) try {
-            double value = Double.parseDouble(column.next());
-            stats.addValue(value);
-        } catch (NumberFormatException e) { }
-        // Get the number of values processed.
-        int n = (int) stats.getN();
+        return this.render(this.compute(column.getColIdx()));
+    }
+
+    @Override
+    protected boolean usesAccumulator() {
+        return true;
+    }
+
+    @Override
+    protected IAccumulator createAccumulator(int colIdx) {
+        return new Accumulator(this.getData().getNumeric(colIdx), this.compression);
+    }
+
+    @Override
+    protected String getOptionKey() {
+        return this.compression + Arrays.toString(this.percentiles);
+    }
+
+    @Override
+    protected IAnalysisResult finish(IAccumulator result, BooleanSupplier cancelled) {
+        Accumulator acc = (Accumulator) result;
+        // We always compute the median along with the requested percentiles.
+        double[] wanted = Arrays.copyOf(this.percentiles, this.percentiles.length + 1);
+        wanted[this.percentiles.length] = 50.0;
+        double[] quantiles = acc.getPercentiles(wanted);
+        return new Result(acc.moments, this.percentiles, quantiles);
+    }
+
+    @Override
+    protected Node render(IAnalysisResult result) {
         // Create the output table.
         TableView<Stat> retVal = new TableView<Stat>();
         retVal.setPrefSize(DEFAULT_SIZE, DEFAULT_SIZE);
         Stat.setupTable(retVal);
-        ObservableList<Stat> tableData = FXCollections.observableArrayList(new Stat.Int("Count", n));
+        retVal.setItems(this.tableData((Result) result));
+        return retVal;
+    }
+
+    @Override
+    protected boolean update(Node display, IAnalysisResult result) {
+        boolean retVal = false;
+        if (display instanceof TableView) {
+            // The table rows are replaced, but the table itself is kept.
+            @SuppressWarnings("unchecked")
+            TableView<Stat> table = (TableView<Stat>) display;
+            table.getItems().setAll(this.tableData((Result) result));
+            retVal = true;
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the list of statistics to display in the output table
+     *
+     * @param stats		result containing the statistics
+     */
+    ObservableList<Stat> tableData(Result stats) {
+        // Get the number of values processed.
+        int n = stats.getN();
+        ObservableList<Stat> retVal = FXCollections.observableArrayList(new Stat.Int("Count", n));
         if (n > 0) {
-            // Here there was actual data.
-            tableData.add(new Stat("Minimum", stats.getMin()));
-            tableData.add(new Stat("Median", stats.getPercentile(50)));
-            tableData.add(new Stat("Mean", stats.getMean()));
-            tableData.add(new Stat("Maximum", stats.getMax()));
-            tableData.add(new Stat("Std Dev", stats.getStandardDeviation()));
-            tableData.add(new Stat("Skewness", stats.getSkewness()));
-        }
-        retVal.setItems(tableData);
+            // Here there was actual data.  The median is always shown, in its place among the percentiles.
+            retVal.add(new Stat("Minimum", stats.getMin()));
+            boolean medianShown = false;
+            for (int i = 0; i < stats.getPercentileCount(); i++) {
+                double p = stats.getPercentile(i);
+                if (! medianShown && p >= 50.0) {
+                    retVal.add(new Stat("Median", stats.getMedian()));
+                    medianShown = true;
+                }
+                if (p != 50.0)
+                    retVal.add(new Stat(percentileName(p), stats.getPercentileValue(i)));
+            }
+            if (! medianShown)
+                retVal.add(new Stat("Median", stats.getMedian()));
+            retVal.add(new Stat("Maximum", stats.getMax()));
+            if (! Double.isNaN(stats.getIQR()))
+                retVal.add(new Stat("IQR", stats.getIQR()));
+            retVal.add(new Stat("Mean", stats.getMean()));
+            retVal.add(new Stat("Std Dev", stats.getStandardDeviation()));
+            retVal.add(new Stat("Skewness", stats.getSkewness()));
+        }
         return retVal;
     }
 
+    /**
+     * @return the display name for a percentile
+     *
+     * @param p		percentile to name
+     */
+    private static String percentileName(double p) {
+        String retVal;
+        if (p == Math.rint(p))
+            retVal = String.format("P%d", (int) p);
+        else
+            retVal = "P" + p;
+        return retVal;
+    }
+
+    /**
+     * This object contains the statistics computed for a column.
+     */
+    public static class Result implements IAnalysisResult {
+
+        /** number of valid values */
+        private final int n;
+        /** minimum value */
+        private final double min;
+        /** median value */
+        private final double median;
+        /** mean value */
+        private final double mean;
+        /** maximum value */
+        private final double max;
+        /** percentiles computed */
+        private final double[] percentiles;
+        /** values of the percentiles computed */
+        private final double[] percentileValues;
+        /** sample standard deviation */
+        private final double stdDev;
+        /** skewness */
+        private final double skewness;
+
+        /**
+         * Create the result from the running moments of a column.
+         *
+         * @param stats			moments of the valid values
+         * @param percentiles	percentiles to display
+         * @param quantiles		values of the percentiles to display, followed by the median
+         */
+        protected Result(MomentStats stats, double[] percentiles, double[] quantiles) {
+            this.n = (int) stats.getN();
+            this.min = stats.getMin();
+            this.percentiles = percentiles;
+            this.percentileValues = Arrays.copyOf(quantiles, percentiles.length);
+            this.median = quantiles[percentiles.length];
+            this.mean = stats.getMean();
+            this.max = stats.getMax();
+            this.stdDev = stats.getStandardDeviation();
+            this.skewness = stats.getSkewness();
+        }
+
+        /**
+         * @return the number of valid values
+         */
+        public int getN() {
+            return this.n;
+        }
+
+        /**
+         * @return the minimum value
+         */
+        public double getMin() {
+            return this.min;
+        }
+
+        /**
+         * @return the median value (estimated in streaming mode)
+         */
+        public double getMedian() {
+            return this.median;
+        }
+
+        /**
+         * @return the number of percentiles to display
+         */
+        public int getPercentileCount() {
+            return this.percentiles.length;
+        }
+
+        /**
+         * @return the specified percentile to display
+         *
+         * @param i		index of the percentile
+         */
+        public double getPercentile(int i) {
+            return this.percentiles[i];
+        }
+
+        /**
+         * @return the value of the specified percentile to display
+         *
+         * @param i		index of the percentile
+         */
+        public double getPercentileValue(int i) {
+            return this.percentileValues[i];
+        }
+
+        /**
+         * @return the value at a specified percentile, or NaN if that percentile was not computed
+         *
+         * @param p		percentile desired
+         */
+        public double getValueAt(double p) {
+            double retVal = Double.NaN;
+            if (p == 50.0)
+                retVal = this.median;
+            else {
+                int i = Arrays.binarySearch(this.percentiles, p);
+                if (i >= 0)
+                    retVal = this.percentileValues[i];
+            }
+            return retVal;
+        }
+
+        /**
+         * @return the interquartile range, or NaN if the quartiles were not computed
+         */
+        public double getIQR() {
+            return this.getValueAt(75.0) - this.getValueAt(25.0);
+        }
+
+        /**
+         * @return the mean value
+         */
+        public double getMean() {
+            return this.mean;
+        }
+
+        /**
+         * @return the maximum value
+         */
+        public double getMax() {
+            return this.max;
+        }
+
+        /**
+         * @return the sample standard deviation
+         */
+        public double getStandardDeviation() {
+            return this.stdDev;
+        }
+
+        /**
+         * @return the skewness
+         */
+        public double getSkewness() {
+            return this.skewness;
+        }
+
+    }
+
+    /**
+     * This accumulator computes the moments of the valid values in a range of rows.  In exact mode, it also
+     * keeps the values; in streaming mode, it keeps a t-digest.
+     */
+    protected static class Accumulator implements IAccumulator {
+
+        /** column being analyzed */
+        private NumericColumn column;
+        /** running moments of the values */
+        private MomentStats moments;
+        /** valid values found (exact mode) */
+        private ResizableDoubleArray values;
+        /** quantile sketch of the values (streaming mode) */
+        private TDigest digest;
+
+        /**
+         * Create an empty accumulator for a column.
+         *
+         * @param column		column to analyze
+         * @param compression	t-digest compression, or 0 for exact mode
+         */
+        protected Accumulator(NumericColumn column, double compression) {
+            this.column = column;
+            this.moments = new MomentStats();
+            if (compression > 0.0) {
+                this.digest = new TDigest(compression);
+                this.values = null;
+            } else {
+                this.values = new ResizableDoubleArray();
+                this.digest = null;
+            }
+        }
+
+        @Override
+        public void addRange(int start, int end) {
+            // The dataset has already converted the column to doubles.  Rows that failed conversion are skipped.
+            for (int i = start; i < end; i++) {
+                if (this.column.isValid(i)) {
+                    double value = this.column.get(i);
+                    this.moments.add(value);
+                    if (this.digest != null)
+                        this.digest.add(value);
+                    else
+                        this.values.addElement(value);
+                }
+            }
+        }
+
+        @Override
+        public void merge(IAccumulator other) {
+            Accumulator o = (Accumulator) other;
+            this.moments.merge(o.moments);
+            if (this.digest != null)
+                this.digest.merge(o.digest);
+            else
+                this.values.addElements(o.values.getElements());
+        }
+
+        /**
+         * @return the values at the specified percentiles of the values accumulated, or NaN if there are none
+         *
+         * @param percentiles	array of desired percentiles
+         */
+        public double[] getPercentiles(double[] percentiles) {
+            double[] retVal;
+            if (this.digest != null) {
+                retVal = new double[percentiles.length];
+                for (int i = 0; i < percentiles.length; i++)
+                    retVal[i] = (this.moments.getN() > 0 ? this.digest.quantile(percentiles[i] / 100.0) : Double.NaN);
+            } else {
+                // The elements array is a copy, so the selection is free to reorder it.
+                double[] buffer = this.values.getElements();
+                retVal = QuantileSelector.percentiles(buffer, buffer.length, percentiles);
+            }
+            return retVal;
+        }
+
+    }
+
 }
@@ -0,0 +1,342 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.Arrays;
+
+/**
+ * This is a merging t-digest, a sketch that estimates quantiles of a stream of values in constant memory.  Values are
+ * collected into a buffer, and when the buffer fills it is sorted together with the existing centroids and the
+ * result is compressed into a small number of weighted centroids.  Centroids near the tails are kept small, so the
+ * estimates are most accurate near the extremes and reasonably accurate in the middle.
+ *
+ * The compression parameter controls the size/accuracy tradeoff.  The number of centroids is bounded by roughly
+ * 1.6 times the compression, and the rank error of a quantile estimate is generally well under 1 / compression.
+ * Two digests can be merged, so a digest can be built in pieces by a parallel scan.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TDigest {
+
+    // FIELDS
+    /** compression parameter */
+    private final double compression;
+    /** centroid means */
+    private double[] means;
+    /** centroid weights */
+    private double[] weights;
+    /** number of centroids */
+    private int centroids;
+    /** buffer of incoming means */
+    private double[] bufMeans;
+    /** buffer of incoming weights */
+    private double[] bufWeights;
+    /** number of buffered values */
+    private int buffered;
+    /** total weight, including the buffer */
+    private double totalWeight;
+    /** minimum value */
+    private double min;
+    /** maximum value */
+    private double max;
+    /** default compression */
+    public static final double DEFAULT_COMPRESSION = 100.0;
+
+    /**
+     * Create an empty t-digest.
+     *
+     * @param compression	compression parameter; higher values are more accurate but use more memory
+     */
+    public TDigest(double compression) {
+        if (compression < 10.0)
+            throw new IllegalArgumentException("T-digest compression must be at least 10.");
+        this.compression = compression;
+        int maxCentroids = (int) Math.ceil(compression * Math.PI / 2) + 10;
+        this.means = new double[maxCentroids];
+        this.weights = new double[maxCentroids];
+        this.centroids = 0;
+        this.bufMeans = new double[maxCentroids * 5];
+        this.bufWeights = new double[maxCentroids * 5];
+        this.buffered = 0;
+        this.totalWeight = 0.0;
+        this.min = Double.POSITIVE_INFINITY;
+        this.max = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Add a value to the digest.
+     *
+     * @param value		value to add
+     */
+    public void add(double value) {
+        this.add(value, 1.0);
+    }
+
+    /**
+     * Add a weighted point to the digest.
+     *
+     * @param value		value to add
+     * @param weight	weight of the value
+     */
+    private void add(double value, double weight) {
+        if (this.buffered >= this.bufMeans.length)
+            this.compress();
+        this.bufMeans[this.buffered] = value;
+        this.bufWeights[this.buffered] = weight;
+        this.buffered++;
+        this.totalWeight += weight;
+        if (value < this.min) this.min = value;
+        if (value > this.max) this.max = value;
+    }
+
+    /**
+     * Merge another digest into this one.
+     *
+     * @param other		digest to merge
+     */
+    public void merge(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.centroids; i++)
+            this.add(other.means[i], other.weights[i]);
+        // The centroid means do not include the true extremes, so we copy them.
+        this.min = Math.min(this.min, other.min);
+        this.max = Math.max(this.max, other.max);
+    }
+
+    /**
+     * @return the total weight (number of values) in the digest
+     */
+    public long size() {
+        return Math.round(this.totalWeight);
+    }
+
+    /**
+     * @return the compression parameter of this digest
+     */
+    public double getCompression() {
+        return this.compression;
+    }
+
+    /**
+     * Merge the buffered values into the centroid list.
+     */
+    public void compress() {
+        if (this.buffered > 0) {
+            // Gather the old centroids and the buffered values together and sort them.
+            int n = this.centroids + this.buffered;
+            double[] m = Arrays.copyOf(this.means, n);
+            double[] w = Arrays.copyOf(this.weights, n);
+            System.arraycopy(this.bufMeans, 0, m, this.centroids, this.buffered);
+            System.arraycopy(this.bufWeights, 0, w, this.centroids, this.buffered);
+            sort(m, w, 0, n - 1);
+            this.buffered = 0;
+            // Sweep through the sorted points, merging each into the current centroid until it
+            // reaches the size limit for its position in the distribution.
+            final double total = this.totalWeight;
+            int out = 0;
+            double cumulative = 0.0;
+            double weightLimit = total * this.qLimit(0.0);
+            double curMean = m[0];
+            double curWeight = w[0];
+            for (int i = 1; i < n; i++) {
+                if (cumulative + curWeight + w[i] <= weightLimit) {
+                    curWeight += w[i];
+                    curMean += (m[i] - curMean) * w[i] / curWeight;
+                } else {
+                    out = this.store(out, curMean, curWeight);
+                    cumulative += curWeight;
+                    weightLimit = total * this.qLimit(cumulative / total);
+                    curMean = m[i];
+                    curWeight = w[i];
+                }
+            }
+            this.centroids = this.store(out, curMean, curWeight);
+        }
+    }
+
+    /**
+     * Store a centroid in the centroid list.
+     *
+     * @param idx		index at which to store the centroid
+     * @param mean		centroid mean
+     * @param weight	centroid weight
+     *
+     * @return the index of the next centroid
+     */
+    private int store(int idx, double mean, double weight) {
+        if (idx >= this.means.length) {
+            int newLength = this.means.length + (this.means.length >> 1);
+            this.means = Arrays.copyOf(this.means, newLength);
+            this.weights = Arrays.copyOf(this.weights, newLength);
+        }
+        this.means[idx] = mean;
+        this.weights[idx] = weight;
+        return idx + 1;
+    }
+
+    /**
+     * @return the highest quantile that can be included in a centroid starting at the specified quantile
+     *
+     * @param q0	quantile of the left edge of the centroid
+     */
+    private double qLimit(double q0) {
+        // This is the arcsine scale function:  k(q) = compression * asin(2q - 1) / (2 pi).  A centroid
+        // may span at most one unit of k.
+        double k0 = this.compression * Math.asin(2.0 * q0 - 1.0) / (2.0 * Math.PI);
+        double k1 = k0 + 1.0;
+        double retVal;
+        if (k1 >= this.compression / 4.0)
+            retVal = 1.0;
+        else
+            retVal = (Math.sin(k1 * 2.0 * Math.PI / this.compression) + 1.0) / 2.0;
+        return retVal;
+    }
+
+    /**
+     * @return the estimated value at the specified quantile
+     *
+     * @param q		quantile desired, from 0 to 1
+     */
+    public double quantile(double q) {
+        this.compress();
+        double retVal;
+        if (this.centroids == 0)
+            retVal = Double.NaN;
+        else if (this.centroids == 1)
+            retVal = this.means[0];
+        else {
+            // Each centroid is considered to be centered at its mean.  We interpolate between centroid centers,
+            // and between the extreme centroids and the extreme values.
+            final int last = this.centroids - 1;
+            double index = q * this.totalWeight;
+            double firstHalf = this.weights[0] / 2.0;
+            double lastHalf = this.weights[last] / 2.0;
+            if (index <= firstHalf)
+                retVal = this.min + (this.means[0] - this.min) * index / firstHalf;
+            else if (index >= this.totalWeight - lastHalf)
+                retVal = this.means[last] + (this.max - this.means[last]) * (index - this.totalWeight + lastHalf) / lastHalf;
+            else {
+                retVal = this.means[last];
+                double cumulative = firstHalf;
+                boolean found = false;
+                for (int i = 0; i < last && ! found; i++) {
+                    double dw = (this.weights[i] + this.weights[i + 1]) / 2.0;
+                    if (cumulative + dw > index) {
+                        double frac = (index - cumulative) / dw;
+                        retVal = this.means[i] + frac * (this.means[i + 1] - this.means[i]);
+                        found = true;
+                    }
+                    cumulative += dw;
+                }
+            }
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the estimated fraction of values less than or equal to the specified value
+     *
+     * @param value		value whose rank is desired
+     */
+    public double cdf(double value) {
+        this.compress();
+        double retVal;
+        if (this.centroids == 0)
+            retVal = Double.NaN;
+        else if (value < this.min)
+            retVal = 0.0;
+        else if (value >= this.max)
+            retVal = 1.0;
+        else {
+            // Find the weight to the left of the value, interpolating the same way as for quantiles.
+            final int last = this.centroids - 1;
+            double firstHalf = this.weights[0] / 2.0;
+            double weight;
+            if (value <= this.means[0])
+                weight = (this.means[0] > this.min ? firstHalf * (value - this.min) / (this.means[0] - this.min) : firstHalf);
+            else if (value >= this.means[last]) {
+                double lastHalf = this.weights[last] / 2.0;
+                double span = this.max - this.means[last];
+                weight = this.totalWeight - lastHalf + (span > 0 ? lastHalf * (value - this.means[last]) / span : 0.0);
+            } else {
+                weight = firstHalf;
+                int i = 0;
+                while (this.means[i + 1] <= value) {
+                    weight += (this.weights[i] + this.weights[i + 1]) / 2.0;
+                    i++;
+                }
+                double dw = (this.weights[i] + this.weights[i + 1]) / 2.0;
+                double span = this.means[i + 1] - this.means[i];
+                weight += (span > 0 ? dw * (value - this.means[i]) / span : 0.0);
+            }
+            retVal = weight / this.totalWeight;
+        }
+        return retVal;
+    }
+
+    /**
+     * Sort two parallel arrays by the values in the first one.
+     *
+     * @param m		array of keys
+     * @param w		array of associated weights
+     * @param lo	index of first element to sort
+     * @param hi	index of last element to sort
+     */
+    private static void sort(double[] m, double[] w, int lo, int hi) {
+        while (hi - lo > 16) {
+            // Partition around the median of three.
+            int mid = (lo + hi) >>> 1;
+            if (m[mid] < m[lo]) swap(m, w, mid, lo);
+            if (m[hi] < m[lo]) swap(m, w, hi, lo);
+            if (m[hi] < m[mid]) swap(m, w, hi, mid);
+            double pivot = m[mid];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (m[i] < pivot) i++;
+                while (m[j] > pivot) j--;
+                if (i <= j) {
+                    swap(m, w, i, j);
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse on the smaller side and loop on the larger.
+            if (j - lo < hi - i) {
+                sort(m, w, lo, j);
+                lo = i;
+            } else {
+                sort(m, w, i, hi);
+                hi = j;
+            }
+        }
+        // Finish with an insertion sort.
+        for (int i = lo + 1; i <= hi; i++) {
+            double mi = m[i];
+            double wi = w[i];
+            int j = i - 1;
+            while (j >= lo && m[j] > mi) {
+                m[j + 1] = m[j];
+                w[j + 1] = w[j];
+                j--;
+            }
+            m[j + 1] = mi;
+            w[j + 1] = wi;
+        }
+    }
+
+    /**
+     * Swap two elements in a pair of parallel arrays.
+     */
+    private static void swap(double[] m, double[] w, int i, int j) {
+        double t = m[i];
+        m[i] = m[j];
+        m[j] = t;
+        t = w[i];
+        w[i] = w[j];
+        w[j] = t;
+    }
+
+}
@@ -0,0 +1,159 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * This command loads a tab-delimited file into a MappedDataset.  It is designed to be run by a BackgroundTask:  it
+ * reports the number of bytes indexed to its progress monitor, and when it is done, getDataset() returns the
+ * result.  The client can also ask for specific columns to be parsed during the load, so that the analyses of
+ * those columns do not have to wait for the parsing.  The rows parsed in those columns are reported to the monitor
+ * after the bytes indexed, so the progress bar covers the whole load.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TabFileLoader implements IMonitoredCommand {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(TabFileLoader.class);
+    /** file to load */
+    private File file;
+    /** TRUE if the first line contains column headers */
+    private boolean headers;
+    /** progress monitor, or NULL if none */
+    private ProgressMonitor monitor;
+    /** indices of columns to parse as numbers during the load */
+    private List<Integer> numericColumns;
+    /** indices of columns to encode during the load */
+    private List<Integer> codedColumns;
+    /** dataset loaded */
+    private MappedDataset dataset;
+
+    /**
+     * Create a loader for a tab-delimited file with headers.
+     *
+     * @param file		file to load
+     */
+    public TabFileLoader(File file) {
+        this(file, true);
+    }
+
+    /**
+     * Create a loader for a tab-delimited file.
+     *
+     * @param file		file to load
+     * @param headers	TRUE if the first line contains column headers
+     */
+    public TabFileLoader(File file, boolean headers) {
+        this.file = file;
+        this.headers = headers;
+        this.monitor = null;
+        this.numericColumns = new ArrayList<Integer>();
+        this.codedColumns = new ArrayList<Integer>();
+        this.dataset = null;
+    }
+
+    /**
+     * Specify columns to parse into numbers during the load.
+     *
+     * @param cols	indices of the columns to parse
+     */
+    public void preloadNumeric(int... cols) {
+        for (int col : cols)
+            this.numericColumns.add(col);
+    }
+
+    /**
+     * Specify columns to encode into dictionary codes during the load.
+     *
+     * @param cols	indices of the columns to encode
+     */
+    public void preloadCoded(int... cols) {
+        for (int col : cols)
+            this.codedColumns.add(col);
+    }
+
+    /**
+     * Specify the file to load from the command-line parameters.
+     *
+     * @param args	command-line parameters; the first is the file name
+     *
+     * @return TRUE if the file is valid, else FALSE
+     */
+    public boolean parseCommand(String[] args) {
+        boolean retVal = false;
+        if (args.length >= 1) {
+            this.file = new File(args[0]);
+            retVal = this.file.canRead();
+        }
+        return retVal;
+    }
+
+    @Override
+    public void setMonitor(ProgressMonitor monitor) {
+        this.monitor = monitor;
+    }
+
+    @Override
+    public void run() {
+        try {
+            if (this.monitor != null)
+                this.monitor.setMessage("Indexing " + this.file.getName() + ".");
+            this.dataset = new MappedDataset(this.file, this.headers, this.monitor, MappedDataset.DEFAULT_SEGMENT_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // Parse the requested columns.  Each column is parsed in parallel internally.  Every row of every column
+        // parsed counts as an item, so the total grows by that much once the row count is known.
+        final int parses = this.numericColumns.size() + this.codedColumns.size();
+        if (this.monitor != null && parses > 0) {
+            this.monitor.setTotal(this.monitor.getProcessed() + (long) this.dataset.size() * parses);
+            this.dataset.setParseMonitor(this.monitor);
+        }
+        try {
+            for (int col : this.numericColumns) {
+                this.showParsing(col);
+                this.dataset.getNumeric(col);
+            }
+            for (int col : this.codedColumns) {
+                this.showParsing(col);
+                this.dataset.getCoded(col);
+            }
+        } finally {
+            this.dataset.setParseMonitor(null);
+        }
+        log.info("{} rows loaded from {}.", this.dataset.size(), this.file);
+    }
+
+    /**
+     * Tell the user which column is being parsed.
+     *
+     * @param col	index of the column being parsed
+     */
+    private void showParsing(int col) {
+        if (this.monitor != null) {
+            String[] names = this.dataset.getHeaders();
+            String name = (names != null && col < names.length ? names[col] : "column " + (col + 1));
+            this.monitor.setMessage("Parsing " + name + ".");
+        }
+    }
+
+    /**
+     * @return the loaded dataset, or NULL if the load has not completed
+     */
+    public MappedDataset getDataset() {
+        return this.dataset;
+    }
+
+}
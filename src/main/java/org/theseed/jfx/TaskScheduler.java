@@ -0,0 +1,387 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+
+/**
+ * This object manages a bounded pool of worker threads shared by all the background work in an application.  Work is
+ * queued by priority:  interactive work (such as building a display the user is waiting for) always runs before batch
+ * work (such as long-running commands), and within a priority, work runs in the order submitted.  The number of
+ * workers defaults to the number of processors, so many windows starting work at once cannot oversubscribe the CPU.
+ *
+ * Ordering alone is not enough to keep the application responsive, since a batch item that has started runs to the
+ * end.  So one worker is reserved for interactive work:  at most one fewer batch items than workers run at once, and
+ * the rest wait in a separate queue until a batch item finishes.  However much batch work is running, an interactive
+ * item never waits for more than the interactive items ahead of it.  A scheduler always has at least two workers, so
+ * that there is one left for batch work.
+ *
+ * The workers mostly coordinate:  the heavy lifting is done by parallel row scans (see ParallelScan), which run in a
+ * fork-join pool.  So that the bound and the priorities hold for the scans too, the scheduler has a scan pool for
+ * each priority, and scanPool() chooses the one for the work running in the calling thread.  The batch pool has as
+ * many threads as the batch limit, at low thread priority, so batch scans always leave a processor for interactive
+ * work; the interactive pool has one thread per worker.  Scans started outside the scheduler (for example, on the
+ * JavaFX application thread, where the user is waiting) use the interactive pool.
+ *
+ * The queue depth is available as a read-only JavaFX property for display in a status bar.
+ *
+ * On a JDK that supports virtual threads, the scheduler can optionally use them for its workers.  This is requested
+ * by calling configureDefault() before the default scheduler is first used, or by setting the system property
+ * "org.theseed.jfx.virtualThreads" to "true".  On an older JDK, the request is ignored.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TaskScheduler {
+
+    // FIELDS
+    /** logging facility */
+    protected static Logger log = LoggerFactory.getLogger(TaskScheduler.class);
+    /** default scheduler */
+    private static TaskScheduler defaultScheduler = null;
+    /** number of workers for the default scheduler */
+    private static int defaultWorkers = Runtime.getRuntime().availableProcessors();
+    /** TRUE if the default scheduler should use virtual threads */
+    private static boolean defaultVirtual = Boolean.getBoolean("org.theseed.jfx.virtualThreads");
+    /** underlying thread pool */
+    private final ThreadPoolExecutor executor;
+    /** maximum number of batch work items to run at once */
+    private final int batchLimit;
+    /** batch work waiting for a free batch slot; this object also serves as the lock for the batch count */
+    private final ArrayDeque<Job> batchQueue;
+    /** number of batch work items handed to the thread pool and not yet finished */
+    private int batchRunning;
+    /** sequence number for keeping submissions in order */
+    private final AtomicLong sequence;
+    /** queue depth property */
+    private final ReadOnlyIntegerWrapper queueDepth;
+    /** TRUE if a queue depth update is pending on the application thread */
+    private final AtomicBoolean depthUpdatePending;
+    /** fork-join pool for the scans of interactive work */
+    private final ForkJoinPool interactivePool;
+    /** fork-join pool for the scans of batch work */
+    private final ForkJoinPool batchPool;
+    /** priority of the work running in the current thread, or NULL if it is not a scheduler worker */
+    private static final ThreadLocal<Priority> CURRENT_PRIORITY = new ThreadLocal<Priority>();
+
+    /**
+     * Priority levels for scheduled work.
+     */
+    public static enum Priority {
+        /** work the user is waiting for */
+        INTERACTIVE,
+        /** long-running work */
+        BATCH;
+    }
+
+    /**
+     * This is a queued unit of work.  It sorts by priority and then by submission order.
+     */
+    private class Job implements Runnable, Comparable<Job> {
+
+        /** priority of the work */
+        private final Priority priority;
+        /** sequence number of the submission */
+        private final long seq;
+        /** work to perform */
+        private final Runnable work;
+
+        /**
+         * Create a job.
+         *
+         * @param work			work to perform
+         * @param priority		priority of the work
+         */
+        private Job(Runnable work, Priority priority) {
+            this.work = work;
+            this.priority = priority;
+            this.seq = TaskScheduler.this.sequence.getAndIncrement();
+        }
+
+        @Override
+        public void run() {
+            TaskScheduler.this.postQueueDepth();
+            CURRENT_PRIORITY.set(this.priority);
+            try {
+                this.work.run();
+            } finally {
+                CURRENT_PRIORITY.remove();
+                if (this.priority == Priority.BATCH)
+                    TaskScheduler.this.batchFinished();
+            }
+        }
+
+        @Override
+        public int compareTo(Job o) {
+            int retVal = this.priority.compareTo(o.priority);
+            if (retVal == 0)
+                retVal = Long.compare(this.seq, o.seq);
+            return retVal;
+        }
+
+    }
+
+    /**
+     * Create a task scheduler.
+     *
+     * @param workers			maximum number of work items to run at once (if this is 1, a second worker is
+     * 							added for interactive work)
+     * @param virtualThreads	TRUE to use virtual threads if the JDK supports them
+     */
+    public TaskScheduler(int workers, boolean virtualThreads) {
+        if (workers < 1)
+            throw new IllegalArgumentException("Task scheduler must have at least one worker.");
+        ThreadFactory factory = null;
+        if (virtualThreads)
+            factory = virtualThreadFactory();
+        if (factory == null)
+            factory = platformThreadFactory();
+        // One worker is reserved for interactive work.
+        final int poolSize = Math.max(2, workers);
+        this.batchLimit = poolSize - 1;
+        this.batchQueue = new ArrayDeque<Job>();
+        this.batchRunning = 0;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), factory);
+        this.executor.allowCoreThreadTimeOut(true);
+        this.sequence = new AtomicLong(0);
+        this.queueDepth = new ReadOnlyIntegerWrapper(this, "queueDepth", 0);
+        this.depthUpdatePending = new AtomicBoolean(false);
+        this.interactivePool = forkJoinPool("Scan-interactive-", poolSize, Thread.NORM_PRIORITY);
+        this.batchPool = forkJoinPool("Scan-batch-", this.batchLimit, Thread.MIN_PRIORITY);
+    }
+
+    /**
+     * Configure the default scheduler.  This must be called before the default scheduler is first used.
+     *
+     * @param workers			maximum number of work items to run at once
+     * @param virtualThreads	TRUE to use virtual threads if the JDK supports them
+     */
+    public static synchronized void configureDefault(int workers, boolean virtualThreads) {
+        if (defaultScheduler != null)
+            throw new IllegalStateException("Default task scheduler is already running.");
+        defaultWorkers = workers;
+        defaultVirtual = virtualThreads;
+    }
+
+    /**
+     * @return the default scheduler shared by the whole application
+     */
+    public static synchronized TaskScheduler getDefault() {
+        if (defaultScheduler == null) {
+            defaultScheduler = new TaskScheduler(defaultWorkers, defaultVirtual);
+            log.info("Default task scheduler started with {} workers.", defaultWorkers);
+        }
+        return defaultScheduler;
+    }
+
+    /**
+     * Submit work to the scheduler.  Batch work is held back if the batch limit has been reached.
+     *
+     * @param work			work to perform
+     * @param priority		priority of the work
+     */
+    public void submit(Runnable work, Priority priority) {
+        Job job = new Job(work, priority);
+        if (priority == Priority.INTERACTIVE)
+            this.executor.execute(job);
+        else synchronized (this.batchQueue) {
+            if (this.batchRunning < this.batchLimit) {
+                this.executor.execute(job);
+                this.batchRunning++;
+            } else
+                this.batchQueue.add(job);
+        }
+        this.postQueueDepth();
+    }
+
+    /**
+     * Record that a batch work item has finished, and hand the next waiting batch item, if any, to the thread pool.
+     */
+    private void batchFinished() {
+        synchronized (this.batchQueue) {
+            Job next = this.batchQueue.poll();
+            if (next == null)
+                this.batchRunning--;
+            else
+                this.executor.execute(next);
+        }
+    }
+
+    /**
+     * @return the maximum number of batch work items that run at once
+     */
+    public int getBatchLimit() {
+        return this.batchLimit;
+    }
+
+    /**
+     * @return an executor that submits work to this scheduler at the specified priority
+     *
+     * @param priority		priority for the submitted work
+     */
+    public Executor executor(Priority priority) {
+        return (x -> this.submit(x, priority));
+    }
+
+    /**
+     * @return the fork-join pool for the scans of work at the specified priority
+     *
+     * @param priority		priority of the work
+     */
+    public ForkJoinPool scanPool(Priority priority) {
+        return (priority == Priority.BATCH ? this.batchPool : this.interactivePool);
+    }
+
+    /**
+     * @return the fork-join pool for scans started by the calling thread:  the pool the thread belongs to, if it is a
+     * 		   scan thread of this scheduler; otherwise the pool for the priority of the work it is running
+     */
+    public ForkJoinPool scanPool() {
+        ForkJoinPool retVal = null;
+        Thread current = Thread.currentThread();
+        if (current instanceof ForkJoinWorkerThread) {
+            ForkJoinPool pool = ((ForkJoinWorkerThread) current).getPool();
+            if (pool == this.interactivePool || pool == this.batchPool)
+                retVal = pool;
+        }
+        if (retVal == null)
+            retVal = this.scanPool(currentPriority());
+        return retVal;
+    }
+
+    /**
+     * @return the priority of the work running in the calling thread; a thread that is not a scheduler worker is
+     * 		   treated as interactive
+     */
+    public static Priority currentPriority() {
+        Priority retVal = CURRENT_PRIORITY.get();
+        return (retVal == null ? Priority.INTERACTIVE : retVal);
+    }
+
+    /**
+     * @return the number of work items waiting to run
+     */
+    public int getQueueDepth() {
+        int retVal = this.executor.getQueue().size();
+        synchronized (this.batchQueue) {
+            retVal += this.batchQueue.size();
+        }
+        return retVal;
+    }
+
+    /**
+     * @return the number of work items currently running
+     */
+    public int getActiveCount() {
+        return this.executor.getActiveCount();
+    }
+
+    /**
+     * @return a property containing the number of work items waiting to run; it is updated on the
+     * 		   JavaFX application thread
+     */
+    public ReadOnlyIntegerProperty queueDepthProperty() {
+        return this.queueDepth.getReadOnlyProperty();
+    }
+
+    /**
+     * Stop accepting work.  Work already queued will still be run.  Since the thread pool cannot accept work after it
+     * is shut down, the batch work still being held back is released to it first, without regard to the limit.
+     */
+    public void shutdown() {
+        synchronized (this.batchQueue) {
+            while (! this.batchQueue.isEmpty()) {
+                this.executor.execute(this.batchQueue.poll());
+                this.batchRunning++;
+            }
+            this.executor.shutdown();
+        }
+    }
+
+    /**
+     * Update the queue depth property on the application thread.  Only one update is pending at a time, and
+     * it uses the queue depth at the time it runs.
+     */
+    private void postQueueDepth() {
+        if (this.depthUpdatePending.compareAndSet(false, true)) {
+            try {
+                Platform.runLater(() -> {
+                    this.depthUpdatePending.set(false);
+                    this.queueDepth.set(this.getQueueDepth());
+                });
+            } catch (IllegalStateException e) {
+                // The JavaFX toolkit is not running, so there is no one to display the property.
+                this.depthUpdatePending.set(false);
+            }
+        }
+    }
+
+    /**
+     * @return a fork-join pool of daemon threads for running scans
+     *
+     * @param prefix			prefix for the thread names
+     * @param parallelism		number of threads
+     * @param threadPriority	priority of the threads
+     */
+    private static ForkJoinPool forkJoinPool(String prefix, int parallelism, int threadPriority) {
+        AtomicInteger counter = new AtomicInteger(0);
+        ForkJoinPool.ForkJoinWorkerThreadFactory factory = (pool -> {
+            ForkJoinWorkerThread retVal = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            retVal.setName(prefix + counter.incrementAndGet());
+            retVal.setPriority(threadPriority);
+            retVal.setDaemon(true);
+            return retVal;
+        });
+        return new ForkJoinPool(parallelism, factory, null, false);
+    }
+
+    /**
+     * @return a factory for daemon platform threads
+     */
+    private static ThreadFactory platformThreadFactory() {
+        AtomicInteger counter = new AtomicInteger(0);
+        return (x -> {
+            Thread retVal = new Thread(x, "TaskScheduler-" + counter.incrementAndGet());
+            retVal.setDaemon(true);
+            return retVal;
+        });
+    }
+
+    /**
+     * @return a factory for virtual threads, or NULL if the JDK does not support them
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        ThreadFactory retVal = null;
+        try {
+            // We use reflection so that the library still builds and runs on older JDKs.
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "TaskScheduler-v", 1L);
+            retVal = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            log.info("Task scheduler is using virtual threads.");
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Virtual threads are not available in this JDK; using platform threads.");
+        }
+        return retVal;
+    }
+
+}
@@ -0,0 +1,92 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+/**
+ * This object contains the performance statistics for a completed background task:  the elapsed time, the number of
+ * items processed, the throughput, and the peak heap usage (see ProgressMonitor).  Only a command that reports its
+ * progress counts its items, so for other commands the item count and throughput are unknown.
+ *
+ * @author Bruce Parrello
+ *
+ */
+public class TaskStats {
+
+    // FIELDS
+    /** elapsed time in milliseconds */
+    private final long elapsedMs;
+    /** number of items processed */
+    private final long items;
+    /** peak heap usage in bytes */
+    private final long peakHeap;
+    /** item count for a task that did not count its items */
+    public static final long UNKNOWN = -1;
+
+    /**
+     * Create a statistics object for a task.
+     *
+     * @param elapsedMs		elapsed time in milliseconds
+     * @param items			number of items processed, or UNKNOWN if the items were not counted
+     * @param peakHeap		peak heap usage in bytes
+     */
+    public TaskStats(long elapsedMs, long items, long peakHeap) {
+        this.elapsedMs = elapsedMs;
+        this.items = items;
+        this.peakHeap = peakHeap;
+    }
+
+    /**
+     * @return the elapsed time in milliseconds
+     */
+    public long getElapsedMs() {
+        return this.elapsedMs;
+    }
+
+    /**
+     * @return the number of items processed, or UNKNOWN if the items were not counted
+     */
+    public long getItems() {
+        return this.items;
+    }
+
+    /**
+     * @return TRUE if the items were counted
+     */
+    public boolean isCounted() {
+        return this.items != UNKNOWN;
+    }
+
+    /**
+     * @return the number of items processed per second, or NaN if the items were not counted
+     */
+    public double getItemsPerSecond() {
+        double retVal;
+        if (! this.isCounted())
+            retVal = Double.NaN;
+        else
+            retVal = (this.elapsedMs <= 0 ? 0.0 : this.items * 1000.0 / this.elapsedMs);
+        return retVal;
+    }
+
+    /**
+     * @return the peak heap usage in bytes
+     */
+    public long getPeakHeap() {
+        return this.peakHeap;
+    }
+
+    @Override
+    public String toString() {
+        String retVal;
+        double seconds = this.elapsedMs / 1000.0;
+        double heapMb = this.peakHeap / (1024.0 * 1024.0);
+        if (this.isCounted())
+            retVal = String.format("%d items in %.3f seconds (%.1f/second), peak heap %.1f MB", this.items,
+                    seconds, this.getItemsPerSecond(), heapMb);
+        else
+            retVal = String.format("%.3f seconds (items not counted), peak heap %.1f MB", seconds, heapMb);
+        return retVal;
+    }
+
+}
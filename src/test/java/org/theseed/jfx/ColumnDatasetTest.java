@@ -0,0 +1,207 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verify that adding rows to a dataset extends the parsed columns, notifies the listeners, and supports
+ * incremental analysis when the dictionary of a coded column changes.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class ColumnDatasetTest {
+
+    @Test
+    void testAddRows() {
+        List<String[]> rows = new ArrayList<String[]>();
+        rows.add(new String[] { "apple", "1.5" });
+        rows.add(new String[] { "cherry", "NA" });
+        rows.add(new String[] { "apple", "-2" });
+        ColumnDataset data = new ColumnDataset(rows);
+        NumericColumn oldNumbers = data.getNumeric(1);
+        CodedColumn oldCodes = data.getCoded(0);
+        assertThat(oldCodes.dictionarySize(), equalTo(2));
+        int[] sizes = new int[2];
+        data.addListener((d, oldSize, newSize) -> {
+            assertThat(d, sameInstance(data));
+            sizes[0] = oldSize;
+            sizes[1] = newSize;
+        });
+        long version = data.getVersion();
+        // Add a value that sorts between the existing ones, so the dictionary codes change.
+        data.addRows(Arrays.asList(new String[] { "banana", "3e2" }, new String[] { "cherry", "" }));
+        assertThat(sizes[0], equalTo(3));
+        assertThat(sizes[1], equalTo(5));
+        assertThat(data.size(), equalTo(5));
+        assertThat(data.getVersion(), greaterThan(version));
+        NumericColumn numbers = data.getNumeric(1);
+        assertThat(numbers, not(sameInstance(oldNumbers)));
+        assertThat(numbers.size(), equalTo(5));
+        assertThat(numbers.validCount(), equalTo(3));
+        assertThat(numbers.isValid(3), equalTo(true));
+        assertThat(numbers.get(3), equalTo(300.0));
+        assertThat(numbers.isValid(4), equalTo(false));
+        assertThat(numbers.get(0), equalTo(1.5));
+        CodedColumn codes = data.getCoded(0);
+        assertThat(codes.size(), equalTo(5));
+        assertThat(codes.dictionarySize(), equalTo(3));
+        assertThat(codes.sameDictionary(oldCodes), equalTo(false));
+        String[] expected = new String[] { "apple", "cherry", "apple", "banana", "cherry" };
+        for (int i = 0; i < expected.length; i++)
+            assertThat(codes.getValue(codes.getCode(i)), equalTo(expected[i]));
+        // The old snapshots must be unchanged.
+        assertThat(oldNumbers.size(), equalTo(3));
+        assertThat(oldCodes.size(), equalTo(3));
+        assertThat(oldCodes.dictionarySize(), equalTo(2));
+        for (int i = 0; i < 3; i++)
+            assertThat(oldCodes.getValue(oldCodes.getCode(i)), equalTo(expected[i]));
+        // Adding only known values keeps the dictionary.
+        data.addRows(Arrays.asList(new String[][] { new String[] { "banana", "7" } }));
+        CodedColumn newCodes = data.getCoded(0);
+        assertThat(newCodes.size(), equalTo(6));
+        assertThat(newCodes.sameDictionary(codes), equalTo(true));
+        assertThat(newCodes.getCode(5), equalTo(codes.findCode("banana")));
+        assertThat(sizes[0], equalTo(5));
+        assertThat(sizes[1], equalTo(6));
+    }
+
+    @Test
+    void testEditedCollection() {
+        List<String[]> rows = new ArrayList<String[]>();
+        rows.add(new String[] { "a", "1" });
+        rows.add(new String[] { "b", "2" });
+        DistributionAnalysis first = new DistributionAnalysis(rows, 0);
+        assertThat(first.getData().getNumeric(1).get(0), equalTo(1.0));
+        // An analysis built on the edited collection must see the new data.
+        rows.set(0, new String[] { "a", "100" });
+        DistributionAnalysis second = new DistributionAnalysis(rows, 0);
+        assertThat(second.getData(), not(sameInstance(first.getData())));
+        assertThat(second.getData().getNumeric(1).get(0), equalTo(100.0));
+    }
+
+    @Test
+    void testLiveUpdate() {
+        String[] values = new String[] { "delta", "alpha", "golf", "charlie", "bravo", "echo", "foxtrot" };
+        List<String[]> rows = new ArrayList<String[]>();
+        for (int i = 0; i < 400; i++)
+            rows.add(new String[] { "x", values[i % 3] });
+        ColumnDataset data = new ColumnDataset(rows);
+        DistributionAnalysis analysis = new DistributionAnalysis(data, 0);
+        // Scan the original rows, then add rows in batches the way a live display does.
+        IAccumulator acc = analysis.createAccumulator(1);
+        acc.addRange(0, data.size());
+        int scanned = data.size();
+        for (int batch = 1; batch <= 3; batch++) {
+            List<String[]> newRows = new ArrayList<String[]>();
+            for (int i = 0; i < 100 * batch; i++)
+                newRows.add(new String[] { "x", values[i % (3 + batch)] });
+            data.addRows(newRows);
+            acc = analysis.extend(acc, 1);
+            IAccumulator added = analysis.createAccumulator(1);
+            added.addRange(scanned, data.size());
+            acc.merge(added);
+            scanned = data.size();
+            DistributionAnalysis.Result live = (DistributionAnalysis.Result) analysis.finish(acc, () -> false);
+            DistributionAnalysis.Result full = (DistributionAnalysis.Result) analysis.compute(1);
+            assertThat(countMap(live), equalTo(countMap(full)));
+            assertThat(live.getOthers(), equalTo(full.getOthers()));
+            assertThat(live.getDistinct(), equalTo(full.getDistinct()));
+        }
+    }
+
+    @Test
+    void testRowsAddedBeforeFinish() {
+        List<String[]> rows = new ArrayList<String[]>();
+        for (int i = 0; i < 1000; i++)
+            rows.add(new String[] { "x", (i % 4 == 0 ? "common" : "v" + (i % 40)) });
+        DistributionAnalysis.Result expected = (DistributionAnalysis.Result) new DistributionAnalysis(rows, 0)
+                .compute(1);
+        for (int capacity : new int[] { 0, 100 }) {
+            // Scan the rows, then add more rows before the result is finished.  Only the scanned rows may be
+            // counted, in both the limit and the total.
+            ColumnDataset data = new ColumnDataset(rows);
+            DistributionAnalysis analysis = new DistributionAnalysis(data, 0);
+            if (capacity > 0)
+                analysis.setSketchMode(capacity);
+            IAccumulator acc = analysis.createAccumulator(1);
+            acc.addRange(0, data.size());
+            List<String[]> more = new ArrayList<String[]>();
+            for (int i = 0; i < 5000; i++)
+                more.add(new String[] { "x", "late" + (i % 2) });
+            data.addRows(more);
+            DistributionAnalysis.Result result = (DistributionAnalysis.Result) analysis.finish(acc, () -> false);
+            assertThat(countMap(result), equalTo(countMap(expected)));
+            assertThat(result.getOthers(), equalTo(expected.getOthers()));
+        }
+    }
+
+    @Test
+    void testConcurrentReads() throws InterruptedException {
+        List<String[]> rows = new ArrayList<String[]>();
+        for (int i = 0; i < 10; i++)
+            rows.add(new String[] { "x", Integer.toString(i) });
+        ColumnDataset data = new ColumnDataset(rows);
+        // Readers check random visible rows while the rows are added.
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicReference<String> failure = new AtomicReference<String>();
+        Thread[] readers = new Thread[3];
+        for (int t = 0; t < readers.length; t++) {
+            final Random rand = new Random(t);
+            readers[t] = new Thread(() -> {
+                while (! done.get() && failure.get() == null) {
+                    int row = rand.nextInt(data.size());
+                    try {
+                        String value = data.getString(row, 1);
+                        if (! value.equals(Integer.toString(row)))
+                            failure.compareAndSet(null, "row " + row + " read as \"" + value + "\"");
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, "row " + row + " failed: " + e);
+                    }
+                }
+            });
+            readers[t].start();
+        }
+        int next = rows.size();
+        for (int batch = 0; batch < 500; batch++) {
+            List<String[]> newRows = new ArrayList<String[]>();
+            for (int i = 0; i < 37; i++)
+                newRows.add(new String[] { "x", Integer.toString(next++) });
+            data.addRows(newRows);
+        }
+        done.set(true);
+        for (Thread reader : readers)
+            reader.join();
+        assertThat(failure.get(), nullValue());
+        assertThat(data.size(), equalTo(next));
+        for (int i = 0; i < next; i++)
+            assertThat(data.getString(i, 1), equalTo(Integer.toString(i)));
+    }
+
+    /**
+     * @return a map from each value in a distribution result to its count
+     *
+     * @param result	distribution result to convert
+     */
+    private static Map<String, Integer> countMap(DistributionAnalysis.Result result) {
+        Map<String, Integer> retVal = new HashMap<String, Integer>();
+        for (int i = 0; i < result.size(); i++)
+            retVal.put(result.getValue(i), result.getCount(i));
+        return retVal;
+    }
+
+}
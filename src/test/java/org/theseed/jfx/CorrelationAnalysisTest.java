@@ -0,0 +1,61 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verify that infinite and NaN values are treated as missing by the correlation analysis.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class CorrelationAnalysisTest {
+
+    @Test
+    void testNonFinite() {
+        // Column 0 is x, column 1 is a noisy multiple of x, column 2 is x with a few cells missing, and columns
+        // 3 and 4 are x with the same cells NaN or infinite.
+        Random rand = new Random(60606L);
+        List<String[]> rows = new ArrayList<String[]>();
+        final String[] specials = new String[] { "NaN", "Infinity", "-Infinity" };
+        for (int i = 0; i < 1000; i++) {
+            double x = rand.nextGaussian();
+            String xs = Double.toString(x);
+            String y = Double.toString(2.0 * x + rand.nextGaussian() * 0.1);
+            boolean hole = (i % 97 == 5);
+            rows.add(new String[] { xs, y, (hole ? "NA" : xs), (hole ? "NaN" : xs),
+                    (hole ? specials[i % specials.length] : xs) });
+        }
+        ColumnDataset data = new ColumnDataset(rows);
+        String[] names = new String[] { "x", "y", "xna", "xnan", "xinf" };
+        int[] columns = new int[] { 0, 1, 2, 3, 4 };
+        for (CorrelationAnalysis.Method method : CorrelationAnalysis.Method.values()) {
+            CorrelationAnalysis.Result result = new CorrelationAnalysis(data, columns, names, method).compute();
+            for (int i = 0; i < columns.length; i++) {
+                assertThat(method + " diagonal " + i, result.get(i, i), equalTo(1.0));
+                for (int j = 0; j < columns.length; j++)
+                    assertThat(method + " " + i + "," + j, Double.isNaN(result.get(i, j)), equalTo(false));
+            }
+            assertThat(method.toString(), result.get(0, 1), greaterThan(0.99));
+            assertThat(method.toString(), result.get(0, 2), greaterThan(0.95));
+            // The non-finite cells must behave exactly like missing cells, so the last three columns correlate
+            // identically with everything.
+            for (int j = 3; j < columns.length; j++) {
+                for (int i = 0; i < columns.length; i++) {
+                    int expected = Math.min(i, 2);
+                    assertThat(method + " " + i + "," + j, result.get(i, j), closeTo(result.get(expected, 2), 1e-12));
+                }
+            }
+        }
+    }
+
+}
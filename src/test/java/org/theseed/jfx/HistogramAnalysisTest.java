@@ -0,0 +1,174 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verify the histogram bin counts against a naive binning of the values, with non-finite values skipped.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class HistogramAnalysisTest {
+
+    /** labels for the data rows */
+    private static final String[] LABELS = new String[] { "red", "green", "blue" };
+    /** strings that are not finite numbers */
+    private static final String[] SPECIALS = new String[] { "NaN", "Infinity", "-Infinity", "NA", "" };
+
+    @Test
+    void testBinning() {
+        Random rand = new Random(5551212L);
+        List<String[]> rows = new ArrayList<String[]>();
+        int nonFinite = 0;
+        int invalid = 0;
+        for (int i = 0; i < 30000; i++) {
+            String label = LABELS[rand.nextInt(LABELS.length)];
+            String value;
+            if (i % 50 == 7) {
+                value = SPECIALS[rand.nextInt(SPECIALS.length)];
+                if (value.equals("NA") || value.isEmpty())
+                    invalid++;
+                else
+                    nonFinite++;
+            } else if (i % 3 == 0)
+                value = Integer.toString(rand.nextInt(10));
+            else
+                value = Double.toString(Math.exp(rand.nextGaussian()));
+            rows.add(new String[] { label, value });
+        }
+        ColumnDataset data = new ColumnDataset(rows);
+        for (HistogramAnalysis.BinMethod method : HistogramAnalysis.BinMethod.values()) {
+            for (boolean stacked : new boolean[] { false, true }) {
+                HistogramAnalysis analysis = new HistogramAnalysis(data, 0);
+                analysis.setBinMethod(method);
+                analysis.setStacked(stacked);
+                HistogramAnalysis.Result result = (HistogramAnalysis.Result) analysis.compute(1);
+                String context = method + (stacked ? " stacked" : "");
+                assertThat(context, result.getNonFinite(), equalTo(nonFinite));
+                assertThat(context, result.getTotal(), equalTo(rows.size() - nonFinite - invalid));
+                checkCounts(context, result, rows, stacked);
+            }
+        }
+    }
+
+    @Test
+    void testRowsAddedBeforeFinish() {
+        Random rand = new Random(24680L);
+        List<String[]> rows = new ArrayList<String[]>();
+        for (int i = 0; i < 5000; i++)
+            rows.add(new String[] { LABELS[i % LABELS.length], Double.toString(rand.nextGaussian()) });
+        HistogramAnalysis.Result expected = (HistogramAnalysis.Result) new HistogramAnalysis(rows, 0).compute(1);
+        // Scan the rows, then add more rows before the result is finished.  Only the scanned rows may be counted.
+        ColumnDataset data = new ColumnDataset(rows);
+        HistogramAnalysis analysis = new HistogramAnalysis(data, 0);
+        IAccumulator acc = analysis.createAccumulator(1);
+        acc.addRange(0, data.size());
+        List<String[]> more = new ArrayList<String[]>();
+        for (int i = 0; i < 3000; i++)
+            more.add(new String[] { "red", Double.toString(rand.nextGaussian() * 100.0) });
+        data.addRows(more);
+        HistogramAnalysis.Result result = (HistogramAnalysis.Result) analysis.finish(acc, () -> false);
+        assertThat(result.getTotal(), equalTo(expected.getTotal()));
+        assertThat(result.getBinCount(), equalTo(expected.getBinCount()));
+        for (int b = 0; b < result.getBinCount(); b++) {
+            assertThat(result.getLow(b), equalTo(expected.getLow(b)));
+            assertThat("bin " + b, result.getCount(0, b), equalTo(expected.getCount(0, b)));
+        }
+    }
+
+    @Test
+    void testLiveUpdate() {
+        Random rand = new Random(13579L);
+        List<String[]> rows = new ArrayList<String[]>();
+        for (int i = 0; i < 2000; i++)
+            rows.add(new String[] { "red", Double.toString(rand.nextGaussian()) });
+        ColumnDataset data = new ColumnDataset(rows);
+        HistogramAnalysis analysis = new HistogramAnalysis(data, 0);
+        IAccumulator acc = analysis.createAccumulator(1);
+        acc.addRange(0, data.size());
+        // Add rows the way a live display does, and compare with a full computation.
+        List<String[]> more = new ArrayList<String[]>();
+        for (int i = 0; i < 1000; i++)
+            more.add(new String[] { "red", Double.toString(rand.nextGaussian() + 5.0) });
+        final int scanned = data.size();
+        data.addRows(more);
+        acc = analysis.extend(acc, 1);
+        IAccumulator added = analysis.createAccumulator(1);
+        added.addRange(scanned, data.size());
+        acc.merge(added);
+        HistogramAnalysis.Result live = (HistogramAnalysis.Result) analysis.finish(acc, () -> false);
+        HistogramAnalysis.Result full = (HistogramAnalysis.Result) analysis.compute(1);
+        assertThat(live.getTotal(), equalTo(3000));
+        assertThat(live.getBinCount(), equalTo(full.getBinCount()));
+        for (int b = 0; b < live.getBinCount(); b++)
+            assertThat("bin " + b, live.getCount(0, b), equalTo(full.getCount(0, b)));
+    }
+
+    @Test
+    void testNoFiniteValues() {
+        List<String[]> rows = new ArrayList<String[]>();
+        rows.add(new String[] { "red", "NaN" });
+        rows.add(new String[] { "red", "Infinity" });
+        rows.add(new String[] { "blue", "NA" });
+        HistogramAnalysis analysis = new HistogramAnalysis(new ColumnDataset(rows), 0);
+        HistogramAnalysis.Result result = (HistogramAnalysis.Result) analysis.compute(1);
+        assertThat(result.getBinCount(), equalTo(0));
+        assertThat(result.getTotal(), equalTo(0));
+        assertThat(result.getNonFinite(), equalTo(2));
+    }
+
+    /**
+     * Compare the counts in a histogram result with a naive binning of the data.
+     *
+     * @param context	description of the analysis, for failure messages
+     * @param result	histogram result to check
+     * @param rows		data rows analyzed
+     * @param stacked	TRUE if the labels are counted separately
+     */
+    private static void checkCounts(String context, HistogramAnalysis.Result result, List<String[]> rows,
+            boolean stacked) {
+        final int bins = result.getBinCount();
+        assertThat(context, bins, greaterThan(0));
+        List<String> labels = new ArrayList<String>();
+        for (int l = 0; l < result.getLabelCount(); l++)
+            labels.add(result.getLabel(l));
+        int[][] expected = new int[labels.size()][bins];
+        for (String[] row : rows) {
+            double value;
+            try {
+                value = Double.parseDouble(row[1]);
+            } catch (NumberFormatException e) {
+                value = Double.NaN;
+            }
+            if (Double.isFinite(value)) {
+                // Each bin includes its low edge, and the last bin also includes its high edge.
+                int b = 0;
+                while (b < bins - 1 && value >= result.getHigh(b)) b++;
+                assertThat(context, value, greaterThanOrEqualTo(result.getLow(0)));
+                assertThat(context, value, lessThanOrEqualTo(result.getHigh(bins - 1)));
+                int l = (stacked ? labels.indexOf(row[0]) : 0);
+                expected[l][b]++;
+            }
+        }
+        int total = 0;
+        for (int l = 0; l < labels.size(); l++) {
+            for (int b = 0; b < bins; b++) {
+                assertThat(context + " label " + labels.get(l) + " bin " + b, result.getCount(l, b),
+                        equalTo(expected[l][b]));
+                total += result.getCount(l, b);
+            }
+        }
+        assertThat(context, total, equalTo(result.getTotal()));
+    }
+
+}
@@ -0,0 +1,75 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verify that merged moment statistics match the statistics from a single pass over the data.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class MomentStatsTest {
+
+    @Test
+    void testMerge() {
+        Random rand = new Random(1234567L);
+        double[] values = new double[10000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = Math.exp(rand.nextGaussian()) * 100.0 + 5.0;
+        MomentStats full = new MomentStats();
+        for (double value : values)
+            full.add(value);
+        // Split the data into uneven chunks, including an empty one, and merge the results.
+        int[] bounds = new int[] { 0, 1, 1, 37, 2500, 2501, 7000, values.length };
+        MomentStats merged = new MomentStats();
+        for (int c = 1; c < bounds.length; c++) {
+            MomentStats chunk = new MomentStats();
+            for (int i = bounds[c - 1]; i < bounds[c]; i++)
+                chunk.add(values[i]);
+            merged.merge(chunk);
+        }
+        assertThat(merged.getN(), equalTo(full.getN()));
+        assertThat(merged.getMin(), equalTo(full.getMin()));
+        assertThat(merged.getMax(), equalTo(full.getMax()));
+        assertThat(merged.getMean(), closeTo(full.getMean(), 1e-9 * Math.abs(full.getMean())));
+        assertThat(merged.getVariance(), closeTo(full.getVariance(), 1e-9 * full.getVariance()));
+        assertThat(merged.getStandardDeviation(), closeTo(full.getStandardDeviation(), 1e-9 * full.getStandardDeviation()));
+        assertThat(merged.getSkewness(), closeTo(full.getSkewness(), 1e-8 * Math.abs(full.getSkewness())));
+        // Verify the single pass against a naive two-pass computation.
+        double sum = 0.0;
+        for (double value : values)
+            sum += value;
+        double mean = sum / values.length;
+        double ss = 0.0;
+        for (double value : values)
+            ss += (value - mean) * (value - mean);
+        assertThat(full.getMean(), closeTo(mean, 1e-9 * mean));
+        assertThat(full.getVariance(), closeTo(ss / (values.length - 1), 1e-9 * ss / values.length));
+    }
+
+    @Test
+    void testEmptyMerge() {
+        MomentStats stats = new MomentStats();
+        stats.add(2.0);
+        stats.add(4.0);
+        stats.merge(new MomentStats());
+        assertThat(stats.getN(), equalTo(2L));
+        assertThat(stats.getMean(), closeTo(3.0, 1e-12));
+        assertThat(stats.getMin(), equalTo(2.0));
+        assertThat(stats.getMax(), equalTo(4.0));
+        MomentStats empty = new MomentStats();
+        empty.merge(stats);
+        assertThat(empty.getN(), equalTo(2L));
+        assertThat(empty.getMean(), closeTo(3.0, 1e-12));
+        assertThat(empty.getVariance(), closeTo(2.0, 1e-12));
+    }
+
+}
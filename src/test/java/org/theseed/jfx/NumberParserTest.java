@@ -0,0 +1,100 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verify that the number parser accepts exactly the strings Double.parseDouble accepts and returns the
+ * same values.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class NumberParserTest {
+
+    /** strings that exercise the edges of the syntax */
+    private static final String[] EDGE_CASES = new String[] { "", " ", "0", "-0", "+0", "0.0", "-0.0", ".5", "5.",
+            ".", "-.", "+", "-", "1e", "1e+", "1e-5", "1E5", "1e+308", "1e309", "-1e309", "4.9e-324", "2e-324",
+            "1e-400", "123456789012345", "1234567890123456", "12345678901234567890123", "0.1", "0.3",
+            "9007199254740993", "1.7976931348623157e308", "  12.5  ", "\t-3\n", "1d", "1D", "2.5f", "2.5F", "1e5d",
+            "1dd", "1 2", "NaN", "-NaN", "+NaN", "Infinity", "-Infinity", "+Infinity", "nan", "inf", "INFINITY",
+            "NA", "N/A", "0x1p3", "0X1.8P1", "-0x10p0", "0x10", "0x", "1x2", "00012", "000.000", "1e0000000005",
+            "1e-0000000005", "1e2147483648", "..1", "1..2", "1.2.3", "1e5.5", "e5", "-e5", "1_000", "1,5",
+            "0.000000000000000000001", "100000000000000000000000", "3.141592653589793", "2.718281828459045E0" };
+
+    @Test
+    void testEdgeCases() {
+        NumberParser parser = new NumberParser();
+        for (String s : EDGE_CASES)
+            checkString(parser, s);
+        assertThat(parser.parse(null), equalTo(false));
+    }
+
+    @Test
+    void testRandomNumbers() {
+        Random rand = new Random(314159L);
+        NumberParser parser = new NumberParser();
+        for (int i = 0; i < 200000; i++) {
+            double value;
+            switch (i % 4) {
+            case 0 :
+                value = rand.nextDouble();
+                break;
+            case 1 :
+                value = rand.nextGaussian() * Math.pow(10.0, rand.nextInt(40) - 20);
+                break;
+            case 2 :
+                value = Double.longBitsToDouble(rand.nextLong());
+                break;
+            default :
+                value = Math.round(rand.nextGaussian() * 100000.0) / 1000.0;
+            }
+            checkString(parser, Double.toString(value));
+            checkString(parser, String.format("%." + rand.nextInt(18) + "g", value));
+            checkString(parser, String.format("%." + rand.nextInt(10) + "f", value));
+        }
+    }
+
+    @Test
+    void testRandomStrings() {
+        Random rand = new Random(271828L);
+        NumberParser parser = new NumberParser();
+        final String alphabet = "0123456789012345678901234567890123456789.-+eE dDfFxXpPNaIny \t";
+        StringBuilder buffer = new StringBuilder(20);
+        for (int i = 0; i < 200000; i++) {
+            buffer.setLength(0);
+            int len = rand.nextInt(20);
+            for (int j = 0; j < len; j++)
+                buffer.append(alphabet.charAt(rand.nextInt(alphabet.length())));
+            checkString(parser, buffer.toString());
+        }
+    }
+
+    /**
+     * Verify that the parser agrees with the standard library on a single string.
+     *
+     * @param parser	number parser to test
+     * @param s			string to parse
+     */
+    private static void checkString(NumberParser parser, String s) {
+        boolean expectedValid;
+        double expected = 0.0;
+        try {
+            expected = Double.parseDouble(s);
+            expectedValid = true;
+        } catch (NumberFormatException e) {
+            expectedValid = false;
+        }
+        assertThat("validity of \"" + s + "\"", parser.parse(s), equalTo(expectedValid));
+        if (expectedValid)
+            assertThat("value of \"" + s + "\"", Double.compare(parser.getValue(), expected), equalTo(0));
+    }
+
+}
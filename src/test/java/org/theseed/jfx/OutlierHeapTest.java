@@ -0,0 +1,67 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verify that the outlier heap selects exactly the first K rows of a full prediction sort.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class OutlierHeapTest {
+
+    @Test
+    void testSelection() {
+        Random rand = new Random(8675309L);
+        for (int n : new int[] { 0, 1, 5, 100, 5000 }) {
+            // Build rows with coarse values so there are many tied errors, and shuffled IDs so the
+            // tie-break order differs from the row order.
+            String[] ids = new String[n];
+            double[] expected = new double[n];
+            double[] predicted = new double[n];
+            List<Integer> order = new ArrayList<Integer>(n);
+            for (int i = 0; i < n; i++)
+                order.add(i);
+            Collections.shuffle(order, rand);
+            List<Prediction> predictions = new ArrayList<Prediction>(n);
+            for (int i = 0; i < n; i++) {
+                ids[i] = String.format("row%05d", order.get(i));
+                expected[i] = rand.nextInt(20);
+                predicted[i] = rand.nextInt(20) / 2.0;
+                predictions.add(new Prediction(ids[i], expected[i], predicted[i]));
+            }
+            Collections.sort(predictions);
+            for (int k : new int[] { 0, 1, 10, 100 }) {
+                // Split the rows among three heaps and merge them.
+                OutlierHeap[] heaps = new OutlierHeap[3];
+                for (int h = 0; h < heaps.length; h++)
+                    heaps[h] = new OutlierHeap(k, r -> ids[r]);
+                for (int i = 0; i < n; i++)
+                    heaps[i % heaps.length].offer(i, Math.abs(expected[i] - predicted[i]));
+                heaps[0].merge(heaps[1]);
+                heaps[0].merge(heaps[2]);
+                int[] rows = heaps[0].sortedRows();
+                int expectedSize = Math.min(k, n);
+                assertThat(heaps[0].size(), equalTo(expectedSize));
+                assertThat(rows.length, equalTo(expectedSize));
+                for (int i = 0; i < rows.length; i++) {
+                    Prediction pred = predictions.get(i);
+                    assertThat("n = " + n + ", k = " + k + ", position " + i, ids[rows[i]], equalTo(pred.getId()));
+                    assertThat(Math.abs(expected[rows[i]] - predicted[rows[i]]), equalTo(pred.errorValue()));
+                }
+            }
+        }
+    }
+
+}
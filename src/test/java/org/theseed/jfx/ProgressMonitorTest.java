@@ -0,0 +1,50 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verify the peak heap tracking of the progress monitor and the task statistics for unmonitored commands.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class ProgressMonitorTest {
+
+    /** size of the array allocated while a monitor is running */
+    private static final int BLOCK = 64 * 1024 * 1024;
+
+    @Test
+    void testPeakHeap() {
+        // No progress is reported, so the peak must come from the memory pools.
+        ProgressMonitor outer = new ProgressMonitor(null);
+        outer.startHeap();
+        byte[] block = new byte[BLOCK];
+        block[BLOCK - 1] = 1;
+        // Starting a second monitor resets the pool peaks, but the first one must keep its peak.
+        ProgressMonitor inner = new ProgressMonitor(null);
+        inner.startHeap();
+        inner.stopHeap();
+        outer.stopHeap();
+        assertThat(outer.getPeakHeap(), greaterThanOrEqualTo((long) BLOCK));
+        assertThat(inner.getPeakHeap(), greaterThan(0L));
+        assertThat(block[BLOCK - 1], equalTo((byte) 1));
+    }
+
+    @Test
+    void testUnknownItems() {
+        TaskStats stats = new TaskStats(2000, TaskStats.UNKNOWN, 1024 * 1024);
+        assertThat(stats.isCounted(), equalTo(false));
+        assertThat(Double.isNaN(stats.getItemsPerSecond()), equalTo(true));
+        assertThat(stats.toString(), containsString("not counted"));
+        stats = new TaskStats(2000, 500, 1024 * 1024);
+        assertThat(stats.isCounted(), equalTo(true));
+        assertThat(stats.getItemsPerSecond(), closeTo(250.0, 1e-9));
+    }
+
+}
@@ -0,0 +1,67 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verify that the multi-way selection returns the same percentiles as DescriptiveStatistics.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class QuantileSelectorTest {
+
+    /** percentiles to check */
+    private static final double[] PERCENTILES = new double[] { 0.1, 1.0, 5.0, 25.0, 33.3, 50.0, 75.0, 90.0, 99.0, 99.9,
+            100.0 };
+
+    @Test
+    void testPercentiles() {
+        Random rand = new Random(16180339L);
+        for (int n : new int[] { 1, 2, 3, 4, 7, 10, 31, 32, 33, 100, 1001, 20000 }) {
+            for (int trial = 0; trial < 5; trial++) {
+                // Alternate between continuous values and values with many duplicates.
+                double[] values = new double[n];
+                for (int i = 0; i < n; i++)
+                    values[i] = (trial % 2 == 0 ? rand.nextGaussian() * 100.0 : rand.nextInt(5));
+                if (trial == 4)
+                    Arrays.sort(values);
+                DescriptiveStatistics stats = new DescriptiveStatistics(values);
+                double[] actual = QuantileSelector.percentiles(values.clone(), n, PERCENTILES);
+                assertThat(actual.length, equalTo(PERCENTILES.length));
+                for (int i = 0; i < PERCENTILES.length; i++) {
+                    double expected = stats.getPercentile(PERCENTILES[i]);
+                    assertThat("n = " + n + ", p = " + PERCENTILES[i], actual[i],
+                            closeTo(expected, 1e-9 * Math.max(1.0, Math.abs(expected))));
+                }
+            }
+        }
+    }
+
+    @Test
+    void testPartialArray() {
+        // Only the first n values are used.
+        double[] values = new double[] { 5.0, 1.0, 3.0, 100.0, -100.0 };
+        double[] actual = QuantileSelector.percentiles(values, 3, 50.0, 100.0);
+        assertThat(actual[0], equalTo(3.0));
+        assertThat(actual[1], equalTo(5.0));
+    }
+
+    @Test
+    void testEmpty() {
+        double[] actual = QuantileSelector.percentiles(new double[0], 0, 25.0, 50.0);
+        assertThat(actual.length, equalTo(2));
+        assertThat(Double.isNaN(actual[0]), equalTo(true));
+        assertThat(Double.isNaN(actual[1]), equalTo(true));
+    }
+
+}
@@ -0,0 +1,131 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verify the guarantees of the heavy-hitters and distinct-count sketches, both built directly and merged.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class SketchTest {
+
+    /** number of distinct strings in the heavy-hitter stream */
+    private static final int KEYS = 5000;
+    /** number of strings in the heavy-hitter stream */
+    private static final int STREAM = 200000;
+    /** capacity of the heavy-hitter sketch */
+    private static final int CAPACITY = 100;
+
+    @Test
+    void testHeavyHitters() {
+        String[] stream = zipfStream(new Random(1001L));
+        SpaceSaving sketch = new SpaceSaving(CAPACITY);
+        for (String key : stream)
+            sketch.add(key);
+        checkSketch(sketch, stream);
+    }
+
+    @Test
+    void testMergedHeavyHitters() {
+        String[] stream = zipfStream(new Random(2002L));
+        final int pieces = 4;
+        SpaceSaving[] parts = new SpaceSaving[pieces];
+        for (int p = 0; p < pieces; p++)
+            parts[p] = new SpaceSaving(CAPACITY);
+        // Use contiguous blocks so the pieces see different mixes of strings.
+        for (int i = 0; i < stream.length; i++)
+            parts[i * pieces / stream.length].add(stream[i]);
+        for (int p = 1; p < pieces; p++)
+            parts[0].merge(parts[p]);
+        checkSketch(parts[0], stream);
+    }
+
+    @Test
+    void testDistinctCount() {
+        Random rand = new Random(3003L);
+        for (int n : new int[] { 0, 1, 10, 1000, 5000, 100000 }) {
+            HyperLogLog full = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+            HyperLogLog[] parts = new HyperLogLog[] { new HyperLogLog(HyperLogLog.DEFAULT_PRECISION),
+                    new HyperLogLog(HyperLogLog.DEFAULT_PRECISION) };
+            for (int i = 0; i < n; i++) {
+                String key = "k" + i;
+                // Each string is added more than once, and to both pieces at random.
+                for (int k = 0; k < 3; k++) {
+                    full.add(key);
+                    parts[rand.nextInt(2)].add(key);
+                }
+            }
+            parts[0].merge(parts[1]);
+            double tolerance = Math.max(1.0, 4.0 * full.relativeError() * n);
+            assertThat("n = " + n, (double) full.estimate(), closeTo(n, tolerance));
+            assertThat("merged n = " + n, parts[0].estimate(), equalTo(full.estimate()));
+        }
+    }
+
+    /**
+     * @return a stream of strings with Zipf-distributed frequencies
+     *
+     * @param rand	random number generator
+     */
+    private static String[] zipfStream(Random rand) {
+        double[] cumulative = new double[KEYS];
+        double sum = 0.0;
+        for (int k = 0; k < KEYS; k++) {
+            sum += 1.0 / (k + 1);
+            cumulative[k] = sum;
+        }
+        String[] retVal = new String[STREAM];
+        for (int i = 0; i < STREAM; i++) {
+            double u = rand.nextDouble() * sum;
+            int lo = 0;
+            int hi = KEYS - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (cumulative[mid] < u)
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            retVal[i] = "key" + lo;
+        }
+        return retVal;
+    }
+
+    /**
+     * Verify the heavy-hitter guarantees of a sketch against the true counts.
+     *
+     * @param sketch	sketch to check
+     * @param stream	strings counted by the sketch
+     */
+    private static void checkSketch(SpaceSaving sketch, String[] stream) {
+        Map<String, Long> trueCounts = new HashMap<String, Long>(KEYS * 2);
+        for (String key : stream)
+            trueCounts.merge(key, 1L, Long::sum);
+        assertThat(sketch.getTotal(), equalTo((long) stream.length));
+        assertThat(sketch.keys().size(), lessThanOrEqualTo(CAPACITY));
+        final long threshold = stream.length / CAPACITY;
+        for (Map.Entry<String, Long> entry : trueCounts.entrySet()) {
+            String key = entry.getKey();
+            long actual = entry.getValue();
+            if (actual > threshold)
+                assertThat(key + " missing", sketch.keys().contains(key), equalTo(true));
+            if (sketch.keys().contains(key)) {
+                assertThat(key + " count", sketch.getCount(key), greaterThanOrEqualTo(actual));
+                assertThat(key + " error", sketch.getCount(key) - sketch.getError(key), lessThanOrEqualTo(actual));
+            } else
+                assertThat(key + " bound", actual, lessThanOrEqualTo(sketch.errorBound()));
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Random;
+
+import org.apache.commons.math3.util.ResizableDoubleArray;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verify that the box summary ignores NaN values and counts infinite values as outliers.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class SpreadColumnAnalysisTest {
+
+    @Test
+    void testNonFiniteBox() {
+        Random rand = new Random(31415L);
+        ResizableDoubleArray finite = new ResizableDoubleArray(100);
+        ResizableDoubleArray mixed = new ResizableDoubleArray(100);
+        for (int i = 0; i < 500; i++) {
+            double v = rand.nextGaussian();
+            finite.addElement(v);
+            mixed.addElement(v);
+            if (i % 50 == 3)
+                mixed.addElement(Double.NaN);
+            if (i % 100 == 7)
+                mixed.addElement(Double.POSITIVE_INFINITY);
+            if (i % 125 == 11)
+                mixed.addElement(Double.NEGATIVE_INFINITY);
+        }
+        double[] expected = SpreadColumnAnalysis.boxSummary(finite);
+        double[] actual = SpreadColumnAnalysis.boxSummary(mixed);
+        for (int i = 0; i < 5; i++) {
+            assertThat("position " + i, Double.isFinite(actual[i]), equalTo(true));
+            assertThat("position " + i, actual[i], equalTo(expected[i]));
+        }
+        assertThat(actual[5], equalTo(expected[5] + 4));
+        assertThat(actual[6], equalTo(expected[6] + 5));
+        // With no finite values, there is no box, but the infinite values are still counted.
+        ResizableDoubleArray none = new ResizableDoubleArray(new double[] { Double.NaN, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY });
+        actual = SpreadColumnAnalysis.boxSummary(none);
+        for (int i = 0; i < 5; i++)
+            assertThat("position " + i, Double.isNaN(actual[i]), equalTo(true));
+        assertThat(actual[5], equalTo(1.0));
+        assertThat(actual[6], equalTo(2.0));
+    }
+
+}
@@ -0,0 +1,55 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verify that the statistics table always shows the median exactly once, in its place among the percentiles.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class StatisticsAnalysisTest {
+
+    @Test
+    void testMedianRow() {
+        List<String[]> rows = new ArrayList<String[]>();
+        for (int i = 1; i <= 101; i++)
+            rows.add(new String[] { "x", Integer.toString(i) });
+        ColumnDataset data = new ColumnDataset(rows);
+        double[][] choices = new double[][] { StatisticsAnalysis.DEFAULT_PERCENTILES, { 10.0, 90.0 }, { 5.0, 25.0 },
+                { 75.0, 95.0 } };
+        for (double[] percentiles : choices) {
+            StatisticsAnalysis analysis = new StatisticsAnalysis(data, 0);
+            analysis.setPercentiles(percentiles);
+            StatisticsAnalysis.Result result = (StatisticsAnalysis.Result) analysis.compute(1);
+            List<String> names = new ArrayList<String>();
+            List<String> values = new ArrayList<String>();
+            for (Stat stat : analysis.tableData(result)) {
+                names.add(stat.getName());
+                values.add(stat.getValue());
+            }
+            int medianIdx = names.indexOf("Median");
+            assertThat(names.toString(), medianIdx, greaterThan(0));
+            assertThat(names.toString(), names.lastIndexOf("Median"), equalTo(medianIdx));
+            assertThat(values.get(medianIdx), equalTo(new Stat("Median", 51.0).getValue()));
+            // The percentiles below 50 come before the median and the ones above it come after.
+            for (int i = 0; i < names.size(); i++) {
+                String name = names.get(i);
+                if (name.startsWith("P")) {
+                    double p = Double.parseDouble(name.substring(1));
+                    assertThat(name, i < medianIdx, equalTo(p < 50.0));
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.DoubleSupplier;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verify that the t-digest quantile estimates stay within the documented rank error.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class TDigestTest {
+
+    /** quantiles to check */
+    private static final double[] QUANTILES = new double[] { 0.001, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999 };
+
+    @Test
+    void testRankError() {
+        Random rand = new Random(42L);
+        checkDistribution(() -> rand.nextDouble() * 1000.0, 1);
+        checkDistribution(() -> rand.nextGaussian() * 10.0 + 50.0, 1);
+        checkDistribution(() -> -Math.log(1.0 - rand.nextDouble()), 1);
+    }
+
+    @Test
+    void testMergedRankError() {
+        Random rand = new Random(99L);
+        checkDistribution(() -> rand.nextDouble() * 1000.0, 16);
+        checkDistribution(() -> rand.nextGaussian() * 10.0 + 50.0, 7);
+        checkDistribution(() -> -Math.log(1.0 - rand.nextDouble()), 16);
+    }
+
+    @Test
+    void testEmpty() {
+        TDigest digest = new TDigest(TDigest.DEFAULT_COMPRESSION);
+        assertThat(digest.size(), equalTo(0L));
+        assertThat(Double.isNaN(digest.quantile(0.5)), equalTo(true));
+        digest.add(7.0);
+        assertThat(digest.quantile(0.5), equalTo(7.0));
+    }
+
+    /**
+     * Build a digest from random values and verify that the true rank of each estimated quantile is
+     * within 1/compression of the requested quantile.
+     *
+     * @param generator		source of random values
+     * @param pieces		number of digests to build and merge
+     */
+    private static void checkDistribution(DoubleSupplier generator, int pieces) {
+        final int n = 100000;
+        double[] values = new double[n];
+        TDigest[] parts = new TDigest[pieces];
+        for (int p = 0; p < pieces; p++)
+            parts[p] = new TDigest(TDigest.DEFAULT_COMPRESSION);
+        for (int i = 0; i < n; i++) {
+            values[i] = generator.getAsDouble();
+            parts[i % pieces].add(values[i]);
+        }
+        TDigest digest = parts[0];
+        for (int p = 1; p < pieces; p++)
+            digest.merge(parts[p]);
+        assertThat(digest.size(), equalTo((long) n));
+        Arrays.sort(values);
+        final double bound = 1.0 / digest.getCompression();
+        for (double q : QUANTILES) {
+            double estimate = digest.quantile(q);
+            int rank = rankOf(values, estimate);
+            double trueQ = (double) rank / n;
+            assertThat("quantile " + q, Math.abs(trueQ - q), lessThanOrEqualTo(bound));
+            assertThat("cdf at " + q, Math.abs(digest.cdf(values[(int) (q * n)]) - q), lessThanOrEqualTo(bound));
+        }
+        assertThat(digest.quantile(0.0), equalTo(values[0]));
+        assertThat(digest.quantile(1.0), equalTo(values[n - 1]));
+    }
+
+    /**
+     * @return the number of sorted values less than or equal to the specified value
+     *
+     * @param sorted	sorted array of values
+     * @param value		value whose rank is desired
+     */
+    private static int rankOf(double[] sorted, double value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] <= value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+}
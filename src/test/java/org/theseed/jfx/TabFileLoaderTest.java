@@ -0,0 +1,77 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verify that the progress reported by the file loader covers both the indexing and the parsing of the preloaded
+ * columns.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class TabFileLoaderTest {
+
+    /**
+     * This monitor remembers the total instead of forwarding the progress to a task.
+     */
+    private static class RecordingMonitor extends ProgressMonitor {
+
+        /** most recent total specified */
+        private long total;
+
+        /**
+         * Create a monitor with no task.
+         */
+        protected RecordingMonitor() {
+            super(null);
+            this.total = -1;
+        }
+
+        @Override
+        public void setTotal(long total) {
+            this.total = total;
+        }
+
+        @Override
+        protected void update(boolean force) {
+        }
+
+    }
+
+    @Test
+    void testParseProgress() throws IOException {
+        File file = File.createTempFile("loader", ".tbl");
+        file.deleteOnExit();
+        final int rows = 200_000;
+        try (PrintWriter writer = new PrintWriter(file)) {
+            writer.println("label\tvalue");
+            for (int i = 0; i < rows; i++)
+                writer.println("L" + (i % 7) + "\t" + (i * 0.5));
+        }
+        TabFileLoader loader = new TabFileLoader(file);
+        loader.preloadNumeric(1);
+        loader.preloadCoded(0);
+        RecordingMonitor monitor = new RecordingMonitor();
+        loader.setMonitor(monitor);
+        loader.run();
+        MappedDataset data = loader.getDataset();
+        assertThat(data.size(), equalTo(rows));
+        long expected = file.length() + 2L * rows;
+        assertThat(monitor.total, equalTo(expected));
+        assertThat(monitor.getProcessed(), equalTo(expected));
+        // Columns parsed after the load are not reported.
+        data.getNumeric(0);
+        assertThat(monitor.getProcessed(), equalTo(expected));
+    }
+
+}
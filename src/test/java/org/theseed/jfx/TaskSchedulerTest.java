@@ -0,0 +1,48 @@
+/**
+ *
+ */
+package org.theseed.jfx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Verify that scans started by scheduled work run in the scan pool for the work's priority.
+ *
+ * @author Bruce Parrello
+ *
+ */
+class TaskSchedulerTest {
+
+    @Test
+    void testScanPools() throws Exception {
+        TaskScheduler scheduler = new TaskScheduler(4, false);
+        ForkJoinPool interactive = scheduler.scanPool(TaskScheduler.Priority.INTERACTIVE);
+        ForkJoinPool batch = scheduler.scanPool(TaskScheduler.Priority.BATCH);
+        assertThat(batch, not(sameInstance(interactive)));
+        assertThat(interactive.getParallelism(), equalTo(4));
+        assertThat(batch.getParallelism(), equalTo(scheduler.getBatchLimit()));
+        // A thread outside the scheduler is treated as interactive.
+        assertThat(scheduler.scanPool(), sameInstance(interactive));
+        for (TaskScheduler.Priority priority : TaskScheduler.Priority.values()) {
+            ForkJoinPool expected = scheduler.scanPool(priority);
+            CompletableFuture<ForkJoinPool> found = new CompletableFuture<ForkJoinPool>();
+            CompletableFuture<ForkJoinPool> nested = new CompletableFuture<ForkJoinPool>();
+            scheduler.submit(() -> {
+                ForkJoinPool pool = scheduler.scanPool();
+                found.complete(pool);
+                // A scan thread keeps using its own pool.
+                nested.complete(pool.submit(() -> scheduler.scanPool()).join());
+            }, priority);
+            assertThat(priority.toString(), found.get(), sameInstance(expected));
+            assertThat(priority.toString(), nested.get(), sameInstance(expected));
+        }
+        scheduler.shutdown();
+    }
+
+}